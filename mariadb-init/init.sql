@@ -13,19 +13,21 @@ CREATE TABLE IF NOT EXISTS users (
 );
 
 -- 2. Table Photo (Ajout de 'storage_filename', 'content_type' et 'file_size')
+-- 'storage_filename' n'est pas unique : plusieurs photos peuvent partager le meme fichier (stockage dedupliqué)
 CREATE TABLE IF NOT EXISTS photo (
     id BIGINT AUTO_INCREMENT PRIMARY KEY,
     title VARCHAR(255),
     description TEXT,
     original_filename VARCHAR(255) NOT NULL,
-    storage_filename VARCHAR(255) NOT NULL UNIQUE,
+    storage_filename VARCHAR(255) NOT NULL,
     content_type VARCHAR(50) NOT NULL,
     file_size BIGINT,
     visibility ENUM('PRIVATE', 'PUBLIC') DEFAULT 'PRIVATE',
     owner_id BIGINT NOT NULL,
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
     FOREIGN KEY (owner_id) REFERENCES users(id) ON DELETE CASCADE,
-    INDEX idx_photo_owner (owner_id)
+    INDEX idx_photo_owner (owner_id),
+    INDEX idx_photo_storage (storage_filename)
 );
 
 -- 3. Table Album
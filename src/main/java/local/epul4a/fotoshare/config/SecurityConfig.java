@@ -37,7 +37,7 @@ public class SecurityConfig {
             .authorizeHttpRequests(authorize -> authorize
                 .requestMatchers("/css/**", "/js/**", "/images/**").permitAll()
                 .requestMatchers("/", "/login", "/register", "/logout", "/error").permitAll()
-                .requestMatchers("/photos", "/photos/{id}", "/photos/{id}/file", "/photos/{id}/thumbnail").permitAll()
+                .requestMatchers("/photos", "/photos/{id}", "/photos/{id}/file", "/photos/{id}/thumbnail", "/photos/{id}/render").permitAll()
                 .requestMatchers("/admin/**").hasRole("ADMIN")
                 .anyRequest().authenticated()
             )
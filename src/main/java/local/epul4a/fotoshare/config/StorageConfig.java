@@ -0,0 +1,66 @@
+package local.epul4a.fotoshare.config;
+
+import local.epul4a.fotoshare.storage.BlobStore;
+import local.epul4a.fotoshare.storage.InMemoryBlobStore;
+import local.epul4a.fotoshare.storage.LocalBlobStore;
+import local.epul4a.fotoshare.storage.S3BlobStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import java.net.URI;
+import java.nio.file.Paths;
+import java.time.Duration;
+
+/**
+ * Choix du pilote de stockage des fichiers photos (fotoshare.storage.backend) :
+ * local (disque), memory (tests) ou s3 (API compatible S3).
+ */
+@Configuration
+public class StorageConfig {
+
+    @Value("${fotoshare.storage.backend:local}")
+    private String backend;
+
+    @Value("${fotoshare.storage.location:./uploads}")
+    private String storageLocation;
+
+    @Value("${fotoshare.storage.layout.sharded:true}")
+    private boolean sharded;
+
+    @Value("${fotoshare.storage.s3.endpoint:}")
+    private String s3Endpoint;
+
+    @Value("${fotoshare.storage.s3.region:us-east-1}")
+    private String s3Region;
+
+    @Value("${fotoshare.storage.s3.bucket:}")
+    private String s3Bucket;
+
+    @Value("${fotoshare.storage.s3.access-key:}")
+    private String s3AccessKey;
+
+    @Value("${fotoshare.storage.s3.secret-key:}")
+    private String s3SecretKey;
+
+    @Value("${fotoshare.storage.s3.prefix:}")
+    private String s3Prefix;
+
+    @Value("${fotoshare.storage.s3.timeout-ms:30000}")
+    private long s3TimeoutMillis;
+
+    @Bean
+    public BlobStore blobStore() {
+        return switch (backend.toLowerCase()) {
+            case "local" -> new LocalBlobStore(Paths.get(storageLocation), sharded);
+            case "memory" -> new InMemoryBlobStore();
+            case "s3" -> {
+                if (s3Endpoint.isBlank()) {
+                    throw new IllegalStateException("fotoshare.storage.s3.endpoint doit etre renseigne");
+                }
+                yield new S3BlobStore(URI.create(s3Endpoint), s3Region, s3Bucket, s3AccessKey, s3SecretKey,
+                        s3Prefix, Duration.ofMillis(s3TimeoutMillis));
+            }
+            default -> throw new IllegalArgumentException("Pilote de stockage inconnu: " + backend);
+        };
+    }
+}
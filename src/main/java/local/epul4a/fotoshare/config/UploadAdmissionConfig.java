@@ -0,0 +1,23 @@
+package local.epul4a.fotoshare.config;
+
+import local.epul4a.fotoshare.security.UploadAdmissionFilter;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+@Configuration
+public class UploadAdmissionConfig {
+
+    /**
+     * Enregistre le filtre d'admission avant la chaine Spring Security, qui lirait sinon
+     * le corps multipart (parametre _csrf) avant que l'envoi ne soit refuse.
+     */
+    @Bean
+    public FilterRegistrationBean<UploadAdmissionFilter> uploadAdmissionFilterRegistration(UploadAdmissionFilter filter) {
+        FilterRegistrationBean<UploadAdmissionFilter> registration = new FilterRegistrationBean<>(filter);
+        registration.addUrlPatterns("/photos/upload", "/photos/upload/batch", "/photos/uploads/*");
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 10);
+        return registration;
+    }
+}
@@ -0,0 +1,178 @@
+package local.epul4a.fotoshare.controller;
+import local.epul4a.fotoshare.dto.FileDeletionStatsDto;
+import local.epul4a.fotoshare.dto.OrphanCollectionReportDto;
+import local.epul4a.fotoshare.dto.RenderCacheStatsDto;
+import local.epul4a.fotoshare.dto.StorageMigrationStatusDto;
+import local.epul4a.fotoshare.dto.ThumbnailBackfillStatusDto;
+import local.epul4a.fotoshare.dto.ThumbnailCacheStatsDto;
+import local.epul4a.fotoshare.dto.ThumbnailQueueStatsDto;
+import local.epul4a.fotoshare.dto.UploadAdmissionStatsDto;
+import local.epul4a.fotoshare.security.UploadAdmissionFilter;
+import local.epul4a.fotoshare.service.FileDeletionService;
+import local.epul4a.fotoshare.service.ImageMetadataService;
+import local.epul4a.fotoshare.service.OrphanCollectorService;
+import local.epul4a.fotoshare.service.PhotoRenderService;
+import local.epul4a.fotoshare.service.StorageLayoutMigrationService;
+import local.epul4a.fotoshare.service.ThumbnailBackfillService;
+import local.epul4a.fotoshare.service.ThumbnailCacheService;
+import local.epul4a.fotoshare.service.ThumbnailJobService;
+import local.epul4a.fotoshare.service.ThumbnailSlabCache;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import java.util.Map;
+/**
+ * Contrôleur d'administration (réservé au rôle ADMIN).
+ */
+@RestController
+@RequestMapping("/admin")
+public class AdminController {
+    @Autowired
+    private ThumbnailJobService thumbnailJobService;
+    @Autowired
+    private ImageMetadataService imageMetadataService;
+    @Autowired
+    private ThumbnailBackfillService thumbnailBackfillService;
+    @Autowired
+    private OrphanCollectorService orphanCollectorService;
+    @Autowired
+    private StorageLayoutMigrationService storageLayoutMigrationService;
+    @Autowired
+    private UploadAdmissionFilter uploadAdmissionFilter;
+    @Autowired
+    private FileDeletionService fileDeletionService;
+    @Autowired
+    private ThumbnailCacheService thumbnailCacheService;
+    @Autowired
+    private ThumbnailSlabCache thumbnailSlabCache;
+    @Autowired
+    private PhotoRenderService photoRenderService;
+    /**
+     * Retourne l'état de la file de génération des miniatures.
+     */
+    @GetMapping("/thumbnails/stats")
+    public ThumbnailQueueStatsDto thumbnailStats() {
+        return thumbnailJobService.getStats();
+    }
+    /**
+     * Retourne les statistiques du cache mémoire des miniatures (taux de succès, éviction).
+     */
+    @GetMapping("/thumbnails/cache")
+    public ThumbnailCacheStatsDto thumbnailCacheStats() {
+        return thumbnailCacheService.getStats();
+    }
+    /**
+     * Retourne les statistiques du cache hors tas des miniatures.
+     */
+    @GetMapping("/thumbnails/cache/off-heap")
+    public ThumbnailCacheStatsDto thumbnailSlabCacheStats() {
+        return thumbnailSlabCache.getStats();
+    }
+    /**
+     * Vide le cache mémoire des miniatures, sur le tas et hors tas.
+     */
+    @PostMapping("/thumbnails/cache/clear")
+    public ThumbnailCacheStatsDto clearThumbnailCache() {
+        thumbnailCacheService.clear();
+        return thumbnailCacheService.getStats();
+    }
+    /**
+     * Retourne les statistiques du cache disque des rendus à la demande.
+     */
+    @GetMapping("/renders/cache")
+    public RenderCacheStatsDto renderCacheStats() {
+        return photoRenderService.getStats();
+    }
+    /**
+     * Retourne l'état du rattrapage des miniatures.
+     */
+    @GetMapping("/thumbnails/backfill")
+    public ThumbnailBackfillStatusDto thumbnailBackfillStatus() {
+        return thumbnailBackfillService.getStatus();
+    }
+    /**
+     * Lance (ou reprend) la régénération des miniatures manquantes, en échec ou obsolètes.
+     *
+     * @param restart Vrai pour repartir du début au lieu du dernier point de reprise
+     */
+    @PostMapping("/thumbnails/backfill")
+    public ThumbnailBackfillStatusDto startThumbnailBackfill(@RequestParam(defaultValue = "false") boolean restart) {
+        return thumbnailBackfillService.start(restart);
+    }
+    /**
+     * Suspend le rattrapage des miniatures à la fin du lot en cours.
+     */
+    @PostMapping("/thumbnails/backfill/stop")
+    public ThumbnailBackfillStatusDto stopThumbnailBackfill() {
+        return thumbnailBackfillService.stop();
+    }
+    /**
+     * Retourne le rapport de la dernière passe du ramasse-miettes des fichiers orphelins.
+     */
+    @GetMapping("/storage/gc")
+    public OrphanCollectionReportDto orphanCollectionReport() {
+        return orphanCollectorService.getLastReport();
+    }
+    /**
+     * Lance une passe du ramasse-miettes des fichiers orphelins (en simulation par défaut).
+     *
+     * @param dryRun Faux pour réellement mettre en quarantaine et supprimer
+     */
+    @PostMapping("/storage/gc")
+    public OrphanCollectionReportDto collectOrphans(@RequestParam(defaultValue = "true") boolean dryRun) {
+        return orphanCollectorService.collect(dryRun);
+    }
+    /**
+     * Retourne l'état de la migration du stockage vers les sous-répertoires.
+     */
+    @GetMapping("/storage/migration")
+    public StorageMigrationStatusDto storageMigrationStatus() {
+        return storageLayoutMigrationService.getStatus();
+    }
+    /**
+     * Lance la migration en ligne des fichiers restés à plat vers les sous-répertoires.
+     */
+    @PostMapping("/storage/migration")
+    public StorageMigrationStatusDto startStorageMigration() {
+        return storageLayoutMigrationService.start();
+    }
+    /**
+     * Suspend la migration du stockage ; elle pourra être relancée.
+     */
+    @PostMapping("/storage/migration/stop")
+    public StorageMigrationStatusDto stopStorageMigration() {
+        return storageLayoutMigrationService.stop();
+    }
+    /**
+     * Retourne l'état des suppressions de fichiers différées (en attente, effectuées, retentées).
+     */
+    @GetMapping("/storage/deletions")
+    public FileDeletionStatsDto fileDeletionStats() {
+        return fileDeletionService.getStats();
+    }
+    /**
+     * Traite immédiatement les suppressions de fichiers échues.
+     */
+    @PostMapping("/storage/deletions/drain")
+    public FileDeletionStatsDto drainFileDeletions() {
+        fileDeletionService.drain();
+        return fileDeletionService.getStats();
+    }
+    /**
+     * Retourne l'état du contrôle d'admission des envois (en cours, admis, refusés).
+     */
+    @GetMapping("/uploads/admission")
+    public UploadAdmissionStatsDto uploadAdmissionStats() {
+        return uploadAdmissionFilter.getStats();
+    }
+    /**
+     * Renseigne les dimensions des photos enregistrées sans largeur ni hauteur.
+     */
+    @PostMapping("/photos/dimensions/backfill")
+    public Map<String, Integer> backfillDimensions() {
+        return Map.of("updated", imageMetadataService.backfillDimensions());
+    }
+}
@@ -0,0 +1,272 @@
+package local.epul4a.fotoshare.controller;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+/**
+ * Envoi d'un fichier local avec prise en charge des requêtes partielles (en-tête Range).
+ * Une plage unique donne une réponse 206 avec Content-Range, plusieurs plages une réponse
+ * multipart/byteranges, des plages toutes hors du fichier une réponse 416.
+ * Les octets sont transférés par FileChannel.transferTo ; lorsque le connecteur Tomcat le
+ * permet, une plage unique est confiée au noyau (sendfile) sans passer par la JVM.
+ * Sendfile lit le fichier après le retour du contrôleur : l'appelant qui supprime ou libère
+ * le fichier à la fin de l'envoi désactive sendfile.
+ * Les validateurs (ETag, Last-Modified) sont fournis par l'appelant, qui a déjà traité
+ * les requêtes conditionnelles ; ils servent ici à évaluer If-Range.
+ */
+@Component
+public class FileRangeWriter {
+    static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+    @Value("${fotoshare.download.max-ranges:16}")
+    private int maxRanges;
+    @Value("${fotoshare.download.sendfile-min-bytes:49152}")
+    private long sendfileMinBytes;
+    /**
+     * Plage d'octets, bornes incluses.
+     */
+    record ByteRange(long start, long end) {
+        long length() {
+            return end - start + 1;
+        }
+    }
+    /**
+     * Écrit un fichier dans la réponse, en entier ou par plages selon les en-têtes Range et If-Range.
+     *
+     * @param request La requête
+     * @param response La réponse
+     * @param file Le fichier local à envoyer
+     * @param contentType Le type du contenu
+     * @param contentDisposition L'en-tête Content-Disposition, ou null
+     * @param etag L'ETag fort du contenu (entre guillemets), ou null
+     * @param lastModified La date de modification du contenu en millisecondes, ou -1 pour celle du fichier
+     * @throws IOException Si erreur lors de l'envoi
+     */
+    public void write(HttpServletRequest request, HttpServletResponse response, Path file, MediaType contentType,
+                      String contentDisposition, String etag, long lastModified) throws IOException {
+        write(request, response, file, contentType, contentDisposition, etag, lastModified, true);
+    }
+    /**
+     * Écrit un fichier dans la réponse, en entier ou par plages selon les en-têtes Range et If-Range.
+     *
+     * @param request La requête
+     * @param response La réponse
+     * @param file Le fichier local à envoyer
+     * @param contentType Le type du contenu
+     * @param contentDisposition L'en-tête Content-Disposition, ou null
+     * @param etag L'ETag fort du contenu (entre guillemets), ou null
+     * @param lastModified La date de modification du contenu en millisecondes, ou -1 pour celle du fichier
+     * @param sendfileAllowed false pour que tous les octets soient écrits avant le retour (fichier
+     *                        libéré ou supprimé par l'appelant juste après)
+     * @throws IOException Si erreur lors de l'envoi
+     */
+    public void write(HttpServletRequest request, HttpServletResponse response, Path file, MediaType contentType,
+                      String contentDisposition, String etag, long lastModified,
+                      boolean sendfileAllowed) throws IOException {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        long length = attributes.size();
+        if (lastModified < 0) {
+            lastModified = attributes.lastModifiedTime().toMillis();
+        }
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setDateHeader(HttpHeaders.LAST_MODIFIED, lastModified);
+        if (etag != null) {
+            response.setHeader(HttpHeaders.ETAG, etag);
+        }
+        if (contentDisposition != null) {
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION, contentDisposition);
+        }
+        List<ByteRange> ranges = ifRangeMatches(request, etag, lastModified)
+                ? parseRanges(request.getHeader(HttpHeaders.RANGE), length, maxRanges)
+                : null;
+        boolean sendBody = !"HEAD".equals(request.getMethod());
+        if (ranges == null) {
+            response.setStatus(HttpServletResponse.SC_OK);
+            response.setContentType(contentType.toString());
+            response.setContentLengthLong(length);
+            if (sendBody) {
+                transfer(request, response, file, new ByteRange(0, length - 1), sendfileAllowed);
+            }
+        } else if (ranges.isEmpty()) {
+            response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+            response.setContentLength(0);
+        } else if (ranges.size() == 1) {
+            ByteRange range = ranges.get(0);
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setContentType(contentType.toString());
+            response.setHeader(HttpHeaders.CONTENT_RANGE, contentRange(range, length));
+            response.setContentLengthLong(range.length());
+            if (sendBody) {
+                transfer(request, response, file, range, sendfileAllowed);
+            }
+        } else {
+            writeMultipart(response, file, contentType, ranges, length, sendBody);
+        }
+    }
+    /**
+     * Lit l'en-tête Range.
+     *
+     * @return null si l'en-tête est absent, mal formé ou comporte trop de plages (le fichier
+     * est alors envoyé en entier), une liste vide si aucune plage ne recouvre le fichier,
+     * sinon les plages triées, celles qui se chevauchent ou se touchent étant fusionnées
+     */
+    static List<ByteRange> parseRanges(String header, long length, int maxRanges) {
+        if (header == null || !header.startsWith("bytes=")) {
+            return null;
+        }
+        String[] specs = header.substring("bytes=".length()).split(",");
+        if (specs.length > maxRanges) {
+            return null;
+        }
+        List<ByteRange> ranges = new ArrayList<>();
+        for (String value : specs) {
+            String spec = value.trim();
+            int dash = spec.indexOf('-');
+            if (dash < 0) {
+                return null;
+            }
+            try {
+                if (dash == 0) {
+                    long suffix = Long.parseLong(spec.substring(1));
+                    if (suffix > 0 && length > 0) {
+                        ranges.add(new ByteRange(Math.max(0, length - suffix), length - 1));
+                    }
+                    continue;
+                }
+                long start = Long.parseLong(spec.substring(0, dash));
+                String endValue = spec.substring(dash + 1);
+                long end = endValue.isEmpty() ? Long.MAX_VALUE : Long.parseLong(endValue);
+                if (start < 0 || end < start) {
+                    return null;
+                }
+                if (start < length) {
+                    ranges.add(new ByteRange(start, Math.min(end, length - 1)));
+                }
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        ranges.sort(Comparator.comparingLong(ByteRange::start));
+        List<ByteRange> merged = new ArrayList<>();
+        for (ByteRange range : ranges) {
+            ByteRange last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+            if (last != null && range.start() <= last.end() + 1) {
+                merged.set(merged.size() - 1, new ByteRange(last.start(), Math.max(last.end(), range.end())));
+            } else {
+                merged.add(range);
+            }
+        }
+        return merged;
+    }
+    /**
+     * Une requête If-Range dont le validateur ne correspond plus au fichier reçoit le fichier entier.
+     * Un ETag est comparé de façon stricte : un ETag faible ne correspond jamais.
+     */
+    private boolean ifRangeMatches(HttpServletRequest request, String etag, long lastModified) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return ifRange.equals(etag);
+        }
+        try {
+            return request.getDateHeader(HttpHeaders.IF_RANGE) / 1000 == lastModified / 1000;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+    private void writeMultipart(HttpServletResponse response, Path file, MediaType contentType,
+                                List<ByteRange> ranges, long length, boolean sendBody) throws IOException {
+        String boundary = UUID.randomUUID().toString().replace("-", "");
+        List<byte[]> partHeaders = new ArrayList<>();
+        long contentLength = 0;
+        for (ByteRange range : ranges) {
+            byte[] partHeader = ("\r\n--" + boundary + "\r\n"
+                    + HttpHeaders.CONTENT_TYPE + ": " + contentType + "\r\n"
+                    + HttpHeaders.CONTENT_RANGE + ": " + contentRange(range, length) + "\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII);
+            partHeaders.add(partHeader);
+            contentLength += partHeader.length + range.length();
+        }
+        byte[] closing = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+        contentLength += closing.length;
+        response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        response.setContentType("multipart/byteranges; boundary=" + boundary);
+        response.setContentLengthLong(contentLength);
+        if (!sendBody) {
+            return;
+        }
+        OutputStream out = response.getOutputStream();
+        WritableByteChannel target = Channels.newChannel(out);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            for (int i = 0; i < ranges.size(); i++) {
+                out.write(partHeaders.get(i));
+                transfer(channel, ranges.get(i), target);
+            }
+        }
+        out.write(closing);
+    }
+    /**
+     * Envoie une plage du fichier : par sendfile si le connecteur le propose et que la plage est
+     * assez grande pour que cela compte, sinon par transferTo vers le flux de la réponse.
+     */
+    private void transfer(HttpServletRequest request, HttpServletResponse response, Path file,
+                          ByteRange range, boolean sendfileAllowed) throws IOException {
+        if (range.length() <= 0) {
+            return;
+        }
+        if (sendfileAllowed && range.length() >= sendfileMinBytes
+                && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, file.toRealPath().toString());
+            request.setAttribute(SENDFILE_START, range.start());
+            request.setAttribute(SENDFILE_END, range.end() + 1);
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            transfer(channel, range, Channels.newChannel(response.getOutputStream()));
+        }
+    }
+    private static void transfer(FileChannel channel, ByteRange range, WritableByteChannel target) throws IOException {
+        long position = range.start();
+        long remaining = range.length();
+        while (remaining > 0) {
+            long sent = channel.transferTo(position, remaining, target);
+            if (sent <= 0) {
+                throw new EOFException("Fichier tronqué pendant l'envoi");
+            }
+            position += sent;
+            remaining -= sent;
+        }
+    }
+    private static String contentRange(ByteRange range, long length) {
+        return "bytes " + range.start() + "-" + range.end() + "/" + length;
+    }
+}
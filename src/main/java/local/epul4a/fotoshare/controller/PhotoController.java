@@ -1,5 +1,8 @@
 package local.epul4a.fotoshare.controller;
 
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import local.epul4a.fotoshare.dto.BatchUploadItemDto;
 import local.epul4a.fotoshare.dto.CommentaryResponseDto;
 import local.epul4a.fotoshare.dto.PhotoResponseDto;
 import local.epul4a.fotoshare.dto.PhotoUploadDto;
@@ -7,8 +10,11 @@ import local.epul4a.fotoshare.dto.ShareRequestDto;
 import local.epul4a.fotoshare.dto.ShareResponseDto;
 import local.epul4a.fotoshare.model.*;
 import local.epul4a.fotoshare.repository.UserRepository;
+import local.epul4a.fotoshare.service.BatchUploadService;
 import local.epul4a.fotoshare.service.CommentaryService;
+import local.epul4a.fotoshare.service.DecodeMemoryGovernor;
 import local.epul4a.fotoshare.service.FileValidationService;
+import local.epul4a.fotoshare.service.PhotoRenderService;
 import local.epul4a.fotoshare.service.PhotoService;
 import local.epul4a.fotoshare.service.ShareService;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -16,9 +22,11 @@ import org.springframework.core.io.Resource;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
@@ -26,11 +34,17 @@ import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 /**
  * Contrôleur pour la gestion des photos.
@@ -48,6 +62,12 @@ public class PhotoController {
     private UserRepository userRepository;
     @Autowired
     private FileValidationService fileValidationService;
+    @Autowired
+    private BatchUploadService batchUploadService;
+    @Autowired
+    private FileRangeWriter fileRangeWriter;
+    @Autowired
+    private PhotoRenderService photoRenderService;
     private static final int PAGE_SIZE = 12;
     /**
      * Affiche la liste des photos accessibles à l'utilisateur avec pagination.
@@ -100,6 +120,24 @@ public class PhotoController {
         model.addAttribute("hasPrevious", photosPage.hasPrevious());
         return "photos/list";
     }
+    /**
+     * Affiche les groupes de doublons probables parmi les photos de l'utilisateur connecté.
+     */
+    @GetMapping("/my/duplicates")
+    public String myDuplicates(Model model) {
+        Long userId = getCurrentUserId();
+        if (userId == null) {
+            return "redirect:/login";
+        }
+        String ownerUsername = getCurrentUsername();
+        List<List<PhotoResponseDto>> groups = photoService.getDuplicateGroups(userId).stream()
+                .map(group -> group.stream()
+                        .map(photo -> PhotoResponseDto.fromEntity(photo, ownerUsername, PERMISSION.ADMIN))
+                        .collect(Collectors.toList()))
+                .collect(Collectors.toList());
+        model.addAttribute("groups", groups);
+        return "photos/duplicates";
+    }
     /**
      * Affiche le formulaire d'upload.
      */
@@ -108,6 +146,7 @@ public class PhotoController {
         model.addAttribute("photoUpload", new PhotoUploadDto());
         model.addAttribute("visibilities", VISIBILITY.values());
         model.addAttribute("maxFileSize", fileValidationService.getMaxFileSize() / (1024 * 1024));
+        model.addAttribute("maxBatchFiles", batchUploadService.getMaxFiles());
         return "photos/upload";
     }
     /**
@@ -135,6 +174,26 @@ public class PhotoController {
             return "redirect:/photos/upload";
         }
     }
+    /**
+     * Traite l'upload de plusieurs photos en une requête.
+     * Retourne le résultat de chaque fichier ; un fichier invalide n'annule pas les autres.
+     */
+    @PostMapping("/upload/batch")
+    @ResponseBody
+    public ResponseEntity<?> uploadPhotos(@RequestParam("files") List<MultipartFile> files,
+                                          @RequestParam(value = "description", required = false) String description,
+                                          @RequestParam(value = "visibility", defaultValue = "PRIVATE") VISIBILITY visibility) {
+        Long userId = getCurrentUserId();
+        if (userId == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        try {
+            List<BatchUploadItemDto> results = batchUploadService.uploadPhotos(files, description, visibility, userId);
+            return ResponseEntity.ok(results);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
     /**
      * Affiche les détails d'une photo.
      */
@@ -172,10 +231,19 @@ public class PhotoController {
         return "photos/view";
     }
     /**
-     * Sert le fichier image d'une photo.
+     * Sert le fichier image d'une photo, éventuellement dans une déclinaison réduite (paramètre size).
+     * Les requêtes partielles (Range) sont prises en charge, ce qui permet de reprendre un téléchargement.
+     * Un fichier du disque local est envoyé directement par {@link FileRangeWriter} ;
+     * les autres stockages passent par la gestion des plages de Spring.
+     * L'ETag de la déclinaison est déduit de l'état en base. Les requêtes conditionnelles
+     * (If-None-Match, If-Modified-Since) sont évaluées avant tout accès au stockage : une revalidation
+     * réussie répond 304 sans toucher au disque. Ensuite seulement, une déclinaison manquante
+     * est remplacée par l'original, servi avec son propre ETag.
      */
     @GetMapping("/{id}/file")
-    public ResponseEntity<Resource> servePhoto(@PathVariable Long id) {
+    public ResponseEntity<Resource> servePhoto(@PathVariable Long id,
+                                               @RequestParam(value = "size", required = false) Integer size,
+                                               HttpServletRequest request, HttpServletResponse response) {
         Long userId = getCurrentUserId();
         try {
             Optional<Photo> photoOpt = photoService.getPhoto(id, userId);
@@ -183,22 +251,103 @@ public class PhotoController {
                 return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
             }
             Photo photo = photoOpt.get();
-            Resource file = photoService.getPhotoFile(id, userId);
+            PhotoService.PhotoFile selected = photoService.selectPhotoFile(photo, size);
+            String etag = selected.entityTag();
+            long lastModified = lastModified(photo);
+            response.setHeader(HttpHeaders.CACHE_CONTROL, CacheControl.noCache().cachePrivate().getHeaderValue());
+            if (new ServletWebRequest(request, response).checkNotModified(etag, lastModified)) {
+                // 304 (ou 412) : aucun fichier n'est ouvert
+                return null;
+            }
+            PhotoService.PhotoFile resolved = photoService.resolvePhotoFile(photo, selected);
+            if (resolved != selected) {
+                etag = resolved.entityTag();
+                if (etag != null) {
+                    response.setHeader(HttpHeaders.ETAG, etag);
+                }
+            }
+            Resource file = photoService.loadPhotoFile(resolved);
+            String contentDisposition = "inline; filename=\"" + photo.getOriginal_filename() + "\"";
+            if (file.isFile()) {
+                fileRangeWriter.write(request, response, file.getFile().toPath(), getMediaType(file, photo),
+                        contentDisposition, etag, lastModified);
+                // La réponse est déjà écrite
+                return null;
+            }
             return ResponseEntity.ok()
-                    .contentType(MediaType.parseMediaType(photo.getContent_type()))
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + photo.getOriginal_filename() + "\"")
+                    .contentType(getMediaType(file, photo))
+                    .header(HttpHeaders.CONTENT_DISPOSITION, contentDisposition)
                     .body(file);
         } catch (SecurityException e) {
             return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
         } catch (Exception e) {
+            // Envoi interrompu (client parti) : le statut est déjà parti
+            if (response.isCommitted()) {
+                return null;
+            }
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+    /**
+     * Sert une photo redimensionnée à la demande (paramètres w, h et fit, tailles limitées à une liste autorisée).
+     * Le rendu est produit au premier appel puis servi depuis le cache disque des rendus ;
+     * il reste épinglé dans le cache pendant l'envoi. L'épingle étant relâchée au retour,
+     * le rendu n'est pas confié à sendfile, qui le lirait après coup.
+     * Les requêtes conditionnelles sont évaluées avant tout rendu.
+     * Seul le rendu d'une photo publique peut être conservé par les caches partagés.
+     */
+    @GetMapping("/{id}/render")
+    public ResponseEntity<Resource> renderPhoto(@PathVariable Long id,
+                                                @RequestParam(value = "w", required = false) Integer width,
+                                                @RequestParam(value = "h", required = false) Integer height,
+                                                @RequestParam(value = "fit", required = false) String fit,
+                                                HttpServletRequest request, HttpServletResponse response) {
+        Long userId = getCurrentUserId();
+        try {
+            PhotoRenderService.RenderParams params = photoRenderService.parseParams(width, height, fit);
+            Optional<Photo> photoOpt = photoService.getPhoto(id, userId);
+            if (photoOpt.isEmpty()) {
+                return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+            }
+            Photo photo = photoOpt.get();
+            String etag = photoRenderService.getEntityTag(photo, params);
+            long lastModified = lastModified(photo);
+            CacheControl cacheControl = CacheControl.maxAge(1, TimeUnit.DAYS);
+            if (photo.getVisibility() != VISIBILITY.PUBLIC) {
+                cacheControl = cacheControl.cachePrivate();
+            }
+            response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl.getHeaderValue());
+            if (new ServletWebRequest(request, response).checkNotModified(etag, lastModified)) {
+                return null;
+            }
+            try (PhotoRenderService.RenderedFile rendered = photoRenderService.render(photo, params)) {
+                Path file = rendered.file();
+                MediaType mediaType = MediaTypeFactory.getMediaType(file.getFileName().toString())
+                        .orElse(MediaType.APPLICATION_OCTET_STREAM);
+                fileRangeWriter.write(request, response, file, mediaType, null, etag, lastModified, false);
+            }
+            return null;
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (SecurityException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        } catch (DecodeMemoryGovernor.BudgetExceededException e) {
+            // Trop de décodages en cours : le client peut réessayer
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1").build();
+        } catch (Exception e) {
+            if (response.isCommitted()) {
+                return null;
+            }
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
     }
     /**
      * Sert la miniature d'une photo.
+     * La photo chargée lors du contrôle d'accès est réutilisée : aucune autre requête en base.
      */
     @GetMapping("/{id}/thumbnail")
-    public ResponseEntity<Resource> serveThumbnail(@PathVariable Long id) {
+    public ResponseEntity<Resource> serveThumbnail(@PathVariable Long id,
+                                                   HttpServletRequest request, HttpServletResponse response) {
         Long userId = getCurrentUserId();
         try {
             Optional<Photo> photoOpt = photoService.getPhoto(id, userId);
@@ -206,23 +355,66 @@ public class PhotoController {
                 return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
             }
             Photo photo = photoOpt.get();
-            Resource thumbnail = photoService.getThumbnailFile(id, userId);
+            response.setHeader(HttpHeaders.CACHE_CONTROL, "max-age=86400");
+            if (new ServletWebRequest(request, response).checkNotModified(photoService.getThumbnailEntityTag(photo), lastModified(photo))) {
+                // 304 (ou 412) : aucun fichier n'est ouvert
+                return null;
+            }
+            if (photoService.writeCachedThumbnail(photo, content -> writeThumbnail(request, response, photo, content))) {
+                return null;
+            }
+            Resource thumbnail = photoService.getThumbnailContent(photo);
             if (thumbnail == null) {
-                Resource file = photoService.getPhotoFile(id, userId);
+                // Miniature manquante : l'original est servi sous son propre ETag
+                String etag = photoService.getEntityTag(photo);
+                if (etag != null) {
+                    response.setHeader(HttpHeaders.ETAG, etag);
+                }
+                Resource file = photoService.loadPhotoFile(photoService.selectPhotoFile(photo, null));
                 return ResponseEntity.ok()
                         .contentType(MediaType.parseMediaType(photo.getContent_type()))
                         .body(file);
             }
             return ResponseEntity.ok()
-                    .contentType(MediaType.parseMediaType(photo.getContent_type()))
-                    .header(HttpHeaders.CACHE_CONTROL, "max-age=86400")
+                    .contentType(getMediaType(thumbnail, photo))
                     .body(thumbnail);
         } catch (SecurityException e) {
             return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
         } catch (Exception e) {
+            if (response.isCommitted()) {
+                return null;
+            }
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
     }
+    /**
+     * Écrit une miniature lue depuis le cache hors tas directement dans la réponse.
+     */
+    private void writeThumbnail(HttpServletRequest request, HttpServletResponse response, Photo photo,
+                                ByteBuffer content) throws IOException {
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType(MediaTypeFactory.getMediaType(photo.getThumbnail_filename())
+                .orElseGet(() -> MediaType.parseMediaType(photo.getContent_type())).toString());
+        response.setContentLength(content.remaining());
+        if (!"HEAD".equals(request.getMethod())) {
+            response.getOutputStream().write(content);
+        }
+    }
+    /**
+     * Date de dernière modification servie avec les fichiers : le contenu d'une photo ne change pas
+     * après sa création.
+     */
+    private long lastModified(Photo photo) {
+        return photo.getCreated_at() != null ? photo.getCreated_at().getTime() : -1;
+    }
+    /**
+     * Détermine le type du fichier servi : une miniature ou une déclinaison
+     * n'a pas forcément le format de l'original.
+     */
+    private MediaType getMediaType(Resource file, Photo photo) {
+        return MediaTypeFactory.getMediaType(file)
+                .orElseGet(() -> MediaType.parseMediaType(photo.getContent_type()));
+    }
     /**
      * Affiche le formulaire de modification d'une photo.
      */
@@ -0,0 +1,166 @@
+package local.epul4a.fotoshare.controller;
+import jakarta.servlet.http.HttpServletRequest;
+import local.epul4a.fotoshare.dto.UploadSessionDto;
+import local.epul4a.fotoshare.model.Photo;
+import local.epul4a.fotoshare.model.UploadSession;
+import local.epul4a.fotoshare.model.User;
+import local.epul4a.fotoshare.model.VISIBILITY;
+import local.epul4a.fotoshare.repository.UserRepository;
+import local.epul4a.fotoshare.service.UploadSessionService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.bind.annotation.*;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.Map;
+import java.util.NoSuchElementException;
+/**
+ * API d'upload fractionné et reprenable.
+ * <ul>
+ *     <li>POST /photos/uploads : crée une session</li>
+ *     <li>PUT /photos/uploads/{id} avec l'en-tête Upload-Offset : ajoute un morceau</li>
+ *     <li>HEAD ou GET /photos/uploads/{id} : position courante (en-tête Upload-Offset)</li>
+ *     <li>POST /photos/uploads/{id}/complete : finalise et crée la photo</li>
+ *     <li>DELETE /photos/uploads/{id} : abandonne la session</li>
+ * </ul>
+ */
+@RestController
+@RequestMapping("/photos/uploads")
+public class UploadSessionController {
+    static final String UPLOAD_OFFSET_HEADER = "Upload-Offset";
+    @Autowired
+    private UploadSessionService uploadSessionService;
+    @Autowired
+    private UserRepository userRepository;
+    /**
+     * Crée une session d'upload.
+     */
+    @PostMapping
+    public ResponseEntity<?> createSession(@RequestParam("filename") String filename,
+                                           @RequestParam(value = "title", required = false) String title,
+                                           @RequestParam(value = "description", required = false) String description,
+                                           @RequestParam(value = "visibility", defaultValue = "PRIVATE") VISIBILITY visibility,
+                                           @RequestParam(value = "size", required = false) Long size) {
+        Long userId = getCurrentUserId();
+        if (userId == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        try {
+            UploadSession session = uploadSessionService.createSession(userId, filename, title, description, visibility, size);
+            return ResponseEntity.created(URI.create("/photos/uploads/" + session.getId()))
+                    .header(UPLOAD_OFFSET_HEADER, "0")
+                    .body(UploadSessionDto.fromEntity(session, uploadSessionService.getMaxFileSize()));
+        } catch (IllegalArgumentException e) {
+            return error(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+    /**
+     * Retourne l'état d'une session, dont la position à laquelle reprendre.
+     */
+    @RequestMapping(value = "/{id}", method = {RequestMethod.GET, RequestMethod.HEAD})
+    public ResponseEntity<?> getSession(@PathVariable String id) {
+        Long userId = getCurrentUserId();
+        if (userId == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        try {
+            UploadSession session = uploadSessionService.getSession(id, userId);
+            return ResponseEntity.ok()
+                    .header(UPLOAD_OFFSET_HEADER, String.valueOf(session.getReceived_bytes()))
+                    .body(UploadSessionDto.fromEntity(session, uploadSessionService.getMaxFileSize()));
+        } catch (NoSuchElementException e) {
+            return error(HttpStatus.NOT_FOUND, e.getMessage());
+        } catch (SecurityException e) {
+            return error(HttpStatus.FORBIDDEN, e.getMessage());
+        }
+    }
+    /**
+     * Ajoute un morceau à la position indiquée par l'en-tête Upload-Offset.
+     */
+    @PutMapping("/{id}")
+    public ResponseEntity<?> appendChunk(@PathVariable String id,
+                                         @RequestHeader(UPLOAD_OFFSET_HEADER) long offset,
+                                         HttpServletRequest request) {
+        Long userId = getCurrentUserId();
+        if (userId == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        try (InputStream body = request.getInputStream()) {
+            UploadSession session = uploadSessionService.appendChunk(id, userId, offset, body);
+            return ResponseEntity.noContent()
+                    .header(UPLOAD_OFFSET_HEADER, String.valueOf(session.getReceived_bytes()))
+                    .build();
+        } catch (UploadSessionService.OffsetMismatchException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .header(UPLOAD_OFFSET_HEADER, String.valueOf(e.getExpectedOffset()))
+                    .body(Map.of("error", e.getMessage()));
+        } catch (NoSuchElementException e) {
+            return error(HttpStatus.NOT_FOUND, e.getMessage());
+        } catch (SecurityException e) {
+            return error(HttpStatus.FORBIDDEN, e.getMessage());
+        } catch (IllegalArgumentException e) {
+            return error(HttpStatus.CONTENT_TOO_LARGE, e.getMessage());
+        } catch (IOException e) {
+            return error(HttpStatus.BAD_REQUEST, "Lecture du morceau impossible: " + e.getMessage());
+        }
+    }
+    /**
+     * Finalise la session et crée la photo.
+     */
+    @PostMapping("/{id}/complete")
+    public ResponseEntity<?> completeSession(@PathVariable String id) {
+        Long userId = getCurrentUserId();
+        if (userId == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        try {
+            Photo photo = uploadSessionService.completeSession(id, userId);
+            return ResponseEntity.created(URI.create("/photos/" + photo.getId()))
+                    .body(Map.of("photoId", photo.getId()));
+        } catch (NoSuchElementException e) {
+            return error(HttpStatus.NOT_FOUND, e.getMessage());
+        } catch (SecurityException e) {
+            return error(HttpStatus.FORBIDDEN, e.getMessage());
+        } catch (IllegalArgumentException e) {
+            return error(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+    /**
+     * Abandonne une session.
+     */
+    @DeleteMapping("/{id}")
+    public ResponseEntity<?> abortSession(@PathVariable String id) {
+        Long userId = getCurrentUserId();
+        if (userId == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        try {
+            uploadSessionService.abortSession(id, userId);
+            return ResponseEntity.noContent().build();
+        } catch (NoSuchElementException e) {
+            return error(HttpStatus.NOT_FOUND, e.getMessage());
+        } catch (SecurityException e) {
+            return error(HttpStatus.FORBIDDEN, e.getMessage());
+        }
+    }
+    private ResponseEntity<Map<String, String>> error(HttpStatus status, String message) {
+        return ResponseEntity.status(status).body(Map.of("error", message));
+    }
+    /**
+     * Récupère l'ID de l'utilisateur actuellement connecté.
+     */
+    private Long getCurrentUserId() {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        if (auth == null || !auth.isAuthenticated() || "anonymousUser".equals(auth.getPrincipal())) {
+            return null;
+        }
+        String username = auth.getName();
+        return userRepository.findByUsername(username)
+                .map(User::getId)
+                .orElse(null);
+    }
+}
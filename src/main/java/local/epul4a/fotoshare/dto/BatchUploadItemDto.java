@@ -0,0 +1,18 @@
+package local.epul4a.fotoshare.dto;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+/**
+ * DTO du résultat d'un fichier dans un upload multiple.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchUploadItemDto {
+    private String originalFilename;
+    private boolean success;
+    private Long photoId;
+    private String error;
+}
@@ -0,0 +1,19 @@
+package local.epul4a.fotoshare.dto;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+/**
+ * DTO des statistiques des suppressions de fichiers differees.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class FileDeletionStatsDto {
+    private long pending;
+    private long deleted;
+    private long skipped;
+    private long retried;
+    private long abandoned;
+}
@@ -0,0 +1,27 @@
+package local.epul4a.fotoshare.dto;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.util.Date;
+/**
+ * DTO du rapport d'une passe du ramasse-miettes des fichiers orphelins.
+ * En mode simulation, les compteurs indiquent ce qui aurait ete deplace ou supprime.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrphanCollectionReportDto {
+    private boolean dryRun;
+    private Date startedAt;
+    private long durationMillis;
+    private long scannedFiles;
+    private long referencedFiles;
+    private long recentFiles;
+    private long quarantinedFiles;
+    private long quarantinedBytes;
+    private long restoredFiles;
+    private long deletedFiles;
+    private long reclaimedBytes;
+}
@@ -21,11 +21,16 @@ public class PhotoResponseDto {
     private String originalFilename;
     private String contentType;
     private Long fileSize;
+    private Integer width;
+    private Integer height;
     private VISIBILITY visibility;
     private Long ownerId;
     private String ownerUsername;
     private Date createdAt;
     private PERMISSION userPermission;
+    private Long duplicateOf;
+    private String placeholder;
+    private String dominantColor;
     /**
      * Convertit une entité Photo en DTO.
      */
@@ -37,11 +42,16 @@ public class PhotoResponseDto {
                 .originalFilename(photo.getOriginal_filename())
                 .contentType(photo.getContent_type())
                 .fileSize(photo.getFile_size())
+                .width(photo.getWidth())
+                .height(photo.getHeight())
                 .visibility(photo.getVisibility())
                 .ownerId(photo.getOwner_id())
                 .ownerUsername(ownerUsername)
                 .createdAt(photo.getCreated_at())
                 .userPermission(userPermission)
+                .duplicateOf(photo.getDuplicate_of())
+                .placeholder(photo.getPlaceholder())
+                .dominantColor(photo.getDominant_color())
                 .build();
     }
 }
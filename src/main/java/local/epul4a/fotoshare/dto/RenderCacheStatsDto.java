@@ -0,0 +1,22 @@
+package local.epul4a.fotoshare.dto;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+/**
+ * DTO des statistiques du cache disque des rendus a la demande.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RenderCacheStatsDto {
+    private int entries;
+    private long bytes;
+    private long maxBytes;
+    private long hits;
+    private long misses;
+    private double hitRate;
+    private long renders;
+    private long evictions;
+}
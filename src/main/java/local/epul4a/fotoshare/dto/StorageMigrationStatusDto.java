@@ -0,0 +1,20 @@
+package local.epul4a.fotoshare.dto;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.util.Date;
+/**
+ * DTO de l'etat de la migration du stockage vers les sous-repertoires.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class StorageMigrationStatusDto {
+    private boolean running;
+    private long migratedFiles;
+    private long failedFiles;
+    private Date startedAt;
+    private Date finishedAt;
+}
@@ -0,0 +1,24 @@
+package local.epul4a.fotoshare.dto;
+import local.epul4a.fotoshare.model.JOB_STATUS;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.util.Date;
+/**
+ * DTO de l'etat du rattrapage des miniatures.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ThumbnailBackfillStatusDto {
+    private boolean running;
+    private JOB_STATUS status;
+    private String spec;
+    private long lastPhotoId;
+    private long processed;
+    private long failed;
+    private Date startedAt;
+    private Date updatedAt;
+}
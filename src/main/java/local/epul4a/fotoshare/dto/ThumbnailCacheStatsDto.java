@@ -0,0 +1,23 @@
+package local.epul4a.fotoshare.dto;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+/**
+ * DTO des statistiques du cache memoire des miniatures.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ThumbnailCacheStatsDto {
+    private int entries;
+    private long bytes;
+    private long maxBytes;
+    private long hits;
+    private long misses;
+    private double hitRate;
+    private long evictions;
+    private long invalidations;
+    private long rejected;
+}
@@ -0,0 +1,31 @@
+package local.epul4a.fotoshare.dto;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+/**
+ * DTO des statistiques de la file de generation des miniatures.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ThumbnailQueueStatsDto {
+    private int queueDepth;
+    private int queueCapacity;
+    private int activeWorkers;
+    private long submitted;
+    private long completed;
+    private long failed;
+    private long rejected;
+    private double averageLatencyMillis;
+    private double averageProcessingMillis;
+    private double maxLatencyMillis;
+    private long bufferedBytes;
+    private long deferred;
+    private long resubmitted;
+    private long decodeBudgetBytes;
+    private long decodeBytesInUse;
+    private long decodePeakBytes;
+    private long decodeWaits;
+}
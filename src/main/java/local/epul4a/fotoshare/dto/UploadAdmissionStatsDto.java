@@ -0,0 +1,21 @@
+package local.epul4a.fotoshare.dto;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+/**
+ * DTO des statistiques du controle d'admission des envois.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UploadAdmissionStatsDto {
+    private int maxConcurrent;
+    private int maxPerUser;
+    private int inFlight;
+    private int activeUsers;
+    private long admitted;
+    private long rejectedGlobal;
+    private long rejectedPerUser;
+}
@@ -0,0 +1,32 @@
+package local.epul4a.fotoshare.dto;
+import local.epul4a.fotoshare.model.UploadSession;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+/**
+ * DTO de l'état d'une session d'upload fractionné.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UploadSessionDto {
+    private String id;
+    private String originalFilename;
+    private Long totalSize;
+    private long offset;
+    private long maxFileSize;
+    /**
+     * Convertit une entité UploadSession en DTO.
+     */
+    public static UploadSessionDto fromEntity(UploadSession session, long maxFileSize) {
+        return UploadSessionDto.builder()
+                .id(session.getId())
+                .originalFilename(session.getOriginal_filename())
+                .totalSize(session.getTotal_size())
+                .offset(session.getReceived_bytes())
+                .maxFileSize(maxFileSize)
+                .build();
+    }
+}
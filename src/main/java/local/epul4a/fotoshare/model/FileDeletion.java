@@ -0,0 +1,32 @@
+package local.epul4a.fotoshare.model;
+import jakarta.persistence.*;
+import lombok.*;
+import java.util.Date;
+/**
+ * Suppression de fichiers en attente (table d'outbox).
+ * La ligne est ecrite dans la transaction qui supprime la photo : les fichiers (original,
+ * miniature, declinaisons) ne sont effaces qu'apres le commit, par le
+ * {@link local.epul4a.fotoshare.service.FileDeletionService}.
+ */
+@Setter
+@Getter
+@Builder
+@Entity
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "file_deletion", indexes = @Index(name = "idx_file_deletion_next_attempt", columnList = "next_attempt_at"))
+public class FileDeletion {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    @Column(name = "storage_filename", nullable = false)
+    private String storage_filename;
+    @Column(nullable = false)
+    private int attempts;
+    @Column(name = "next_attempt_at", nullable = false)
+    private Date next_attempt_at;
+    @Column(name = "last_error", length = 500)
+    private String last_error;
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private Date created_at;
+}
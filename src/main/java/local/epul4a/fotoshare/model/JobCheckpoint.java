@@ -0,0 +1,36 @@
+package local.epul4a.fotoshare.model;
+import jakarta.persistence.*;
+import lombok.*;
+import java.util.Date;
+/**
+ * Point de reprise d'un traitement de fond parcourant les photos par identifiant croissant.
+ * Le dernier identifiant traite est enregistre apres chaque lot : un traitement interrompu
+ * (arret, redemarrage) reprend au lot suivant.
+ */
+@Setter
+@Getter
+@Builder
+@Entity
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "job_checkpoint")
+public class JobCheckpoint {
+    @Id
+    @Column(length = 50)
+    private String name;
+    @Column(name = "last_id", nullable = false)
+    private long last_id;
+    @Column(name = "spec", length = 100)
+    private String spec;
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private JOB_STATUS status;
+    @Column(nullable = false)
+    private long processed;
+    @Column(nullable = false)
+    private long failed;
+    @Column(name = "started_at")
+    private Date started_at;
+    @Column(name = "updated_at", nullable = false)
+    private Date updated_at;
+}
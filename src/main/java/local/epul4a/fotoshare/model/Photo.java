@@ -18,14 +18,36 @@ public class Photo {
     private String description;
     @Column(name = "original_filename", nullable = false)
     private String original_filename;
-    @Column(name = "storage_filename", nullable = false, unique = true)
+    @Column(name = "storage_filename", nullable = false)
     private String storage_filename;
     @Column(name = "thumbnail_filename")
     private String thumbnail_filename;
+    @Enumerated(EnumType.STRING)
+    @Column(name = "thumbnail_status", length = 20)
+    @Builder.Default
+    private THUMBNAIL_STATUS thumbnail_status = THUMBNAIL_STATUS.PENDING;
+    @Column(name = "rendition_sizes", length = 100)
+    private String rendition_sizes;
+    @Column(name = "thumbnail_spec", length = 100)
+    private String thumbnail_spec;
     @Column(name = "content_type", nullable = false, length = 50)
     private String content_type;
     @Column(name = "file_size")
     private Long file_size;
+    @Column(name = "content_hash", length = 64)
+    private String content_hash;
+    @Column(name = "width")
+    private Integer width;
+    @Column(name = "height")
+    private Integer height;
+    @Column(name = "perceptual_hash")
+    private Long perceptual_hash;
+    @Column(name = "duplicate_of")
+    private Long duplicate_of;
+    @Column(name = "placeholder", length = 2048)
+    private String placeholder;
+    @Column(name = "dominant_color", length = 7)
+    private String dominant_color;
     @Enumerated(EnumType.STRING)
     @Column(nullable = false)
     @Builder.Default
@@ -0,0 +1,41 @@
+package local.epul4a.fotoshare.model;
+import jakarta.persistence.*;
+import lombok.*;
+import java.util.Date;
+/**
+ * Fichier physique adressé par son contenu (SHA-256).
+ * Plusieurs photos peuvent référencer le même blob ; le fichier n'est supprimé
+ * que lorsque le compteur de références tombe à zéro.
+ * La ligne est conservée à zéro référence jusqu'au passage du thread de suppression,
+ * qui la supprime avec le fichier : un nouvel upload du même contenu la reprend entre-temps.
+ */
+@Setter
+@Getter
+@Builder
+@Entity
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "stored_blob")
+public class StoredBlob {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    @Column(name = "sha256", nullable = false, unique = true, length = 64)
+    private String sha256;
+    @Column(name = "storage_filename", nullable = false, unique = true)
+    private String storage_filename;
+    @Column(name = "content_type", nullable = false, length = 50)
+    private String content_type;
+    @Column(name = "file_size")
+    private Long file_size;
+    @Column(name = "ref_count", nullable = false)
+    private long ref_count;
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private Date created_at;
+    @PrePersist
+    protected void onCreate() {
+        if (created_at == null) {
+            created_at = new Date();
+        }
+    }
+}
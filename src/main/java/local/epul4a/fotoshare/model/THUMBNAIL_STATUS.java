@@ -0,0 +1,6 @@
+package local.epul4a.fotoshare.model;
+public enum THUMBNAIL_STATUS {
+    PENDING,
+    READY,
+    FAILED
+}
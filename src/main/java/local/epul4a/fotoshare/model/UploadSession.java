@@ -0,0 +1,49 @@
+package local.epul4a.fotoshare.model;
+import jakarta.persistence.*;
+import lombok.*;
+import java.util.Date;
+/**
+ * Session d'upload fractionné (reprise possible après coupure).
+ * Les morceaux reçus sont ajoutés à un fichier de transit jusqu'à la finalisation.
+ */
+@Setter
+@Getter
+@Builder
+@Entity
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "upload_session")
+public class UploadSession {
+    @Id
+    @Column(length = 36)
+    private String id;
+    @Column(name = "owner_id", nullable = false)
+    private Long owner_id;
+    @Column(name = "original_filename", nullable = false)
+    private String original_filename;
+    @Column(length = 255)
+    private String title;
+    @Column(columnDefinition = "TEXT")
+    private String description;
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    @Builder.Default
+    private VISIBILITY visibility = VISIBILITY.PRIVATE;
+    @Column(name = "total_size")
+    private Long total_size;
+    @Column(name = "received_bytes", nullable = false)
+    private long received_bytes;
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private Date created_at;
+    @Column(name = "updated_at", nullable = false)
+    private Date updated_at;
+    @PrePersist
+    protected void onCreate() {
+        if (created_at == null) {
+            created_at = new Date();
+        }
+        if (updated_at == null) {
+            updated_at = created_at;
+        }
+    }
+}
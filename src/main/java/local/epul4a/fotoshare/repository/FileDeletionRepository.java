@@ -0,0 +1,12 @@
+package local.epul4a.fotoshare.repository;
+import local.epul4a.fotoshare.model.FileDeletion;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import java.util.Date;
+import java.util.List;
+public interface FileDeletionRepository extends JpaRepository<FileDeletion, Long> {
+    @Query("SELECT d FROM FileDeletion d WHERE d.next_attempt_at <= :now ORDER BY d.id")
+    List<FileDeletion> findDue(@Param("now") Date now, Pageable pageable);
+}
@@ -0,0 +1,5 @@
+package local.epul4a.fotoshare.repository;
+import local.epul4a.fotoshare.model.JobCheckpoint;
+import org.springframework.data.jpa.repository.JpaRepository;
+public interface JobCheckpointRepository extends JpaRepository<JobCheckpoint, String> {
+}
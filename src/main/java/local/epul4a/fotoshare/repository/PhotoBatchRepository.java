@@ -0,0 +1,105 @@
+package local.epul4a.fotoshare.repository;
+import local.epul4a.fotoshare.model.Photo;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataRetrievalFailureException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Repository;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.List;
+import java.util.Map;
+/**
+ * Insertion des photos par lot JDBC.
+ * Hibernate ne regroupe pas les INSERT des entités à identifiant IDENTITY,
+ * d'où ce passage direct par JDBC pour les uploads multiples.
+ */
+@Repository
+public class PhotoBatchRepository {
+    private static final String INSERT_SQL = "INSERT INTO photo (title, description, original_filename, storage_filename, "
+            + "thumbnail_filename, thumbnail_status, rendition_sizes, thumbnail_spec, content_type, file_size, content_hash, width, height, perceptual_hash, duplicate_of, "
+            + "placeholder, dominant_color, visibility, owner_id, created_at) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    /**
+     * Insère les photos en un seul lot et renseigne leurs identifiants générés.
+     * Chaque colonne de {@link Photo} doit figurer dans la requête et dans {@code setValues}.
+     *
+     * @param photos Les photos à insérer
+     * @throws DataRetrievalFailureException Si le pilote ne renvoie pas un identifiant par photo ;
+     * la transaction appelante est alors annulée
+     */
+    public void insertAll(List<Photo> photos) {
+        if (photos.isEmpty()) {
+            return;
+        }
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.batchUpdate(
+            connection -> connection.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS),
+            new BatchPreparedStatementSetter() {
+                @Override
+                public void setValues(PreparedStatement ps, int i) throws SQLException {
+                    Photo photo = photos.get(i);
+                    ps.setString(1, photo.getTitle());
+                    ps.setString(2, photo.getDescription());
+                    ps.setString(3, photo.getOriginal_filename());
+                    ps.setString(4, photo.getStorage_filename());
+                    ps.setString(5, photo.getThumbnail_filename());
+                    ps.setString(6, photo.getThumbnail_status() != null ? photo.getThumbnail_status().name() : null);
+                    ps.setString(7, photo.getRendition_sizes());
+                    ps.setString(8, photo.getThumbnail_spec());
+                    ps.setString(9, photo.getContent_type());
+                    if (photo.getFile_size() != null) {
+                        ps.setLong(10, photo.getFile_size());
+                    } else {
+                        ps.setNull(10, Types.BIGINT);
+                    }
+                    ps.setString(11, photo.getContent_hash());
+                    setNullableInt(ps, 12, photo.getWidth());
+                    setNullableInt(ps, 13, photo.getHeight());
+                    setNullableLong(ps, 14, photo.getPerceptual_hash());
+                    setNullableLong(ps, 15, photo.getDuplicate_of());
+                    ps.setString(16, photo.getPlaceholder());
+                    ps.setString(17, photo.getDominant_color());
+                    ps.setString(18, photo.getVisibility().name());
+                    ps.setLong(19, photo.getOwner_id());
+                    ps.setTimestamp(20, new Timestamp(photo.getCreated_at().getTime()));
+                }
+                @Override
+                public int getBatchSize() {
+                    return photos.size();
+                }
+            },
+            keyHolder
+        );
+        List<Map<String, Object>> keys = keyHolder.getKeyList();
+        if (keys.size() != photos.size()) {
+            throw new DataRetrievalFailureException(
+                    keys.size() + " identifiants générés pour " + photos.size() + " photos insérées");
+        }
+        for (int i = 0; i < photos.size(); i++) {
+            Object key = keys.get(i).values().iterator().next();
+            photos.get(i).setId(((Number) key).longValue());
+        }
+    }
+    private static void setNullableInt(PreparedStatement ps, int index, Integer value) throws SQLException {
+        if (value != null) {
+            ps.setInt(index, value);
+        } else {
+            ps.setNull(index, Types.INTEGER);
+        }
+    }
+    private static void setNullableLong(PreparedStatement ps, int index, Long value) throws SQLException {
+        if (value != null) {
+            ps.setLong(index, value);
+        } else {
+            ps.setNull(index, Types.BIGINT);
+        }
+    }
+}
@@ -1,12 +1,18 @@
 package local.epul4a.fotoshare.repository;
 import local.epul4a.fotoshare.model.Photo;
+import local.epul4a.fotoshare.model.THUMBNAIL_STATUS;
 import local.epul4a.fotoshare.model.VISIBILITY;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
+import java.util.Optional;
 public interface PhotoRepository extends JpaRepository<Photo, Long> {
     @Query("SELECT p FROM Photo p WHERE p.owner_id = :ownerId")
     List<Photo> findByOwnerId(@Param("ownerId") Long ownerId);
@@ -22,4 +28,51 @@ public interface PhotoRepository extends JpaRepository<Photo, Long> {
     List<Photo> findPublicPhotos();
     @Query("SELECT p FROM Photo p WHERE p.visibility = 'PUBLIC' ORDER BY p.created_at DESC")
     Page<Photo> findPublicPhotosPaged(Pageable pageable);
+    @Query("SELECT p FROM Photo p WHERE p.storage_filename = :storageFilename AND p.thumbnail_status = 'READY'")
+    List<Photo> findReadyByStorageFilename(@Param("storageFilename") String storageFilename);
+    @Query("SELECT COUNT(p) FROM Photo p WHERE p.storage_filename = :storageFilename")
+    long countByStorageFilename(@Param("storageFilename") String storageFilename);
+    @Query("SELECT p.storage_filename FROM Photo p WHERE p.storage_filename IN :storageFilenames")
+    List<String> findExistingStorageFilenames(@Param("storageFilenames") Collection<String> storageFilenames);
+    @Query("SELECT p FROM Photo p WHERE p.width IS NULL AND p.id > :afterId ORDER BY p.id")
+    List<Photo> findWithoutDimensions(@Param("afterId") Long afterId, Pageable pageable);
+    @Transactional
+    @Modifying
+    @Query("UPDATE Photo p SET p.width = :width, p.height = :height WHERE p.id = :photoId")
+    int updateDimensions(@Param("photoId") Long photoId, @Param("width") Integer width, @Param("height") Integer height);
+    @Transactional
+    @Modifying
+    @Query("UPDATE Photo p SET p.thumbnail_filename = :thumbnailFilename, p.rendition_sizes = :renditionSizes, p.thumbnail_spec = :spec, "
+            + "p.perceptual_hash = :perceptualHash, p.placeholder = :placeholder, p.dominant_color = :dominantColor, "
+            + "p.thumbnail_status = :status WHERE p.id = :photoId")
+    int updateDerivatives(@Param("photoId") Long photoId,
+                          @Param("thumbnailFilename") String thumbnailFilename,
+                          @Param("renditionSizes") String renditionSizes,
+                          @Param("spec") String spec,
+                          @Param("perceptualHash") Long perceptualHash,
+                          @Param("placeholder") String placeholder,
+                          @Param("dominantColor") String dominantColor,
+                          @Param("status") THUMBNAIL_STATUS status);
+    @Query("SELECT p FROM Photo p WHERE p.id > :afterId AND (p.thumbnail_status IS NULL OR p.thumbnail_status = 'FAILED' "
+            + "OR (p.thumbnail_status = 'PENDING' AND p.created_at < :pendingBefore) "
+            + "OR (p.thumbnail_status = 'READY' AND (p.thumbnail_filename IS NULL OR p.thumbnail_spec IS NULL OR p.thumbnail_spec <> :spec))) "
+            + "ORDER BY p.id")
+    List<Photo> findNeedingDerivatives(@Param("afterId") Long afterId,
+                                       @Param("spec") String spec,
+                                       @Param("pendingBefore") Date pendingBefore,
+                                       Pageable pageable);
+    @Query("SELECT p FROM Photo p WHERE p.id > :afterId AND p.thumbnail_status = 'PENDING' AND p.created_at < :pendingBefore ORDER BY p.id")
+    List<Photo> findPendingBefore(@Param("afterId") Long afterId, @Param("pendingBefore") Date pendingBefore, Pageable pageable);
+    @Query("SELECT p.owner_id FROM Photo p WHERE p.id = :photoId")
+    Optional<Long> findOwnerId(@Param("photoId") Long photoId);
+    @Query("SELECT p.id, p.perceptual_hash FROM Photo p WHERE p.owner_id = :ownerId AND p.perceptual_hash IS NOT NULL")
+    List<Object[]> findPerceptualHashesByOwner(@Param("ownerId") Long ownerId);
+    @Transactional
+    @Modifying
+    @Query("UPDATE Photo p SET p.duplicate_of = :duplicateOf WHERE p.id = :photoId")
+    int updateDuplicateOf(@Param("photoId") Long photoId, @Param("duplicateOf") Long duplicateOf);
+    @Transactional
+    @Modifying
+    @Query("UPDATE Photo p SET p.duplicate_of = NULL WHERE p.duplicate_of = :photoId")
+    int clearDuplicateOf(@Param("photoId") Long photoId);
 }
@@ -0,0 +1,29 @@
+package local.epul4a.fotoshare.repository;
+import jakarta.persistence.LockModeType;
+import local.epul4a.fotoshare.model.StoredBlob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+public interface StoredBlobRepository extends JpaRepository<StoredBlob, Long> {
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT b FROM StoredBlob b WHERE b.sha256 = :sha256")
+    Optional<StoredBlob> findBySha256ForUpdate(@Param("sha256") String sha256);
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT b FROM StoredBlob b WHERE b.storage_filename = :storageFilename")
+    Optional<StoredBlob> findByStorageFilenameForUpdate(@Param("storageFilename") String storageFilename);
+    @Query("SELECT b.storage_filename FROM StoredBlob b WHERE b.storage_filename IN :storageFilenames AND b.ref_count > 0")
+    List<String> findReferencedStorageFilenames(@Param("storageFilenames") Collection<String> storageFilenames);
+    @Modifying
+    @Query("UPDATE StoredBlob b SET b.ref_count = b.ref_count + 1 WHERE b.sha256 = :sha256")
+    int incrementRefCount(@Param("sha256") String sha256);
+    @Modifying
+    @Query("UPDATE StoredBlob b SET b.ref_count = b.ref_count - 1 WHERE b.storage_filename = :storageFilename")
+    int decrementRefCount(@Param("storageFilename") String storageFilename);
+    @Query("SELECT COUNT(b) > 0 FROM StoredBlob b WHERE b.storage_filename = :storageFilename AND b.ref_count <= 0")
+    boolean isUnreferenced(@Param("storageFilename") String storageFilename);
+}
@@ -0,0 +1,11 @@
+package local.epul4a.fotoshare.repository;
+import local.epul4a.fotoshare.model.UploadSession;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import java.util.Date;
+import java.util.List;
+public interface UploadSessionRepository extends JpaRepository<UploadSession, String> {
+    @Query("SELECT s FROM UploadSession s WHERE s.updated_at < :before")
+    List<UploadSession> findInactiveSince(@Param("before") Date before);
+}
@@ -0,0 +1,155 @@
+package local.epul4a.fotoshare.security;
+import jakarta.annotation.PostConstruct;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+import local.epul4a.fotoshare.dto.UploadAdmissionStatsDto;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.web.context.HttpSessionSecurityContextRepository;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+/**
+ * Controle d'admission des envois de photos.
+ * Le nombre d'envois traites en meme temps est borne sur le noeud et par utilisateur ;
+ * un envoi en trop est refuse immediatement (503 et Retry-After) au lieu d'occuper un thread
+ * Tomcat en attendant le stockage, ce qui laisse les threads libres pour la navigation.
+ * Le filtre est place avant Spring Security, pour refuser la requete avant la lecture du corps
+ * multipart : l'utilisateur est donc lu directement dans le contexte de securite de la session.
+ */
+@Component
+public class UploadAdmissionFilter extends OncePerRequestFilter {
+    private static final String ANONYMOUS = "";
+    @Value("${fotoshare.upload.admission.max-concurrent:16}")
+    private int maxConcurrent;
+    @Value("${fotoshare.upload.admission.max-per-user:3}")
+    private int maxPerUser;
+    @Value("${fotoshare.upload.admission.retry-after-seconds:5}")
+    private int retryAfterSeconds;
+    private Semaphore permits;
+    private final ConcurrentHashMap<String, Integer> inFlightByUser = new ConcurrentHashMap<>();
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong rejectedGlobal = new AtomicLong();
+    private final AtomicLong rejectedPerUser = new AtomicLong();
+    @PostConstruct
+    public void init() {
+        if (maxConcurrent < 1 || maxPerUser < 1) {
+            throw new IllegalArgumentException("Les limites d'admission des envois doivent etre positives");
+        }
+        permits = new Semaphore(maxConcurrent);
+    }
+    /**
+     * Seuls les envois de donnees sont soumis a l'admission : formulaire simple, lot,
+     * morceaux et finalisation des envois reprenables. Tout le reste passe sans compter.
+     */
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        String method = request.getMethod();
+        if ("POST".equals(method)) {
+            return !path.equals("/photos/upload") && !path.equals("/photos/upload/batch")
+                    && !(path.startsWith("/photos/uploads/") && path.endsWith("/complete"));
+        }
+        if ("PUT".equals(method)) {
+            return !path.startsWith("/photos/uploads/");
+        }
+        return true;
+    }
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        String user = resolveUser(request);
+        boolean anonymous = ANONYMOUS.equals(user);
+        if (!anonymous && !acquireUserSlot(user)) {
+            rejectedPerUser.incrementAndGet();
+            reject(response, "Trop d'envois en cours pour cet utilisateur, veuillez reessayer plus tard.");
+            return;
+        }
+        if (!permits.tryAcquire()) {
+            if (!anonymous) {
+                releaseUserSlot(user);
+            }
+            rejectedGlobal.incrementAndGet();
+            reject(response, "Serveur surcharge, veuillez reessayer plus tard.");
+            return;
+        }
+        admitted.incrementAndGet();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            permits.release();
+            if (!anonymous) {
+                releaseUserSlot(user);
+            }
+        }
+    }
+    /**
+     * Retourne l'etat du controle d'admission.
+     */
+    public UploadAdmissionStatsDto getStats() {
+        return UploadAdmissionStatsDto.builder()
+                .maxConcurrent(maxConcurrent)
+                .maxPerUser(maxPerUser)
+                .inFlight(maxConcurrent - permits.availablePermits())
+                .activeUsers(inFlightByUser.size())
+                .admitted(admitted.get())
+                .rejectedGlobal(rejectedGlobal.get())
+                .rejectedPerUser(rejectedPerUser.get())
+                .build();
+    }
+    /**
+     * Lit le nom de l'utilisateur dans le contexte de securite enregistre en session,
+     * sans creer de session. Une requete non authentifiee n'est comptee que globalement
+     * (elle sera de toute facon refusee par Spring Security).
+     */
+    private String resolveUser(HttpServletRequest request) {
+        HttpSession session = request.getSession(false);
+        if (session == null) {
+            return ANONYMOUS;
+        }
+        Object context = session.getAttribute(HttpSessionSecurityContextRepository.SPRING_SECURITY_CONTEXT_KEY);
+        if (context instanceof SecurityContext securityContext) {
+            Authentication authentication = securityContext.getAuthentication();
+            if (authentication != null && authentication.isAuthenticated()) {
+                return authentication.getName();
+            }
+        }
+        return ANONYMOUS;
+    }
+    private boolean acquireUserSlot(String user) {
+        boolean[] acquired = {false};
+        inFlightByUser.compute(user, (key, count) -> {
+            int current = count == null ? 0 : count;
+            if (current >= maxPerUser) {
+                return count;
+            }
+            acquired[0] = true;
+            return current + 1;
+        });
+        return acquired[0];
+    }
+    private void releaseUserSlot(String user) {
+        inFlightByUser.computeIfPresent(user, (key, count) -> count <= 1 ? null : count - 1);
+    }
+    /**
+     * Refuse la requete sans lire son corps ; la connexion est fermee pour que Tomcat
+     * n'ait pas a absorber le reste de l'envoi.
+     */
+    private void reject(HttpServletResponse response, String message) throws IOException {
+        response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+        response.setHeader(HttpHeaders.CONNECTION, "close");
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding("UTF-8");
+        response.getWriter().write("{\"error\":\"" + message + "\"}");
+    }
+}
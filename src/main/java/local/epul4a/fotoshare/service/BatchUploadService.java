@@ -0,0 +1,137 @@
+package local.epul4a.fotoshare.service;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import local.epul4a.fotoshare.dto.BatchUploadItemDto;
+import local.epul4a.fotoshare.model.Photo;
+import local.epul4a.fotoshare.model.VISIBILITY;
+import local.epul4a.fotoshare.repository.PhotoBatchRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+/**
+ * Service d'upload multiple.
+ * Chaque fichier est validé et stocké en parallèle sur un pool borné,
+ * puis toutes les photos valides sont insérées en un seul lot JDBC.
+ * Un fichier invalide n'empêche pas l'enregistrement des autres.
+ */
+@Service
+public class BatchUploadService {
+    @Autowired
+    private IngestService ingestService;
+    @Autowired
+    private PhotoService photoService;
+    @Autowired
+    private BlobService blobService;
+    @Autowired
+    private PhotoBatchRepository photoBatchRepository;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Value("${fotoshare.upload.batch.threads:4}")
+    private int threads;
+    @Value("${fotoshare.upload.batch.max-files:200}")
+    private int maxFiles;
+    private ThreadPoolExecutor executor;
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadCounter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(
+            threads, threads,
+            0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(maxFiles),
+            runnable -> {
+                Thread thread = new Thread(runnable, "batch-upload-" + threadCounter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            },
+            new ThreadPoolExecutor.CallerRunsPolicy()
+        );
+    }
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+    /**
+     * Upload plusieurs photos en une requête.
+     *
+     * @param files Les fichiers uploadés
+     * @param description La description commune
+     * @param visibility La visibilité commune
+     * @param ownerId L'ID du propriétaire
+     * @return Le résultat de chaque fichier, dans l'ordre d'envoi
+     */
+    public List<BatchUploadItemDto> uploadPhotos(List<MultipartFile> files, String description,
+                                                 VISIBILITY visibility, Long ownerId) {
+        if (files == null || files.isEmpty()) {
+            throw new IllegalArgumentException("Aucun fichier à uploader");
+        }
+        if (files.size() > maxFiles) {
+            throw new IllegalArgumentException("Trop de fichiers: " + maxFiles + " au maximum par envoi");
+        }
+        List<Future<IngestService.IngestedFile>> futures = new ArrayList<>();
+        for (MultipartFile file : files) {
+            futures.add(executor.submit(() -> ingestService.ingest(file)));
+        }
+        List<BatchUploadItemDto> results = new ArrayList<>();
+        List<Photo> photos = new ArrayList<>();
+        List<IngestService.IngestedFile> ingestedFiles = new ArrayList<>();
+        List<BatchUploadItemDto> pendingItems = new ArrayList<>();
+        for (int i = 0; i < files.size(); i++) {
+            String originalFilename = files.get(i).getOriginalFilename();
+            BatchUploadItemDto item = BatchUploadItemDto.builder().originalFilename(originalFilename).build();
+            results.add(item);
+            try {
+                IngestService.IngestedFile ingested = futures.get(i).get();
+                photos.add(photoService.newPhoto(ingested, originalFilename, null, description, visibility, ownerId));
+                ingestedFiles.add(ingested);
+                pendingItems.add(item);
+            } catch (ExecutionException e) {
+                item.setError(e.getCause() instanceof IllegalArgumentException
+                        ? e.getCause().getMessage()
+                        : "Erreur lors de l'upload: " + e.getCause().getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                item.setError("Upload interrompu");
+            }
+        }
+        try {
+            new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+                photoBatchRepository.insertAll(photos);
+                for (int i = 0; i < photos.size(); i++) {
+                    photoService.scheduleThumbnail(photos.get(i), ingestedFiles.get(i));
+                }
+            });
+        } catch (RuntimeException e) {
+            new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+                for (IngestService.IngestedFile ingested : ingestedFiles) {
+                    blobService.releaseFiles(ingested.getStorageFilename());
+                }
+            });
+            for (BatchUploadItemDto item : pendingItems) {
+                item.setError("Erreur lors de l'enregistrement: " + e.getMessage());
+            }
+            return results;
+        }
+        for (int i = 0; i < photos.size(); i++) {
+            pendingItems.get(i).setSuccess(true);
+            pendingItems.get(i).setPhotoId(photos.get(i).getId());
+        }
+        return results;
+    }
+    /**
+     * Retourne le nombre maximal de fichiers par envoi.
+     */
+    public int getMaxFiles() {
+        return maxFiles;
+    }
+}
@@ -0,0 +1,152 @@
+package local.epul4a.fotoshare.service;
+import local.epul4a.fotoshare.model.StoredBlob;
+import local.epul4a.fotoshare.repository.StoredBlobRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.Optional;
+/**
+ * Service de stockage adressé par contenu.
+ * Lorsque la déduplication est active, chaque fichier est stocké sous le nom
+ * {@code <sha256>.<extension>} et partagé par toutes les photos de même contenu.
+ * Un compteur de références en base détermine quand le fichier peut être supprimé.
+ */
+@Service
+public class BlobService {
+    @Autowired
+    private StoredBlobRepository storedBlobRepository;
+    @Autowired
+    private FileStorageService fileStorageService;
+    @Autowired
+    private FileDeletionService fileDeletionService;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Value("${fotoshare.storage.dedup.enabled:false}")
+    private boolean dedupEnabled;
+    /**
+     * Indique si le stockage adressé par contenu est actif.
+     */
+    public boolean isDedupEnabled() {
+        return dedupEnabled;
+    }
+    /**
+     * Retourne le nom de stockage dérivé d'une empreinte.
+     */
+    public String contentAddressedName(String sha256, String extension) {
+        return sha256 + "." + extension;
+    }
+    /**
+     * Prend une référence sur le blob correspondant à une empreinte.
+     * Si le blob existe déjà, le fichier temporaire est abandonné ;
+     * sinon il devient le fichier du nouveau blob.
+     * Un blob à zéro référence, en attente de suppression, est repris.
+     * La référence est prise dans une transaction indépendante pour être visible
+     * immédiatement des uploads concurrents ; elle est rendue si la transaction
+     * appelante est annulée.
+     *
+     * @param tempFile Le fichier temporaire ingéré
+     * @param sha256 L'empreinte du contenu
+     * @param extension L'extension du fichier
+     * @param mimeType Le type MIME validé
+     * @param size La taille du contenu
+     * @return true si le contenu était déjà stocké et référencé par une autre photo
+     */
+    public boolean acquire(Path tempFile, String sha256, String extension, String mimeType, long size) {
+        String storageFilename = contentAddressedName(sha256, extension);
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        Boolean alreadyStored = null;
+        for (int attempt = 0; alreadyStored == null; attempt++) {
+            try {
+                alreadyStored = transactionTemplate.execute(status -> {
+                    // Le verrou sur la ligne exclut le thread de suppression : un blob à zéro
+                    // référence est repris avant qu'il n'efface son fichier, ou après qu'il a tout supprimé
+                    Optional<StoredBlob> existing = storedBlobRepository.findBySha256ForUpdate(sha256);
+                    if (existing.isPresent()) {
+                        boolean referenced = existing.get().getRef_count() > 0;
+                        storedBlobRepository.incrementRefCount(sha256);
+                        if (fileStorageService.exists(storageFilename)) {
+                            fileStorageService.discardTempFile(tempFile);
+                        } else {
+                            fileStorageService.storeTempFileAs(tempFile, storageFilename);
+                        }
+                        return referenced;
+                    }
+                    fileStorageService.storeTempFileAs(tempFile, storageFilename);
+                    storedBlobRepository.saveAndFlush(StoredBlob.builder()
+                            .sha256(sha256)
+                            .storage_filename(storageFilename)
+                            .content_type(mimeType)
+                            .file_size(size)
+                            .ref_count(1)
+                            .created_at(new Date())
+                            .build());
+                    return false;
+                });
+            } catch (DataIntegrityViolationException e) {
+                if (attempt > 0) {
+                    throw e;
+                }
+            }
+        }
+        releaseOnRollback(storageFilename);
+        return alreadyStored;
+    }
+    /**
+     * Libère une référence sur un fichier stocké.
+     * Les fichiers sans blob associé (stockage par UUID) ne sont pas partagés.
+     * Un blob sans référence est conservé jusqu'à la suppression de son fichier.
+     *
+     * @param storageFilename Le nom du fichier stocké
+     * @return true si plus aucune photo ne référence le fichier
+     */
+    public boolean release(String storageFilename) {
+        if (storedBlobRepository.decrementRefCount(storageFilename) == 0) {
+            return true;
+        }
+        return storedBlobRepository.isUnreferenced(storageFilename);
+    }
+    /**
+     * Libère la référence d'une photo et, si c'était la dernière, planifie la suppression
+     * de l'original et de ses dérivées après le commit de la transaction courante.
+     *
+     * @param storageFilename Le nom du fichier stocké
+     */
+    public void releaseFiles(String storageFilename) {
+        if (storageFilename == null || !release(storageFilename)) {
+            return;
+        }
+        fileDeletionService.schedule(storageFilename);
+    }
+    /**
+     * Rend la référence prise si la transaction appelante est annulée.
+     */
+    private void releaseOnRollback(String storageFilename) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_ROLLED_BACK) {
+                    return;
+                }
+                TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+                transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+                try {
+                    transactionTemplate.executeWithoutResult(s -> releaseFiles(storageFilename));
+                } catch (Exception e) {
+                    System.err.println("Impossible de libérer le blob " + storageFilename + ": " + e.getMessage());
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,115 @@
+package local.epul4a.fotoshare.service;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+/**
+ * Budget memoire global des decodages d'images.
+ * Chaque decodage reserve la memoire de son raster avant de l'allouer ; tant que le budget
+ * est epuise, les decodages suivants attendent. La memoire occupee par les rasters reste
+ * ainsi bornee quel que soit le nombre de miniatures generees en parallele.
+ */
+@Service
+public class DecodeMemoryGovernor {
+    @Value("${fotoshare.thumbnail.decode-budget-mb:256}")
+    private long budgetMegabytes;
+    @Value("${fotoshare.thumbnail.decode-wait-seconds:30}")
+    private long waitSeconds;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+    private long inUse;
+    private long peak;
+    private final AtomicLong waits = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    /**
+     * Levee quand la memoire n'a pas pu etre reservee dans le delai imparti.
+     * La tache peut etre reportee sans etre consideree en echec.
+     */
+    public static class BudgetExceededException extends RuntimeException {
+        public BudgetExceededException(String message) {
+            super(message);
+        }
+    }
+    /**
+     * Reserve de la memoire de decodage, en attendant si necessaire.
+     * Une demande superieure au budget entier est ramenee au budget : elle s'execute seule.
+     *
+     * @param bytes La memoire necessaire
+     * @return La quantite reservee, a rendre avec {@link #release(long)}
+     * @throws BudgetExceededException si la memoire n'est pas disponible dans le delai
+     */
+    public long reserve(long bytes) {
+        long budget = getBudgetBytes();
+        long requested = Math.min(Math.max(bytes, 0), budget);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(waitSeconds);
+        lock.lock();
+        try {
+            boolean waited = false;
+            while (inUse + requested > budget) {
+                if (!waited) {
+                    waits.incrementAndGet();
+                    waited = true;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    timeouts.incrementAndGet();
+                    throw new BudgetExceededException("Budget memoire de decodage epuise ("
+                            + inUse + " / " + budget + " octets utilises)");
+                }
+                try {
+                    released.awaitNanos(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new BudgetExceededException("Attente du budget memoire interrompue");
+                }
+            }
+            inUse += requested;
+            peak = Math.max(peak, inUse);
+            return requested;
+        } finally {
+            lock.unlock();
+        }
+    }
+    /**
+     * Rend de la memoire reservee.
+     */
+    public void release(long bytes) {
+        if (bytes <= 0) {
+            return;
+        }
+        lock.lock();
+        try {
+            inUse = Math.max(0, inUse - bytes);
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+    public long getBudgetBytes() {
+        return budgetMegabytes * 1024 * 1024;
+    }
+    public long getBytesInUse() {
+        lock.lock();
+        try {
+            return inUse;
+        } finally {
+            lock.unlock();
+        }
+    }
+    public long getPeakBytes() {
+        lock.lock();
+        try {
+            return peak;
+        } finally {
+            lock.unlock();
+        }
+    }
+    public long getWaits() {
+        return waits.get();
+    }
+    public long getTimeouts() {
+        return timeouts.get();
+    }
+}
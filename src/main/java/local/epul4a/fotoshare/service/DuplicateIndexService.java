@@ -0,0 +1,161 @@
+package local.epul4a.fotoshare.service;
+import local.epul4a.fotoshare.repository.PhotoRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+/**
+ * Detection des doublons probables (photo redimensionnee ou reencodee) par empreinte perceptuelle.
+ * Un index en memoire par proprietaire ({@link PerceptualHashIndex}) est charge depuis la base au
+ * premier acces, puis tenu a jour a chaque miniature generee et a chaque suppression.
+ * Une photo dont l'empreinte est proche de celle d'une photo existante du meme proprietaire est
+ * marquee comme doublon probable de la plus proche (champ duplicate_of).
+ * Les identifiants renvoyes peuvent designer une photo supprimee entre-temps : l'appelant les
+ * relit en base.
+ */
+@Service
+public class DuplicateIndexService {
+    @Autowired
+    private PhotoRepository photoRepository;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Value("${fotoshare.duplicates.max-distance:6}")
+    private int maxDistance;
+    private final Map<Long, PerceptualHashIndex> indexes = new ConcurrentHashMap<>();
+    /**
+     * Indexe l'empreinte d'une photo et la marque comme doublon probable si une photo proche existe.
+     *
+     * @param photoId L'ID de la photo
+     * @param perceptualHash Son empreinte
+     * @return L'ID de la photo la plus proche, ou null
+     */
+    public Long register(Long photoId, long perceptualHash) {
+        Optional<Long> ownerId = photoRepository.findOwnerId(photoId);
+        return ownerId.map(owner -> register(photoId, owner, perceptualHash)).orElse(null);
+    }
+    /**
+     * Indexe l'empreinte d'une photo dont le proprietaire est connu.
+     */
+    public Long register(Long photoId, Long ownerId, long perceptualHash) {
+        PerceptualHashIndex index = indexFor(ownerId);
+        List<PerceptualHashIndex.Match> matches;
+        // Recherche et ajout atomiques : deux doublons traites en parallele se voient l'un l'autre
+        synchronized (index) {
+            matches = index.search(perceptualHash, photoId);
+            index.add(photoId, perceptualHash);
+        }
+        if (matches.isEmpty()) {
+            return null;
+        }
+        Long duplicateOf = matches.get(0).photoId();
+        // Transaction independante : l'appel peut venir d'une synchronisation apres commit
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        transactionTemplate.executeWithoutResult(status -> photoRepository.updateDuplicateOf(photoId, duplicateOf));
+        return duplicateOf;
+    }
+    /**
+     * Indexe l'empreinte d'une photo apres le commit de la transaction courante.
+     */
+    public void registerAfterCommit(Long photoId, Long ownerId, long perceptualHash) {
+        afterCommit(() -> register(photoId, ownerId, perceptualHash));
+    }
+    /**
+     * Retire une photo de l'index de son proprietaire apres le commit de la transaction courante.
+     */
+    public void unregisterAfterCommit(Long photoId, Long ownerId) {
+        afterCommit(() -> {
+            PerceptualHashIndex index = indexes.get(ownerId);
+            if (index != null) {
+                index.remove(photoId);
+            }
+        });
+    }
+    /**
+     * Oublie l'index d'un proprietaire (suppression du compte) apres le commit.
+     */
+    public void evictAfterCommit(Long ownerId) {
+        afterCommit(() -> indexes.remove(ownerId));
+    }
+    /**
+     * Regroupe les photos d'un proprietaire qui sont des doublons probables les unes des autres.
+     * Deux photos proches sont dans le meme groupe, ainsi que, de proche en proche, leurs voisines.
+     *
+     * @param ownerId L'ID du proprietaire
+     * @return Les groupes d'identifiants (au moins deux par groupe), tries par identifiant
+     */
+    public List<List<Long>> findDuplicateGroups(Long ownerId) {
+        Map<Long, Long> parents = new HashMap<>();
+        for (PerceptualHashIndex.Pair pair : indexFor(ownerId).pairs()) {
+            long first = find(parents, pair.firstId());
+            long second = find(parents, pair.secondId());
+            if (first != second) {
+                parents.put(Math.max(first, second), Math.min(first, second));
+            }
+        }
+        Map<Long, TreeSet<Long>> groups = new HashMap<>();
+        for (Long photoId : parents.keySet()) {
+            groups.computeIfAbsent(find(parents, photoId), root -> new TreeSet<>()).add(photoId);
+        }
+        List<List<Long>> result = new ArrayList<>();
+        for (TreeSet<Long> group : groups.values()) {
+            result.add(new ArrayList<>(group));
+        }
+        result.sort(Comparator.comparing(group -> group.get(0)));
+        return result;
+    }
+    private PerceptualHashIndex indexFor(Long ownerId) {
+        return indexes.computeIfAbsent(ownerId, owner -> {
+            PerceptualHashIndex index = new PerceptualHashIndex(maxDistance);
+            for (Object[] row : photoRepository.findPerceptualHashesByOwner(owner)) {
+                index.add(((Number) row[0]).longValue(), ((Number) row[1]).longValue());
+            }
+            return index;
+        });
+    }
+    /**
+     * Racine d'une photo dans la foret d'union, avec compression de chemin.
+     */
+    private static long find(Map<Long, Long> parents, long photoId) {
+        long root = photoId;
+        Long parent = parents.get(root);
+        while (parent != null && parent != root) {
+            root = parent;
+            parent = parents.get(root);
+        }
+        if (parent == null) {
+            parents.put(root, root);
+        }
+        long current = photoId;
+        while (current != root) {
+            long next = parents.get(current);
+            parents.put(current, root);
+            current = next;
+        }
+        return root;
+    }
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package local.epul4a.fotoshare.service;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteOrder;
+/**
+ * Orientation EXIF des photos JPEG (tag 0x0112 de l'IFD0).
+ * Les lecteurs ImageIO ignorent ce tag : un portrait pris au telephone est decode couche.
+ * L'orientation est lue dans le segment APP1 de l'en-tete, puis appliquee aux pixels decodes ;
+ * les derivees, encodees sans metadonnees, sont ainsi affichees dans le bon sens.
+ * Valeurs : 1 normale, 2 miroir horizontal, 3 rotation 180, 4 miroir vertical,
+ * 5 transposition, 6 rotation 90 horaire, 7 transversale, 8 rotation 90 anti-horaire.
+ */
+public final class ExifOrientation {
+    public static final int NORMAL = 1;
+    private static final int TAG_ORIENTATION = 0x0112;
+    private static final int MARKER_SOI = 0xFFD8;
+    private static final int MARKER_APP1 = 0xFFE1;
+    private static final int MARKER_SOS = 0xFFDA;
+    private static final int MARKER_EOI = 0xFFD9;
+    private static final int MAX_SEGMENTS = 64;
+    private static final int EXIF_HEADER_LENGTH = 6;
+    private ExifOrientation() {
+    }
+    /**
+     * Lit l'orientation EXIF dans l'en-tete d'une image, sans deplacer le flux.
+     *
+     * @param iis Le flux image, positionne au debut
+     * @return L'orientation (1 a 8), {@link #NORMAL} si l'image n'est pas un JPEG ou n'en declare pas
+     */
+    public static int read(ImageInputStream iis) throws IOException {
+        ByteOrder order = iis.getByteOrder();
+        iis.mark();
+        try {
+            iis.setByteOrder(ByteOrder.BIG_ENDIAN);
+            return readJpeg(iis);
+        } catch (EOFException e) {
+            return NORMAL;
+        } finally {
+            iis.reset();
+            iis.setByteOrder(order);
+        }
+    }
+    /**
+     * Indique si l'orientation fait pivoter l'image d'un quart de tour (largeur et hauteur echangees).
+     */
+    public static boolean swapsDimensions(int orientation) {
+        return orientation >= 5 && orientation <= 8;
+    }
+    /**
+     * Applique une orientation aux pixels d'une image.
+     *
+     * @param image L'image decodee
+     * @param orientation L'orientation EXIF
+     * @return L'image dans le sens d'affichage (la meme instance si l'orientation est normale)
+     */
+    public static BufferedImage apply(BufferedImage image, int orientation) {
+        if (orientation <= NORMAL || orientation > 8) {
+            return image;
+        }
+        int width = image.getWidth();
+        int height = image.getHeight();
+        AffineTransform transform = new AffineTransform();
+        switch (orientation) {
+            case 2 -> {
+                transform.scale(-1, 1);
+                transform.translate(-width, 0);
+            }
+            case 3 -> {
+                transform.translate(width, height);
+                transform.rotate(Math.PI);
+            }
+            case 4 -> {
+                transform.scale(1, -1);
+                transform.translate(0, -height);
+            }
+            case 5 -> {
+                transform.rotate(-Math.PI / 2);
+                transform.scale(-1, 1);
+            }
+            case 6 -> {
+                transform.translate(height, 0);
+                transform.rotate(Math.PI / 2);
+            }
+            case 7 -> {
+                transform.scale(-1, 1);
+                transform.translate(-height, width);
+                transform.rotate(3 * Math.PI / 2);
+            }
+            default -> {
+                transform.translate(0, width);
+                transform.rotate(3 * Math.PI / 2);
+            }
+        }
+        boolean swap = swapsDimensions(orientation);
+        BufferedImage oriented = new BufferedImage(swap ? height : width, swap ? width : height,
+                image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = oriented.createGraphics();
+        try {
+            g.drawImage(image, transform, null);
+        } finally {
+            g.dispose();
+        }
+        return oriented;
+    }
+    /**
+     * Parcourt les segments JPEG jusqu'au debut des donnees et lit le premier segment Exif.
+     */
+    private static int readJpeg(ImageInputStream iis) throws IOException {
+        if (iis.readUnsignedShort() != MARKER_SOI) {
+            return NORMAL;
+        }
+        for (int i = 0; i < MAX_SEGMENTS; i++) {
+            int marker = iis.readUnsignedShort();
+            if ((marker & 0xFF00) != 0xFF00 || marker == MARKER_SOS || marker == MARKER_EOI) {
+                return NORMAL;
+            }
+            int length = iis.readUnsignedShort();
+            if (length < 2) {
+                return NORMAL;
+            }
+            long next = iis.getStreamPosition() + length - 2;
+            if (marker == MARKER_APP1) {
+                byte[] segment = new byte[length - 2];
+                iis.readFully(segment);
+                int orientation = parseExif(segment);
+                if (orientation > 0) {
+                    return orientation;
+                }
+            }
+            iis.seek(next);
+        }
+        return NORMAL;
+    }
+    /**
+     * Lit l'orientation dans un segment APP1.
+     *
+     * @return L'orientation, {@link #NORMAL} si l'IFD0 n'en declare pas, 0 si le segment n'est pas Exif (XMP)
+     */
+    static int parseExif(byte[] segment) {
+        if (segment.length < EXIF_HEADER_LENGTH + 8 || segment[0] != 'E' || segment[1] != 'x'
+                || segment[2] != 'i' || segment[3] != 'f' || segment[4] != 0 || segment[5] != 0) {
+            return 0;
+        }
+        int tiff = EXIF_HEADER_LENGTH;
+        boolean littleEndian;
+        if (segment[tiff] == 'I' && segment[tiff + 1] == 'I') {
+            littleEndian = true;
+        } else if (segment[tiff] == 'M' && segment[tiff + 1] == 'M') {
+            littleEndian = false;
+        } else {
+            return NORMAL;
+        }
+        long ifd = tiff + (readInt(segment, tiff + 4, 4, littleEndian) & 0xFFFFFFFFL);
+        if (ifd + 2 > segment.length) {
+            return NORMAL;
+        }
+        int entries = readInt(segment, (int) ifd, 2, littleEndian);
+        for (int i = 0; i < entries; i++) {
+            int entry = (int) ifd + 2 + i * 12;
+            if (entry + 12 > segment.length) {
+                break;
+            }
+            if (readInt(segment, entry, 2, littleEndian) == TAG_ORIENTATION) {
+                int value = readInt(segment, entry + 8, 2, littleEndian);
+                return value >= NORMAL && value <= 8 ? value : NORMAL;
+            }
+        }
+        return NORMAL;
+    }
+    private static int readInt(byte[] data, int offset, int length, boolean littleEndian) {
+        int value = 0;
+        for (int i = 0; i < length; i++) {
+            int b = data[littleEndian ? offset + length - 1 - i : offset + i] & 0xFF;
+            value = (value << 8) | b;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,234 @@
+package local.epul4a.fotoshare.service;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import local.epul4a.fotoshare.dto.FileDeletionStatsDto;
+import local.epul4a.fotoshare.model.FileDeletion;
+import local.epul4a.fotoshare.model.StoredBlob;
+import local.epul4a.fotoshare.repository.FileDeletionRepository;
+import local.epul4a.fotoshare.repository.PhotoRepository;
+import local.epul4a.fotoshare.repository.StoredBlobRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+/**
+ * Suppression differee des fichiers d'une photo.
+ * Les suppressions sont enregistrees dans la table d'outbox, dans la transaction qui supprime la photo :
+ * une transaction annulee n'efface donc aucun fichier, et la requete ne paie pas la latence du stockage.
+ * Apres le commit, un thread de fond traite les suppressions par lots ; un echec est retente avec
+ * un delai croissant, puis abandonne au ramasse-miettes des orphelins.
+ * Avant d'effacer, chaque lot verifie en base que l'original n'est plus reference par une photo.
+ * Pour un contenu deduplique, la verification et l'effacement se font sous le verrou de la ligne du
+ * blob, conservee a zero reference jusque-la : un contenu de nouveau envoye entre-temps est conserve.
+ */
+@Service
+public class FileDeletionService {
+    private static final long MAX_RETRY_DELAY_MILLIS = 3_600_000L;
+    @Autowired
+    private FileDeletionRepository fileDeletionRepository;
+    @Autowired
+    private FileStorageService fileStorageService;
+    @Autowired
+    private ThumbnailService thumbnailService;
+    @Autowired
+    private PhotoRepository photoRepository;
+    @Autowired
+    private StoredBlobRepository storedBlobRepository;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Value("${fotoshare.storage.deletion.batch-size:100}")
+    private int batchSize;
+    @Value("${fotoshare.storage.deletion.max-attempts:8}")
+    private int maxAttempts;
+    @Value("${fotoshare.storage.deletion.retry-delay-ms:5000}")
+    private long retryDelayMillis;
+    private ExecutorService executor;
+    private TransactionTemplate transactionTemplate;
+    private final AtomicBoolean drainQueued = new AtomicBoolean();
+    private final AtomicLong deleted = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong abandoned = new AtomicLong();
+    @PostConstruct
+    public void init() {
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "file-deletion");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+    /**
+     * Enregistre la suppression d'un original et de ses derivees, dans la transaction courante.
+     * Les fichiers sont supprimes apres le commit ; sans transaction active, immediatement en arriere-plan.
+     *
+     * @param storageFilename Le nom du fichier original stocke
+     */
+    public void schedule(String storageFilename) {
+        Date now = new Date();
+        fileDeletionRepository.save(FileDeletion.builder()
+                .storage_filename(storageFilename)
+                .attempts(0)
+                .next_attempt_at(now)
+                .created_at(now)
+                .build());
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    requestDrain();
+                }
+            });
+        } else {
+            requestDrain();
+        }
+    }
+    /**
+     * Demande un passage du thread de suppression ; les demandes rapprochees sont regroupees.
+     */
+    public void requestDrain() {
+        if (!drainQueued.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                drainQueued.set(false);
+                try {
+                    drain();
+                } catch (RuntimeException e) {
+                    System.err.println("Erreur lors des suppressions differees: " + e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            drainQueued.set(false);
+        }
+    }
+    /**
+     * Passage periodique, pour les suppressions a retenter et celles restees en attente (arret, redemarrage).
+     */
+    @Scheduled(initialDelayString = "${fotoshare.storage.deletion.poll-interval-ms:30000}",
+               fixedDelayString = "${fotoshare.storage.deletion.poll-interval-ms:30000}")
+    public void scheduledDrain() {
+        requestDrain();
+    }
+    /**
+     * Traite toutes les suppressions echues, par lots, dans le thread appelant.
+     *
+     * @return Le nombre de suppressions traitees (effectuees ou ignorees car de nouveau referencees)
+     */
+    public synchronized int drain() {
+        int processed = 0;
+        List<FileDeletion> batch;
+        do {
+            batch = fileDeletionRepository.findDue(new Date(), PageRequest.of(0, batchSize));
+            processed += processBatch(batch);
+        } while (batch.size() == batchSize);
+        return processed;
+    }
+    /**
+     * Retourne les statistiques des suppressions differees.
+     */
+    public FileDeletionStatsDto getStats() {
+        return FileDeletionStatsDto.builder()
+                .pending(fileDeletionRepository.count())
+                .deleted(deleted.get())
+                .skipped(skipped.get())
+                .retried(retried.get())
+                .abandoned(abandoned.get())
+                .build();
+    }
+    private int processBatch(List<FileDeletion> batch) {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        Set<String> filenames = new HashSet<>();
+        for (FileDeletion deletion : batch) {
+            filenames.add(deletion.getStorage_filename());
+        }
+        Set<String> referenced = new HashSet<>(photoRepository.findExistingStorageFilenames(filenames));
+        List<Long> done = new ArrayList<>(batch.size());
+        List<FileDeletion> failed = new ArrayList<>();
+        int processed = 0;
+        for (FileDeletion deletion : batch) {
+            String storageFilename = deletion.getStorage_filename();
+            try {
+                if (!referenced.contains(storageFilename) && deleteUnreferenced(storageFilename)) {
+                    deleted.incrementAndGet();
+                } else {
+                    skipped.incrementAndGet();
+                }
+                done.add(deletion.getId());
+                processed++;
+            } catch (RuntimeException e) {
+                if (deletion.getAttempts() + 1 >= maxAttempts) {
+                    abandoned.incrementAndGet();
+                    done.add(deletion.getId());
+                    System.err.println("Suppression de " + storageFilename + " abandonnee apres "
+                            + maxAttempts + " tentatives: " + e.getMessage());
+                } else {
+                    retried.incrementAndGet();
+                    failed.add(reschedule(deletion, e));
+                }
+            }
+        }
+        if (!done.isEmpty()) {
+            fileDeletionRepository.deleteAllByIdInBatch(done);
+        }
+        if (!failed.isEmpty()) {
+            fileDeletionRepository.saveAll(failed);
+        }
+        return processed;
+    }
+    /**
+     * Efface un original et ses derivees, puis la ligne de son blob, sous le verrou de cette ligne.
+     * Une erreur annule la transaction : la ligne est conservee pour la tentative suivante.
+     *
+     * @return false si le blob est de nouveau reference
+     */
+    private boolean deleteUnreferenced(String storageFilename) {
+        return Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+            Optional<StoredBlob> blob = storedBlobRepository.findByStorageFilenameForUpdate(storageFilename);
+            if (blob.isPresent() && blob.get().getRef_count() > 0) {
+                return false;
+            }
+            fileStorageService.delete(storageFilename);
+            thumbnailService.deleteDerivatives(storageFilename);
+            blob.ifPresent(storedBlobRepository::delete);
+            return true;
+        }));
+    }
+    /**
+     * Repousse une suppression en echec, avec un delai qui double a chaque tentative.
+     */
+    private FileDeletion reschedule(FileDeletion deletion, RuntimeException error) {
+        int attempts = deletion.getAttempts() + 1;
+        long delay = Math.min(MAX_RETRY_DELAY_MILLIS, retryDelayMillis << Math.min(attempts - 1, 20));
+        deletion.setAttempts(attempts);
+        deletion.setNext_attempt_at(new Date(System.currentTimeMillis() + delay));
+        String message = String.valueOf(error.getMessage());
+        deletion.setLast_error(message.length() > 500 ? message.substring(0, 500) : message);
+        return deletion;
+    }
+}
@@ -1,76 +1,123 @@
 package local.epul4a.fotoshare.service;
+import local.epul4a.fotoshare.storage.BlobResource;
+import local.epul4a.fotoshare.storage.BlobStore;
+import local.epul4a.fotoshare.storage.LocalBlobStore;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.UrlResource;
 import org.springframework.stereotype.Service;
-import org.springframework.web.multipart.MultipartFile;
 import jakarta.annotation.PostConstruct;
+import javax.imageio.stream.FileImageInputStream;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
+import java.util.Optional;
 import java.util.UUID;
 /**
  * Service de stockage des fichiers photos.
- * Gère le stockage physique des fichiers hors de la racine web publique.
+ * Les originaux, miniatures et déclinaisons passent par le pilote {@link BlobStore} configuré
+ * (disque local, mémoire ou S3). Les fichiers de travail (fichiers temporaires d'ingestion,
+ * transit des uploads fractionnés, quarantaine) restent sur le disque local, hors de la racine web.
  */
 @Service
 public class FileStorageService {
+    @Autowired
+    private BlobStore blobStore;
     @Value("${fotoshare.storage.location:./uploads}")
     private String storageLocation;
     private Path rootLocation;
+    private Path stagingLocation;
+    private Path quarantineLocation;
     @PostConstruct
     public void init() {
         this.rootLocation = Paths.get(storageLocation).toAbsolutePath().normalize();
+        this.stagingLocation = rootLocation.resolve(".staging");
+        this.quarantineLocation = rootLocation.resolve(".quarantine");
         try {
             Files.createDirectories(rootLocation);
+            Files.createDirectories(stagingLocation);
+            Files.createDirectories(quarantineLocation);
         } catch (IOException e) {
             throw new RuntimeException("Impossible de créer le répertoire de stockage", e);
         }
     }
     /**
-     * Stocke un fichier avec un nom UUID pour éviter les collisions et injections.
+     * Écrit un fichier stocké (miniature, déclinaison) depuis son contenu encodé.
      *
-     * @param file Le fichier à stocker
-     * @param mimeType Le type MIME validé du fichier
-     * @param extension L'extension à utiliser
-     * @return Le nom du fichier stocké (UUID + extension)
+     * @param filename Le nom du fichier stocké
+     * @param content Le contenu
      */
-    public String store(MultipartFile file, String mimeType, String extension) {
-        if (file.isEmpty()) {
-            throw new IllegalArgumentException("Impossible de stocker un fichier vide");
+    public void write(String filename, byte[] content) throws IOException {
+        blobStore.put(filename, content);
+    }
+    /**
+     * Crée un fichier temporaire dans le répertoire de stockage.
+     * Il est sur le même système de fichiers que la destination finale,
+     * ce qui permet un déplacement atomique une fois l'écriture terminée.
+     *
+     * @return Le chemin du fichier temporaire
+     */
+    public Path createTempFile() {
+        try {
+            return Files.createTempFile(rootLocation, ".ingest-", ".tmp");
+        } catch (IOException e) {
+            throw new RuntimeException("Impossible de créer un fichier temporaire", e);
         }
+    }
+    /**
+     * Déplace un fichier temporaire vers son nom de stockage définitif (UUID + extension).
+     *
+     * @param tempFile Le fichier temporaire créé par {@link #createTempFile()}
+     * @param extension L'extension à utiliser
+     * @return Le nom du fichier stocké
+     */
+    public String storeTempFile(Path tempFile, String extension) {
         String storageFilename = UUID.randomUUID().toString() + "." + extension;
+        storeTempFileAs(tempFile, storageFilename);
+        return storageFilename;
+    }
+    /**
+     * Déplace un fichier temporaire vers un nom de stockage donné, en remplaçant
+     * un éventuel fichier existant. Avec un pilote distant, le fichier est envoyé puis supprimé.
+     *
+     * @param tempFile Le fichier temporaire
+     * @param storageFilename Le nom de stockage définitif
+     */
+    public void storeTempFileAs(Path tempFile, String storageFilename) {
         try {
-            Path destinationFile = this.rootLocation.resolve(Paths.get(storageFilename))
-                    .normalize().toAbsolutePath();
-            if (!destinationFile.getParent().equals(this.rootLocation.toAbsolutePath())) {
-                throw new SecurityException("Tentative de stockage en dehors du répertoire autorisé");
-            }
-            try (InputStream inputStream = file.getInputStream()) {
-                Files.copy(inputStream, destinationFile, StandardCopyOption.REPLACE_EXISTING);
-            }
-            return storageFilename;
+            blobStore.putFile(storageFilename, tempFile);
         } catch (IOException e) {
             throw new RuntimeException("Échec du stockage du fichier", e);
         }
     }
     /**
-     * Charge un fichier comme Resource.
+     * Supprime un fichier temporaire, sans lever d'erreur.
+     */
+    public void discardTempFile(Path tempFile) {
+        try {
+            Files.deleteIfExists(tempFile);
+        } catch (IOException e) {
+            System.err.println("Impossible de supprimer le fichier temporaire: " + e.getMessage());
+        }
+    }
+    /**
+     * Charge un fichier comme Resource : un fichier du disque avec le pilote local,
+     * une ressource lue en flux depuis le pilote sinon.
      *
      * @param filename Le nom du fichier stocké
      * @return La ressource correspondante
      */
     public Resource loadAsResource(String filename) {
         try {
-            Path file = rootLocation.resolve(filename).normalize();
-            if (!file.toAbsolutePath().startsWith(rootLocation.toAbsolutePath())) {
-                throw new SecurityException("Tentative d'accès en dehors du répertoire autorisé");
-            }
-            Resource resource = new UrlResource(file.toUri());
+            Optional<Path> file = blobStore.localPath(filename);
+            Resource resource = file.isPresent() ? new UrlResource(file.get().toUri()) : new BlobResource(blobStore, filename);
             if (resource.exists() && resource.isReadable()) {
                 return resource;
             } else {
@@ -81,18 +128,53 @@ public class FileStorageService {
         }
     }
     /**
-     * Supprime un fichier stocké.
+     * Lit entièrement un fichier stocké en mémoire (miniature).
+     *
+     * @param filename Le nom du fichier stocké
+     * @return Le contenu du fichier
+     * @throws NoSuchFileException si le fichier n'existe pas
+     */
+    public byte[] read(String filename) throws IOException {
+        try (InputStream in = blobStore.get(filename)) {
+            return in.readAllBytes();
+        }
+    }
+    /**
+     * Ouvre un fichier stocké comme flux image, pour le décodage : lecture directe du fichier
+     * avec le pilote local, flux mis en cache en mémoire sinon.
+     *
+     * @param filename Le nom du fichier stocké
+     * @return Le flux image, à fermer par l'appelant
+     * @throws NoSuchFileException si le fichier n'existe pas
+     */
+    public ImageInputStream openImageStream(String filename) throws IOException {
+        Optional<Path> file = blobStore.localPath(filename);
+        if (file.isPresent()) {
+            if (!Files.exists(file.get())) {
+                throw new NoSuchFileException(filename);
+            }
+            return new FileImageInputStream(file.get().toFile());
+        }
+        InputStream in = blobStore.get(filename);
+        return new MemoryCacheImageInputStream(in) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    in.close();
+                }
+            }
+        };
+    }
+    /**
+     * Supprime un fichier stocké ; supprimer un fichier absent n'est pas une erreur.
      *
      * @param filename Le nom du fichier à supprimer
-     * @return true si le fichier a été supprimé, false sinon
      */
-    public boolean delete(String filename) {
+    public void delete(String filename) {
         try {
-            Path file = rootLocation.resolve(filename).normalize();
-            if (!file.toAbsolutePath().startsWith(rootLocation.toAbsolutePath())) {
-                throw new SecurityException("Tentative de suppression en dehors du répertoire autorisé");
-            }
-            return Files.deleteIfExists(file);
+            blobStore.delete(filename);
         } catch (IOException e) {
             throw new RuntimeException("Échec de la suppression du fichier: " + filename, e);
         }
@@ -104,14 +186,70 @@ public class FileStorageService {
      * @return true si le fichier existe
      */
     public boolean exists(String filename) {
-        Path file = rootLocation.resolve(filename).normalize();
-        if (!file.toAbsolutePath().startsWith(rootLocation.toAbsolutePath())) {
+        try {
+            return blobStore.exists(filename);
+        } catch (SecurityException e) {
             return false;
+        } catch (IOException e) {
+            throw new RuntimeException("Erreur lors de la vérification du fichier: " + filename, e);
+        }
+    }
+    /**
+     * Indique si le pilote de stockage est le disque local.
+     */
+    public boolean isLocal() {
+        return blobStore instanceof LocalBlobStore;
+    }
+    /**
+     * Retourne le pilote local, pour les opérations propres au disque (migration, ramasse-miettes).
+     *
+     * @throws IllegalStateException si le pilote configuré n'est pas local
+     */
+    public LocalBlobStore getLocalStore() {
+        if (blobStore instanceof LocalBlobStore localStore) {
+            return localStore;
         }
-        return Files.exists(file);
+        throw new IllegalStateException("Le stockage configuré n'est pas local: " + blobStore.getName());
+    }
+    /**
+     * Retourne le chemin d'un fichier stocké sur le disque local (voir {@link LocalBlobStore#resolve}).
+     */
+    public Path resolve(String filename) {
+        return getLocalStore().resolve(filename);
+    }
+    /**
+     * Retourne le chemin où écrire un fichier stocké sur le disque local (voir {@link LocalBlobStore#resolveForWrite}).
+     */
+    public Path resolveForWrite(String filename) throws IOException {
+        return getLocalStore().resolveForWrite(filename);
+    }
+    /**
+     * Indique si les fichiers sont répartis en sous-répertoires (pilote local uniquement).
+     */
+    public boolean isSharded() {
+        return isLocal() && getLocalStore().isSharded();
+    }
+    /**
+     * Retourne le fichier de transit d'une session d'upload fractionné.
+     *
+     * @param sessionId L'identifiant de la session
+     * @return Le chemin du fichier de transit
+     */
+    public Path resolveStagingFile(String sessionId) {
+        Path file = stagingLocation.resolve(sessionId + ".part").normalize();
+        if (!file.getParent().equals(stagingLocation)) {
+            throw new SecurityException("Tentative d'accès en dehors du répertoire autorisé");
+        }
+        return file;
+    }
+    /**
+     * Retourne le répertoire où les fichiers orphelins sont mis en quarantaine avant suppression.
+     */
+    public Path getQuarantineLocation() {
+        return quarantineLocation;
     }
     /**
-     * Retourne le chemin absolu du répertoire de stockage.
+     * Retourne le chemin absolu du répertoire de stockage (racine du pilote local, et des fichiers de travail).
      */
     public Path getRootLocation() {
         return rootLocation;
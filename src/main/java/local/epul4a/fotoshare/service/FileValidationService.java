@@ -1,18 +1,39 @@
 package local.epul4a.fotoshare.service;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.web.multipart.MultipartFile;
 import java.io.IOException;
-import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 /**
  * Service de validation des fichiers uploadés.
- * Vérifie le type MIME réel via Magic Numbers et la taille du fichier.
+ * Vérifie le type MIME réel via Magic Numbers et la taille du fichier,
+ * puis, une fois le fichier écrit, sa structure et les dimensions déclarées
+ * dans son en-tête (protection contre les bombes de décompression).
  */
 @Service
 public class FileValidationService {
     private static final long MAX_FILE_SIZE = 10 * 1024 * 1024;
+    /**
+     * Nombre d'octets nécessaires pour reconnaître toutes les signatures.
+     */
+    public static final int HEADER_LENGTH = 12;
+    private static final int MAX_JPEG_SEGMENTS = 1000;
+    private static final int PNG_TRAILER_SEARCH = 1024;
+    private static final int GIF_TRAILER_SEARCH = 16;
+    private static final byte[] PNG_IHDR = {0x00, 0x00, 0x00, 0x0D, 0x49, 0x48, 0x44, 0x52};
+    private static final byte[] PNG_IEND = {0x49, 0x45, 0x4E, 0x44};
+    @Value("${fotoshare.upload.max-megapixels:50}")
+    private long maxMegapixels;
+    @Value("${fotoshare.upload.max-frames:300}")
+    private int maxFrames;
+    @Autowired
+    private ImageMetadataService imageMetadataService;
     private static final Map<String, byte[][]> MAGIC_NUMBERS = new HashMap<>();
     static {
         MAGIC_NUMBERS.put("image/jpeg", new byte[][]{
@@ -33,60 +54,33 @@ public class FileValidationService {
         });
     }
     /**
-     * Valide un fichier uploadé.
+     * Détecte le type MIME réel à partir des premiers octets d'un fichier.
      *
-     * @param file Le fichier à valider
-     * @return Le type MIME détecté
-     * @throws IllegalArgumentException si le fichier n'est pas valide
-     */
-    public String validateFile(MultipartFile file) {
-        if (file == null || file.isEmpty()) {
-            throw new IllegalArgumentException("Le fichier est vide ou null");
-        }
-        if (file.getSize() > MAX_FILE_SIZE) {
-            throw new IllegalArgumentException(
-                String.format("La taille du fichier dépasse la limite autorisée de %d MB", MAX_FILE_SIZE / (1024 * 1024))
-            );
-        }
-        String detectedMimeType = detectMimeType(file);
-        if (detectedMimeType == null) {
-            throw new IllegalArgumentException("Type de fichier non autorisé. Seuls les formats JPEG, PNG, GIF, WebP et BMP sont acceptés.");
-        }
-        return detectedMimeType;
-    }
-    /**
-     * Détecte le type MIME réel du fichier en lisant ses Magic Numbers.
-     *
-     * @param file Le fichier à analyser
+     * @param header Les premiers octets du fichier
+     * @param bytesRead Le nombre d'octets valides dans le header
      * @return Le type MIME détecté ou null si non reconnu
      */
-    private String detectMimeType(MultipartFile file) {
-        try (InputStream is = file.getInputStream()) {
-            byte[] header = new byte[12];
-            int bytesRead = is.read(header);
-            if (bytesRead < 2) {
-                return null;
-            }
-            for (Map.Entry<String, byte[][]> entry : MAGIC_NUMBERS.entrySet()) {
-                String mimeType = entry.getKey();
-                byte[][] signatures = entry.getValue();
-                for (byte[] signature : signatures) {
-                    if (bytesRead >= signature.length && matchesSignature(header, signature)) {
-                        if (mimeType.equals("image/webp")) {
-                            if (bytesRead >= 12 && header[8] == 0x57 && header[9] == 0x45 &&
-                                header[10] == 0x42 && header[11] == 0x50) {
-                                return mimeType;
-                            }
-                        } else {
+    public String detectMimeType(byte[] header, int bytesRead) {
+        if (bytesRead < 2) {
+            return null;
+        }
+        for (Map.Entry<String, byte[][]> entry : MAGIC_NUMBERS.entrySet()) {
+            String mimeType = entry.getKey();
+            byte[][] signatures = entry.getValue();
+            for (byte[] signature : signatures) {
+                if (bytesRead >= signature.length && matchesSignature(header, signature)) {
+                    if (mimeType.equals("image/webp")) {
+                        if (bytesRead >= 12 && header[8] == 0x57 && header[9] == 0x45 &&
+                            header[10] == 0x42 && header[11] == 0x50) {
                             return mimeType;
                         }
+                    } else {
+                        return mimeType;
                     }
                 }
             }
-            return null;
-        } catch (IOException e) {
-            throw new IllegalArgumentException("Impossible de lire le fichier pour validation", e);
         }
+        return null;
     }
     /**
      * Vérifie si les bytes du header correspondent à une signature.
@@ -99,6 +93,140 @@ public class FileValidationService {
         }
         return true;
     }
+    /**
+     * Valide le contenu d'un fichier image écrit sur disque, avant tout décodage.
+     * La structure du conteneur est contrôlée, puis les dimensions et le nombre d'images
+     * déclarés dans l'en-tête sont comparés aux limites : aucun raster n'est alloué.
+     *
+     * @param file Le fichier à valider
+     * @param mimeType Le type MIME détecté
+     * @return {largeur, hauteur} déclarées
+     * @throws IllegalArgumentException si le fichier est corrompu ou dépasse les limites
+     */
+    public int[] validateImageContent(Path file, String mimeType) {
+        try {
+            if (!hasValidStructure(file, mimeType)) {
+                throw new IllegalArgumentException("Le fichier image est corrompu ou tronqué");
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Impossible de lire le fichier pour validation", e);
+        }
+        ImageMetadataService.ImageHeader header = imageMetadataService.readHeader(file);
+        if (header == null || header.width() <= 0 || header.height() <= 0) {
+            throw new IllegalArgumentException("L'en-tête de l'image est illisible");
+        }
+        if ((long) header.width() * header.height() > getMaxPixels()) {
+            throw new IllegalArgumentException(String.format(
+                "L'image dépasse la limite de %d mégapixels (%d x %d)", maxMegapixels, header.width(), header.height()));
+        }
+        if (header.frames() > maxFrames) {
+            throw new IllegalArgumentException(String.format(
+                "L'image contient trop d'images (%d, maximum %d)", header.frames(), maxFrames));
+        }
+        return new int[]{header.width(), header.height()};
+    }
+    /**
+     * Retourne le nombre maximal de pixels autorisé pour une image.
+     */
+    public long getMaxPixels() {
+        return maxMegapixels * 1_000_000L;
+    }
+    /**
+     * Contrôle la structure du conteneur en ne lisant que quelques en-têtes :
+     * segments JPEG jusqu'au début des données, IHDR/IEND pour PNG, terminateur GIF,
+     * tailles déclarées BMP et RIFF.
+     */
+    private boolean hasValidStructure(Path file, String mimeType) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            return switch (mimeType) {
+                case "image/jpeg" -> hasValidJpegSegments(channel, size);
+                case "image/png" -> size > 33
+                        && Arrays.equals(read(channel, 8, PNG_IHDR.length), PNG_IHDR)
+                        && tailContains(channel, size, PNG_IEND, PNG_TRAILER_SEARCH);
+                case "image/gif" -> tailContains(channel, size, new byte[]{0x3B}, GIF_TRAILER_SEARCH);
+                case "image/bmp" -> hasValidBmpHeader(channel, size);
+                case "image/webp" -> hasValidRiffSize(channel, size);
+                default -> false;
+            };
+        }
+    }
+    /**
+     * Parcourt les segments JPEG depuis SOI : chaque longueur doit rester dans le fichier,
+     * et un segment SOF doit précéder le début des données (SOS).
+     * Les données éventuellement ajoutées après l'image (photos animées) ne sont pas lues.
+     */
+    private boolean hasValidJpegSegments(FileChannel channel, long size) throws IOException {
+        long position = 2;
+        boolean frameSeen = false;
+        for (int i = 0; i < MAX_JPEG_SEGMENTS && position + 4 <= size; i++) {
+            byte[] marker = read(channel, position, 4);
+            if ((marker[0] & 0xFF) != 0xFF) {
+                return false;
+            }
+            int type = marker[1] & 0xFF;
+            if (type == 0xFF) {
+                position++;
+                continue;
+            }
+            if (type == 0xDA) {
+                return frameSeen;
+            }
+            if (type == 0xD9) {
+                return false;
+            }
+            if (type == 0x01 || (type >= 0xD0 && type <= 0xD7)) {
+                position += 2;
+                continue;
+            }
+            int length = ((marker[2] & 0xFF) << 8) | (marker[3] & 0xFF);
+            if (length < 2 || position + 2 + length > size) {
+                return false;
+            }
+            if (type >= 0xC0 && type <= 0xCF && type != 0xC4 && type != 0xC8 && type != 0xCC) {
+                frameSeen = true;
+            }
+            position += 2 + length;
+        }
+        return false;
+    }
+    private boolean hasValidBmpHeader(FileChannel channel, long size) throws IOException {
+        if (size < 26) {
+            return false;
+        }
+        byte[] header = read(channel, 0, 18);
+        long declaredSize = littleEndian(header, 2);
+        long dataOffset = littleEndian(header, 10);
+        long infoSize = littleEndian(header, 14);
+        return (declaredSize == 0 || declaredSize <= size) && dataOffset < size && infoSize >= 12;
+    }
+    private boolean hasValidRiffSize(FileChannel channel, long size) throws IOException {
+        long riffSize = littleEndian(read(channel, 0, 8), 4);
+        return riffSize >= 12 && riffSize + 8 <= size + 1;
+    }
+    private boolean tailContains(FileChannel channel, long size, byte[] pattern, int searchLength) throws IOException {
+        int length = (int) Math.min(size, searchLength);
+        byte[] tail = read(channel, size - length, length);
+        for (int i = tail.length - pattern.length; i >= 0; i--) {
+            if (Arrays.equals(tail, i, i + pattern.length, pattern, 0, pattern.length)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    private byte[] read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                break;
+            }
+        }
+        return buffer.array();
+    }
+    private long littleEndian(byte[] data, int offset) {
+        return (data[offset] & 0xFFL) | ((data[offset + 1] & 0xFFL) << 8)
+                | ((data[offset + 2] & 0xFFL) << 16) | ((data[offset + 3] & 0xFFL) << 24);
+    }
     /**
      * Retourne la taille maximale autorisée en bytes.
      */
@@ -0,0 +1,206 @@
+package local.epul4a.fotoshare.service;
+import local.epul4a.fotoshare.model.Photo;
+import local.epul4a.fotoshare.repository.PhotoRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.FileImageInputStream;
+import javax.imageio.stream.ImageInputStream;
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.List;
+/**
+ * Lecture des dimensions et du nombre d'images d'un fichier depuis son en-tete, sans decoder les pixels.
+ * Le JDK ne fournit pas de lecteur WebP : ses dimensions sont lues directement
+ * dans l'en-tete VP8, VP8L ou VP8X du conteneur RIFF.
+ */
+@Service
+public class ImageMetadataService {
+    private static final int WEBP_HEADER_LENGTH = 30;
+    private static final int BACKFILL_BATCH_SIZE = 100;
+    private static final int WEBP_ANIMATION_FLAG = 0x02;
+    private static final int MAX_RIFF_CHUNKS = 100_000;
+    @Autowired
+    private PhotoRepository photoRepository;
+    @Autowired
+    private FileStorageService fileStorageService;
+    /**
+     * Informations declarees dans l'en-tete d'une image.
+     *
+     * @param width La largeur de la premiere image
+     * @param height La hauteur de la premiere image
+     * @param frames Le nombre d'images (plusieurs pour un GIF ou un WebP anime)
+     */
+    public record ImageHeader(int width, int height, int frames) {
+    }
+    /**
+     * Lit les dimensions d'un fichier image.
+     *
+     * @param file Le fichier image
+     * @return {largeur, hauteur}, ou null si le format n'est pas reconnu
+     */
+    public int[] readDimensions(Path file) {
+        ImageHeader header = readHeader(file);
+        return header != null ? new int[]{header.width(), header.height()} : null;
+    }
+    /**
+     * Lit les dimensions d'une image depuis l'en-tete du flux.
+     *
+     * @param iis Le flux image, positionne au debut
+     * @return {largeur, hauteur}, ou null si le format n'est pas reconnu
+     */
+    public int[] readDimensions(ImageInputStream iis) throws IOException {
+        ImageHeader header = readHeader(iis);
+        return header != null ? new int[]{header.width(), header.height()} : null;
+    }
+    /**
+     * Lit l'en-tete d'un fichier image.
+     *
+     * @param file Le fichier image
+     * @return L'en-tete, ou null si le format n'est pas reconnu ou l'en-tete illisible
+     */
+    public ImageHeader readHeader(Path file) {
+        try (ImageInputStream iis = new FileImageInputStream(file.toFile())) {
+            return readHeader(iis);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Lecture de l'en-tete impossible pour " + file.getFileName() + ": " + e.getMessage());
+            return null;
+        }
+    }
+    /**
+     * Lit l'en-tete d'une image depuis le flux.
+     * Les dimensions sont celles de l'image affichee : largeur et hauteur sont echangees
+     * si l'orientation EXIF la fait pivoter d'un quart de tour.
+     * Pour un GIF, les images sont comptees en sautant leurs donnees, sans les decompresser.
+     *
+     * @param iis Le flux image, positionne au debut
+     * @return L'en-tete, ou null si le format n'est pas reconnu
+     */
+    public ImageHeader readHeader(ImageInputStream iis) throws IOException {
+        boolean swap = ExifOrientation.swapsDimensions(ExifOrientation.read(iis));
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+        if (readers.hasNext()) {
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(iis, false, true);
+                int frames = "gif".equalsIgnoreCase(reader.getFormatName()) ? reader.getNumImages(true) : 1;
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                return swap ? new ImageHeader(height, width, frames) : new ImageHeader(width, height, frames);
+            } finally {
+                reader.dispose();
+            }
+        }
+        iis.seek(0);
+        byte[] header = new byte[WEBP_HEADER_LENGTH];
+        int read = iis.read(header);
+        int[] dimensions = readWebpDimensions(header, read);
+        if (dimensions == null) {
+            return null;
+        }
+        boolean animated = matches(header, 12, "VP8X") && (header[20] & WEBP_ANIMATION_FLAG) != 0;
+        return new ImageHeader(dimensions[0], dimensions[1], animated ? countWebpFrames(iis) : 1);
+    }
+    /**
+     * Compte les images d'un WebP anime en parcourant les en-tetes de chunks (ANMF).
+     */
+    private int countWebpFrames(ImageInputStream iis) throws IOException {
+        int frames = 0;
+        long position = 12;
+        long length = iis.length();
+        byte[] chunkHeader = new byte[8];
+        for (int i = 0; i < MAX_RIFF_CHUNKS; i++) {
+            iis.seek(position);
+            if (iis.read(chunkHeader) < chunkHeader.length) {
+                break;
+            }
+            if (matches(chunkHeader, 0, "ANMF")) {
+                frames++;
+            }
+            long chunkSize = littleEndian(chunkHeader, 4, 4) & 0xFFFFFFFFL;
+            position += 8 + chunkSize + (chunkSize & 1);
+            if (length >= 0 && position >= length) {
+                break;
+            }
+        }
+        return Math.max(frames, 1);
+    }
+    /**
+     * Lit les dimensions d'une image WebP depuis les 30 premiers octets.
+     *
+     * @return {largeur, hauteur}, ou null si l'en-tete n'est pas un WebP reconnu
+     */
+    static int[] readWebpDimensions(byte[] header, int length) {
+        if (length < WEBP_HEADER_LENGTH
+                || !matches(header, 0, "RIFF") || !matches(header, 8, "WEBP")) {
+            return null;
+        }
+        if (matches(header, 12, "VP8 ")) {
+            if ((header[23] & 0xFF) != 0x9D || (header[24] & 0xFF) != 0x01 || (header[25] & 0xFF) != 0x2A) {
+                return null;
+            }
+            return new int[]{littleEndian(header, 26, 2) & 0x3FFF, littleEndian(header, 28, 2) & 0x3FFF};
+        }
+        if (matches(header, 12, "VP8L")) {
+            if ((header[20] & 0xFF) != 0x2F) {
+                return null;
+            }
+            int bits = littleEndian(header, 21, 4);
+            return new int[]{(bits & 0x3FFF) + 1, ((bits >> 14) & 0x3FFF) + 1};
+        }
+        if (matches(header, 12, "VP8X")) {
+            return new int[]{littleEndian(header, 24, 3) + 1, littleEndian(header, 27, 3) + 1};
+        }
+        return null;
+    }
+    /**
+     * Renseigne les dimensions des photos enregistrees avant leur lecture a l'ingestion.
+     * Les photos sont parcourues par identifiant croissant, par lots ; un fichier illisible
+     * ou absent est ignore et ne bloque pas la suite.
+     *
+     * @return Le nombre de photos mises a jour
+     */
+    public int backfillDimensions() {
+        int updated = 0;
+        long afterId = 0;
+        List<Photo> batch;
+        do {
+            batch = photoRepository.findWithoutDimensions(afterId, PageRequest.of(0, BACKFILL_BATCH_SIZE));
+            for (Photo photo : batch) {
+                afterId = photo.getId();
+                int[] dimensions;
+                try (ImageInputStream iis = fileStorageService.openImageStream(photo.getStorage_filename())) {
+                    dimensions = readDimensions(iis);
+                } catch (NoSuchFileException e) {
+                    continue;
+                } catch (IOException | RuntimeException e) {
+                    System.err.println("Lecture des dimensions impossible pour " + photo.getStorage_filename() + ": " + e.getMessage());
+                    continue;
+                }
+                if (dimensions != null) {
+                    updated += photoRepository.updateDimensions(photo.getId(), dimensions[0], dimensions[1]);
+                }
+            }
+        } while (batch.size() == BACKFILL_BATCH_SIZE);
+        return updated;
+    }
+    private static boolean matches(byte[] data, int offset, String ascii) {
+        for (int i = 0; i < ascii.length(); i++) {
+            if (data[offset + i] != (byte) ascii.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    private static int littleEndian(byte[] data, int offset, int length) {
+        int value = 0;
+        for (int i = length - 1; i >= 0; i--) {
+            value = (value << 8) | (data[offset + i] & 0xFF);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,120 @@
+package local.epul4a.fotoshare.service;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Base64;
+/**
+ * Apercus basse qualite (LQIP) inclus directement dans le HTML des galeries.
+ * A partir de la miniature, on produit une image de 16 pixels de cote au plus, encodee en JPEG
+ * et en base64 (data URI de quelques centaines d'octets), ainsi que la couleur dominante.
+ * Le navigateur les affiche en fond de la balise img en attendant la vraie miniature,
+ * sans requete supplementaire.
+ */
+public final class ImagePlaceholder {
+    /**
+     * Cote maximal de l'apercu, en pixels.
+     */
+    public static final int SIZE = 16;
+    /**
+     * Longueur maximale d'un apercu encode ; au-dela il n'est pas conserve.
+     */
+    public static final int MAX_DATA_URI_LENGTH = 2048;
+    private static final String DATA_URI_PREFIX = "data:image/jpeg;base64,";
+    private static final ThumbnailEncoder ENCODER = new ThumbnailEncoder(0.5f, false, true);
+    private ImagePlaceholder() {
+    }
+    /**
+     * Reduit une image a {@link #SIZE} pixels de cote au plus par moyenne de zones et l'encode en data URI.
+     * La transparence est aplatie sur fond blanc.
+     *
+     * @param image L'image, de preference deja reduite (miniature)
+     * @return Le data URI, ou null s'il depasse {@link #MAX_DATA_URI_LENGTH}
+     * @throws IOException Si erreur lors de l'encodage
+     */
+    public static String dataUri(BufferedImage image) throws IOException {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int targetWidth = Math.max(1, width >= height ? SIZE : Math.round((float) SIZE * width / height));
+        int targetHeight = Math.max(1, height >= width ? SIZE : Math.round((float) SIZE * height / width));
+        long[] sums = new long[targetWidth * targetHeight * 3];
+        long[] counts = new long[targetWidth * targetHeight];
+        int[] column = new int[width];
+        for (int x = 0; x < width; x++) {
+            column[x] = Math.min(targetWidth - 1, x * targetWidth / width);
+        }
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            int cellRow = Math.min(targetHeight - 1, y * targetHeight / height) * targetWidth;
+            image.getRGB(0, y, width, 1, row, 0, width);
+            for (int x = 0; x < width; x++) {
+                int cell = cellRow + column[x];
+                int rgb = flatten(row[x]);
+                sums[cell * 3] += (rgb >> 16) & 0xFF;
+                sums[cell * 3 + 1] += (rgb >> 8) & 0xFF;
+                sums[cell * 3 + 2] += rgb & 0xFF;
+                counts[cell]++;
+            }
+        }
+        BufferedImage tiny = new BufferedImage(targetWidth, targetHeight, BufferedImage.TYPE_INT_RGB);
+        for (int cell = 0; cell < counts.length; cell++) {
+            long count = Math.max(1, counts[cell]);
+            int rgb = (int) (sums[cell * 3] / count) << 16 | (int) (sums[cell * 3 + 1] / count) << 8
+                    | (int) (sums[cell * 3 + 2] / count);
+            tiny.setRGB(cell % targetWidth, cell / targetWidth, rgb);
+        }
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        ENCODER.encode(tiny, false, encoded);
+        String dataUri = DATA_URI_PREFIX + Base64.getEncoder().encodeToString(encoded.toByteArray());
+        return dataUri.length() <= MAX_DATA_URI_LENGTH ? dataUri : null;
+    }
+    /**
+     * Calcule la couleur dominante d'une image : les pixels sont repartis dans 512 classes
+     * (3 bits par composante) et on retient la moyenne de la classe la plus peuplee.
+     * La transparence est aplatie sur fond blanc.
+     *
+     * @param image L'image, de preference deja reduite (miniature)
+     * @return La couleur au format CSS #rrggbb
+     */
+    public static String dominantColor(BufferedImage image) {
+        int width = image.getWidth();
+        long[] sums = new long[512 * 3];
+        int[] counts = new int[512];
+        int[] row = new int[width];
+        for (int y = 0; y < image.getHeight(); y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            for (int x = 0; x < width; x++) {
+                int rgb = flatten(row[x]);
+                int red = (rgb >> 16) & 0xFF;
+                int green = (rgb >> 8) & 0xFF;
+                int blue = rgb & 0xFF;
+                int bin = (red >> 5) << 6 | (green >> 5) << 3 | (blue >> 5);
+                sums[bin * 3] += red;
+                sums[bin * 3 + 1] += green;
+                sums[bin * 3 + 2] += blue;
+                counts[bin]++;
+            }
+        }
+        int best = 0;
+        for (int bin = 1; bin < counts.length; bin++) {
+            if (counts[bin] > counts[best]) {
+                best = bin;
+            }
+        }
+        int count = Math.max(1, counts[best]);
+        return String.format("#%02x%02x%02x", sums[best * 3] / count, sums[best * 3 + 1] / count, sums[best * 3 + 2] / count);
+    }
+    /**
+     * Compose un pixel ARGB sur fond blanc.
+     */
+    private static int flatten(int argb) {
+        int alpha = (argb >>> 24) & 0xFF;
+        if (alpha == 0xFF) {
+            return argb & 0xFFFFFF;
+        }
+        int inverse = 255 - alpha;
+        int red = (((argb >> 16) & 0xFF) * alpha + 255 * inverse) / 255;
+        int green = (((argb >> 8) & 0xFF) * alpha + 255 * inverse) / 255;
+        int blue = ((argb & 0xFF) * alpha + 255 * inverse) / 255;
+        return red << 16 | green << 8 | blue;
+    }
+}
@@ -0,0 +1,211 @@
+package local.epul4a.fotoshare.service;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+/**
+ * Service d'ingestion des fichiers uploadés.
+ * Le contenu est lu une seule fois : détection du type via Magic Numbers,
+ * calcul de l'empreinte SHA-256, contrôle de taille et écriture sur disque
+ * sont effectués pendant le même parcours du flux. La structure et les dimensions
+ * sont ensuite contrôlées sur l'en-tête du fichier écrit, sans décoder les pixels.
+ */
+@Service
+public class IngestService {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    @Autowired
+    private FileValidationService fileValidationService;
+    @Autowired
+    private FileStorageService fileStorageService;
+    @Autowired
+    private BlobService blobService;
+    @Value("${fotoshare.ingest.retain-max-bytes:10485760}")
+    private long retainMaxBytes;
+    /**
+     * Résultat de l'ingestion d'un fichier.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class IngestedFile {
+        private final String storageFilename;
+        private final String mimeType;
+        private final long size;
+        private final String sha256;
+        /**
+         * Dimensions lues dans l'en-tête (null si le format n'est pas reconnu).
+         */
+        private final Integer width;
+        private final Integer height;
+        /**
+         * Copie en mémoire du contenu, transmise au décodeur de miniature.
+         * Null si le fichier dépasse le seuil de rétention.
+         */
+        private final byte[] content;
+        /**
+         * Vrai si le contenu était déjà stocké (stockage adressé par contenu).
+         */
+        private final boolean deduplicated;
+    }
+    /**
+     * Ingère un fichier uploadé.
+     *
+     * @param file Le fichier uploadé
+     * @return Le résultat de l'ingestion
+     * @throws IllegalArgumentException si le fichier n'est pas valide
+     */
+    public IngestedFile ingest(MultipartFile file) {
+        if (file == null || file.isEmpty()) {
+            throw new IllegalArgumentException("Le fichier est vide ou null");
+        }
+        long maxFileSize = fileValidationService.getMaxFileSize();
+        if (file.getSize() > maxFileSize) {
+            throw tooLarge(maxFileSize);
+        }
+        try (InputStream inputStream = file.getInputStream()) {
+            return ingest(inputStream, file.getSize(), maxFileSize);
+        } catch (IOException e) {
+            throw new RuntimeException("Échec du stockage du fichier", e);
+        }
+    }
+    /**
+     * Ingère un flux en une seule lecture.
+     *
+     * @param inputStream Le flux à ingérer
+     * @param expectedSize La taille annoncée (ou -1 si inconnue)
+     * @param maxFileSize La taille maximale autorisée
+     * @return Le résultat de l'ingestion
+     */
+    public IngestedFile ingest(InputStream inputStream, long expectedSize, long maxFileSize) throws IOException {
+        byte[] header = inputStream.readNBytes(FileValidationService.HEADER_LENGTH);
+        String mimeType = fileValidationService.detectMimeType(header, header.length);
+        if (mimeType == null) {
+            throw new IllegalArgumentException("Type de fichier non autorisé. Seuls les formats JPEG, PNG, GIF, WebP et BMP sont acceptés.");
+        }
+        MessageDigest digest = newSha256();
+        ByteArrayOutputStream retained = expectedSize >= 0 && expectedSize <= retainMaxBytes
+                ? new ByteArrayOutputStream((int) expectedSize)
+                : null;
+        Path tempFile = fileStorageService.createTempFile();
+        try {
+            long total = header.length;
+            try (OutputStream out = Files.newOutputStream(tempFile)) {
+                digest.update(header);
+                out.write(header);
+                if (retained != null) {
+                    retained.write(header);
+                }
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int read;
+                while ((read = inputStream.read(buffer)) != -1) {
+                    total += read;
+                    if (total > maxFileSize) {
+                        throw tooLarge(maxFileSize);
+                    }
+                    digest.update(buffer, 0, read);
+                    out.write(buffer, 0, read);
+                    if (retained != null) {
+                        if (retained.size() + read > retainMaxBytes) {
+                            retained = null;
+                        } else {
+                            retained.write(buffer, 0, read);
+                        }
+                    }
+                }
+            }
+            return store(tempFile, mimeType, total, digest, retained);
+        } catch (IOException | RuntimeException e) {
+            fileStorageService.discardTempFile(tempFile);
+            throw e;
+        }
+    }
+    /**
+     * Ingère un fichier déjà écrit dans le répertoire de travail (fichier de transit d'un upload fractionné).
+     * Le fichier est lu une seule fois pour le type, l'empreinte et la copie en mémoire,
+     * puis déplacé tel quel vers son nom de stockage, sans second fichier temporaire.
+     * En cas d'erreur de validation, il est laissé en place.
+     *
+     * @param file Le fichier complet
+     * @param maxFileSize La taille maximale autorisée
+     * @return Le résultat de l'ingestion
+     */
+    public IngestedFile ingestInPlace(Path file, long maxFileSize) throws IOException {
+        long size = Files.size(file);
+        if (size > maxFileSize) {
+            throw tooLarge(maxFileSize);
+        }
+        MessageDigest digest = newSha256();
+        ByteArrayOutputStream retained = size <= retainMaxBytes ? new ByteArrayOutputStream((int) size) : null;
+        String mimeType;
+        try (InputStream inputStream = Files.newInputStream(file)) {
+            byte[] header = inputStream.readNBytes(FileValidationService.HEADER_LENGTH);
+            mimeType = fileValidationService.detectMimeType(header, header.length);
+            if (mimeType == null) {
+                throw new IllegalArgumentException("Type de fichier non autorisé. Seuls les formats JPEG, PNG, GIF, WebP et BMP sont acceptés.");
+            }
+            digest.update(header);
+            if (retained != null) {
+                retained.write(header);
+            }
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+                if (retained != null) {
+                    retained.write(buffer, 0, read);
+                }
+            }
+        }
+        return store(file, mimeType, size, digest, retained);
+    }
+    /**
+     * Valide l'en-tête du fichier lu puis le déplace vers son nom de stockage
+     * (adressé par contenu si la déduplication est active, UUID sinon).
+     */
+    private IngestedFile store(Path tempFile, String mimeType, long total, MessageDigest digest,
+                               ByteArrayOutputStream retained) {
+        int[] dimensions = fileValidationService.validateImageContent(tempFile, mimeType);
+        String extension = fileValidationService.getExtensionForMimeType(mimeType);
+        String sha256 = HexFormat.of().formatHex(digest.digest());
+        String storageFilename;
+        boolean deduplicated = false;
+        if (blobService.isDedupEnabled()) {
+            storageFilename = blobService.contentAddressedName(sha256, extension);
+            deduplicated = blobService.acquire(tempFile, sha256, extension, mimeType, total);
+        } else {
+            storageFilename = fileStorageService.storeTempFile(tempFile, extension);
+        }
+        return new IngestedFile(
+            storageFilename,
+            mimeType,
+            total,
+            sha256,
+            dimensions != null ? dimensions[0] : null,
+            dimensions != null ? dimensions[1] : null,
+            retained != null && !deduplicated ? retained.toByteArray() : null,
+            deduplicated
+        );
+    }
+    private IllegalArgumentException tooLarge(long maxFileSize) {
+        return new IllegalArgumentException(
+            String.format("La taille du fichier dépasse la limite autorisée de %d MB", maxFileSize / (1024 * 1024))
+        );
+    }
+    private MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 indisponible", e);
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package local.epul4a.fotoshare.service;
+import local.epul4a.fotoshare.dto.OrphanCollectionReportDto;
+import local.epul4a.fotoshare.repository.PhotoRepository;
+import local.epul4a.fotoshare.repository.StoredBlobRepository;
+import local.epul4a.fotoshare.storage.LocalBlobStore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+/**
+ * Ramasse-miettes des fichiers orphelins du repertoire de stockage.
+ * Un fichier est orphelin quand aucune photo ni aucun blob ne reference l'original dont il
+ * provient (echec d'insertion apres le stockage, miniature ecrite pour une transaction annulee,
+ * suppression interrompue). Le repertoire est parcouru en flux avec un DirectoryStream et les noms
+ * sont verifies en base par lots. Un orphelin plus ancien que le delai de grace est d'abord mis
+ * en quarantaine ; il n'est supprime qu'apres la duree de quarantaine, et il est restaure si une
+ * photo le reference a nouveau entre-temps.
+ * Le parcours porte sur le disque : le ramasse-miettes ne s'applique qu'au pilote de stockage local.
+ */
+@Service
+public class OrphanCollectorService {
+    private static final Pattern DERIVATIVE_PATTERN = Pattern.compile("^(.+)_(thumb|r\\d+)\\.[A-Za-z0-9]+$");
+    private static final List<String> ORIGINAL_EXTENSIONS = List.of("jpg", "jpeg", "png", "gif", "webp", "bmp", "bin");
+    private static final String TEMP_PREFIX = ".ingest-";
+    private static final Pattern SHARD_PATTERN = Pattern.compile("^[0-9a-f]{2}$");
+    private static final int SHARD_DEPTH = 2;
+    @Autowired
+    private FileStorageService fileStorageService;
+    @Autowired
+    private PhotoRepository photoRepository;
+    @Autowired
+    private StoredBlobRepository storedBlobRepository;
+    @Value("${fotoshare.storage.gc.enabled:true}")
+    private boolean enabled;
+    @Value("${fotoshare.storage.gc.dry-run:false}")
+    private boolean defaultDryRun;
+    @Value("${fotoshare.storage.gc.grace-hours:24}")
+    private long graceHours;
+    @Value("${fotoshare.storage.gc.quarantine-days:7}")
+    private long quarantineDays;
+    @Value("${fotoshare.storage.gc.batch-size:500}")
+    private int batchSize;
+    private volatile OrphanCollectionReportDto lastReport;
+    /**
+     * Compteurs d'une passe.
+     */
+    private static class Counters {
+        long scanned;
+        long referenced;
+        long recent;
+        long quarantined;
+        long quarantinedBytes;
+        long restored;
+        long deleted;
+        long reclaimedBytes;
+    }
+    /**
+     * Passe periodique, avec le mode (simulation ou non) configure.
+     */
+    @Scheduled(initialDelayString = "${fotoshare.storage.gc.interval-ms:86400000}",
+               fixedDelayString = "${fotoshare.storage.gc.interval-ms:86400000}")
+    public void scheduledCollect() {
+        if (!enabled || !fileStorageService.isLocal()) {
+            return;
+        }
+        try {
+            collect(defaultDryRun);
+        } catch (RuntimeException e) {
+            System.err.println("Erreur lors du ramassage des fichiers orphelins: " + e.getMessage());
+        }
+    }
+    /**
+     * Execute une passe complete : traite d'abord la quarantaine (restauration ou suppression),
+     * puis met en quarantaine les nouveaux orphelins.
+     *
+     * @param dryRun Vrai pour ne rien deplacer ni supprimer
+     * @return Le rapport de la passe
+     * @throws IllegalStateException si le stockage n'est pas local
+     */
+    public synchronized OrphanCollectionReportDto collect(boolean dryRun) {
+        LocalBlobStore localStore = fileStorageService.getLocalStore();
+        long startedAt = System.currentTimeMillis();
+        Counters counters = new Counters();
+        long now = System.currentTimeMillis();
+        processQuarantine(dryRun, now - TimeUnit.DAYS.toMillis(quarantineDays), counters);
+        processStorage(localStore, dryRun, now - TimeUnit.HOURS.toMillis(graceHours), counters);
+        OrphanCollectionReportDto report = OrphanCollectionReportDto.builder()
+                .dryRun(dryRun)
+                .startedAt(new Date(startedAt))
+                .durationMillis(System.currentTimeMillis() - startedAt)
+                .scannedFiles(counters.scanned)
+                .referencedFiles(counters.referenced)
+                .recentFiles(counters.recent)
+                .quarantinedFiles(counters.quarantined)
+                .quarantinedBytes(counters.quarantinedBytes)
+                .restoredFiles(counters.restored)
+                .deletedFiles(counters.deleted)
+                .reclaimedBytes(counters.reclaimedBytes)
+                .build();
+        lastReport = report;
+        return report;
+    }
+    /**
+     * Retourne le rapport de la derniere passe, ou null si aucune n'a encore eu lieu.
+     */
+    public OrphanCollectionReportDto getLastReport() {
+        return lastReport;
+    }
+    private void processStorage(LocalBlobStore localStore, boolean dryRun, long graceLimit, Counters counters) {
+        List<Path> batch = new ArrayList<>(batchSize);
+        scanDirectory(localStore.getRootLocation(), 0, batch, dryRun, graceLimit, counters);
+        collectBatch(batch, dryRun, graceLimit, counters);
+    }
+    /**
+     * Parcourt un repertoire du stockage : les fichiers de l'ancienne disposition a plat a la racine,
+     * puis les deux niveaux de sous-repertoires {@code ab/cd}. Les repertoires caches
+     * (transit, quarantaine) sont ignores.
+     */
+    private void scanDirectory(Path directory, int depth, List<Path> batch, boolean dryRun,
+                               long graceLimit, Counters counters) {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path entry : stream) {
+                if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+                    if (depth < SHARD_DEPTH && SHARD_PATTERN.matcher(entry.getFileName().toString()).matches()) {
+                        scanDirectory(entry, depth + 1, batch, dryRun, graceLimit, counters);
+                    }
+                    continue;
+                }
+                if (!Files.isRegularFile(entry, LinkOption.NOFOLLOW_LINKS)) {
+                    continue;
+                }
+                batch.add(entry);
+                if (batch.size() == batchSize) {
+                    collectBatch(batch, dryRun, graceLimit, counters);
+                    batch.clear();
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Impossible de parcourir le repertoire de stockage " + directory, e);
+        }
+    }
+    private void collectBatch(List<Path> batch, boolean dryRun, long graceLimit, Counters counters) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        Set<String> referenced = findReferenced(batch);
+        for (Path file : batch) {
+            counters.scanned++;
+            if (isReferenced(file.getFileName().toString(), referenced)) {
+                counters.referenced++;
+                continue;
+            }
+            BasicFileAttributes attributes = readAttributes(file);
+            if (attributes == null) {
+                continue;
+            }
+            if (attributes.lastModifiedTime().toMillis() > graceLimit) {
+                counters.recent++;
+                continue;
+            }
+            if (!dryRun && !moveToQuarantine(file)) {
+                continue;
+            }
+            counters.quarantined++;
+            counters.quarantinedBytes += attributes.size();
+        }
+    }
+    private void processQuarantine(boolean dryRun, long retentionLimit, Counters counters) {
+        Path quarantine = fileStorageService.getQuarantineLocation();
+        List<Path> batch = new ArrayList<>(batchSize);
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(quarantine)) {
+            for (Path file : stream) {
+                if (!Files.isRegularFile(file, LinkOption.NOFOLLOW_LINKS)) {
+                    continue;
+                }
+                batch.add(file);
+                if (batch.size() == batchSize) {
+                    purgeBatch(batch, dryRun, retentionLimit, counters);
+                    batch.clear();
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Impossible de parcourir la quarantaine", e);
+        }
+        purgeBatch(batch, dryRun, retentionLimit, counters);
+    }
+    private void purgeBatch(List<Path> batch, boolean dryRun, long retentionLimit, Counters counters) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        Set<String> referenced = findReferenced(batch);
+        for (Path file : batch) {
+            if (isReferenced(file.getFileName().toString(), referenced)) {
+                if (dryRun || restore(file)) {
+                    counters.restored++;
+                }
+                continue;
+            }
+            BasicFileAttributes attributes = readAttributes(file);
+            if (attributes == null || attributes.lastModifiedTime().toMillis() > retentionLimit) {
+                continue;
+            }
+            try {
+                if (!dryRun) {
+                    Files.delete(file);
+                }
+                counters.deleted++;
+                counters.reclaimedBytes += attributes.size();
+            } catch (IOException e) {
+                System.err.println("Impossible de supprimer l'orphelin " + file.getFileName() + ": " + e.getMessage());
+            }
+        }
+    }
+    /**
+     * Retourne, parmi les originaux dont proviennent les fichiers du lot, ceux qui sont encore
+     * references par une photo ou par un blob.
+     */
+    private Set<String> findReferenced(List<Path> batch) {
+        Set<String> candidates = new HashSet<>();
+        for (Path file : batch) {
+            candidates.addAll(originalCandidates(file.getFileName().toString()));
+        }
+        Set<String> referenced = new HashSet<>();
+        if (!candidates.isEmpty()) {
+            referenced.addAll(photoRepository.findExistingStorageFilenames(candidates));
+            referenced.addAll(storedBlobRepository.findReferencedStorageFilenames(candidates));
+        }
+        return referenced;
+    }
+    private boolean isReferenced(String filename, Set<String> referenced) {
+        for (String candidate : originalCandidates(filename)) {
+            if (referenced.contains(candidate)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    /**
+     * Retourne les noms d'original possibles pour un fichier du stockage : le fichier lui-meme,
+     * ou pour une miniature ou une declinaison, son nom de base suivi des extensions d'upload.
+     * Un fichier temporaire d'ingestion n'appartient a aucun original.
+     */
+    static List<String> originalCandidates(String filename) {
+        if (filename.startsWith(TEMP_PREFIX)) {
+            return List.of();
+        }
+        Matcher matcher = DERIVATIVE_PATTERN.matcher(filename);
+        if (!matcher.matches()) {
+            return List.of(filename);
+        }
+        List<String> candidates = new ArrayList<>(ORIGINAL_EXTENSIONS.size());
+        for (String extension : ORIGINAL_EXTENSIONS) {
+            candidates.add(matcher.group(1) + "." + extension);
+        }
+        return candidates;
+    }
+    /**
+     * Deplace un fichier en quarantaine ; sa date de modification devient la date de mise en quarantaine.
+     */
+    private boolean moveToQuarantine(Path file) {
+        try {
+            Path target = fileStorageService.getQuarantineLocation().resolve(file.getFileName());
+            Files.move(file, target, StandardCopyOption.REPLACE_EXISTING);
+            Files.setLastModifiedTime(target, FileTime.fromMillis(System.currentTimeMillis()));
+            return true;
+        } catch (IOException e) {
+            System.err.println("Impossible de mettre en quarantaine " + file.getFileName() + ": " + e.getMessage());
+            return false;
+        }
+    }
+    /**
+     * Remet dans le stockage un fichier de nouveau reference, sans ecraser un fichier existant.
+     */
+    private boolean restore(Path file) {
+        String filename = file.getFileName().toString();
+        try {
+            Path target = fileStorageService.getLocalStore().resolveForWrite(filename);
+            if (fileStorageService.exists(filename)) {
+                Files.delete(file);
+            } else {
+                Files.move(file, target);
+            }
+            return true;
+        } catch (IOException e) {
+            System.err.println("Impossible de restaurer " + file.getFileName() + ": " + e.getMessage());
+            return false;
+        }
+    }
+    private BasicFileAttributes readAttributes(Path file) {
+        try {
+            return Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package local.epul4a.fotoshare.service;
+import java.awt.image.BufferedImage;
+/**
+ * Empreinte perceptuelle des images (dHash sur 64 bits).
+ * L'image est reduite par moyenne de zones a une grille de 9x8 luminances, puis chaque bit
+ * indique si une case est plus claire que sa voisine de droite. L'empreinte resiste au
+ * redimensionnement et au reencodage : deux versions d'une meme photo ne different que de
+ * quelques bits (distance de Hamming).
+ */
+public final class PerceptualHash {
+    private static final int GRID_WIDTH = 9;
+    private static final int GRID_HEIGHT = 8;
+    private PerceptualHash() {
+    }
+    /**
+     * Calcule l'empreinte dHash d'une image. La transparence est ignoree.
+     *
+     * @param image L'image, de preference deja reduite (miniature)
+     * @return L'empreinte sur 64 bits
+     */
+    public static long dHash(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        long[] sums = new long[GRID_WIDTH * GRID_HEIGHT];
+        long[] counts = new long[GRID_WIDTH * GRID_HEIGHT];
+        int[] column = new int[width];
+        for (int x = 0; x < width; x++) {
+            column[x] = Math.min(GRID_WIDTH - 1, x * GRID_WIDTH / width);
+        }
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            int cellRow = Math.min(GRID_HEIGHT - 1, y * GRID_HEIGHT / height) * GRID_WIDTH;
+            image.getRGB(0, y, width, 1, row, 0, width);
+            for (int x = 0; x < width; x++) {
+                int rgb = row[x];
+                int luma = (299 * ((rgb >> 16) & 0xFF) + 587 * ((rgb >> 8) & 0xFF) + 114 * (rgb & 0xFF)) / 1000;
+                sums[cellRow + column[x]] += luma;
+                counts[cellRow + column[x]]++;
+            }
+        }
+        long hash = 0;
+        for (int y = 0; y < GRID_HEIGHT; y++) {
+            for (int x = 0; x < GRID_WIDTH - 1; x++) {
+                int left = y * GRID_WIDTH + x;
+                // Comparaison des moyennes sans division : a/ca > b/cb  <=>  a*cb > b*ca
+                boolean brighter = sums[left] * Math.max(1, counts[left + 1]) > sums[left + 1] * Math.max(1, counts[left]);
+                hash = (hash << 1) | (brighter ? 1 : 0);
+            }
+        }
+        return hash;
+    }
+    /**
+     * Retourne la distance de Hamming entre deux empreintes (nombre de bits differents).
+     */
+    public static int distance(long first, long second) {
+        return Long.bitCount(first ^ second);
+    }
+}
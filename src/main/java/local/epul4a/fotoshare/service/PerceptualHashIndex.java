@@ -0,0 +1,200 @@
+package local.epul4a.fotoshare.service;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+/**
+ * Index des empreintes perceptuelles des photos d'un proprietaire (table de hachage multi-index).
+ * L'empreinte de 64 bits est decoupee en {@code maxDistance + 1} morceaux : deux empreintes a
+ * distance au plus {@code maxDistance} ont forcement un morceau identique (principe des tiroirs).
+ * Chaque morceau est indexe dans sa propre table ; une recherche ne compare que les photos
+ * partageant un morceau, au lieu de toute la bibliotheque. Une paire trouvee par plusieurs
+ * morceaux n'est retenue que pour le premier, ce qui evite un ensemble de deduplication.
+ * Les methodes sont synchronisees : l'index est partage entre les requetes et les workers.
+ */
+public class PerceptualHashIndex {
+    /**
+     * Photo proche d'une empreinte recherchee.
+     */
+    public record Match(long photoId, int distance) {
+    }
+    /**
+     * Paire de photos proches.
+     */
+    public record Pair(long firstId, long secondId, int distance) {
+    }
+    private static final long REMOVED = -1L;
+    private static final int MIN_COMPACTION = 64;
+    private final int maxDistance;
+    private final int[] chunkShifts;
+    private final long[] chunkMasks;
+    private final List<Map<Integer, int[]>> tables;
+    private final Map<Long, Integer> slotById = new HashMap<>();
+    private long[] hashes = new long[16];
+    private long[] ids = new long[16];
+    private int size;
+    private int removed;
+    /**
+     * @param maxDistance La distance de Hamming maximale recherchee (1 a 15)
+     */
+    public PerceptualHashIndex(int maxDistance) {
+        if (maxDistance < 1 || maxDistance > 15) {
+            throw new IllegalArgumentException("La distance maximale doit etre comprise entre 1 et 15");
+        }
+        this.maxDistance = maxDistance;
+        int chunks = maxDistance + 1;
+        this.chunkShifts = new int[chunks];
+        this.chunkMasks = new long[chunks];
+        this.tables = new ArrayList<>(chunks);
+        int shift = 0;
+        for (int i = 0; i < chunks; i++) {
+            int bits = 64 / chunks + (i < 64 % chunks ? 1 : 0);
+            chunkShifts[i] = shift;
+            chunkMasks[i] = (1L << bits) - 1;
+            shift += bits;
+            tables.add(new HashMap<>());
+        }
+    }
+    /**
+     * Ajoute ou remplace l'empreinte d'une photo.
+     */
+    public synchronized void add(long photoId, long hash) {
+        remove(photoId);
+        if (size == ids.length) {
+            hashes = Arrays.copyOf(hashes, size * 2);
+            ids = Arrays.copyOf(ids, size * 2);
+        }
+        int slot = size++;
+        hashes[slot] = hash;
+        ids[slot] = photoId;
+        slotById.put(photoId, slot);
+        for (int chunk = 0; chunk < chunkShifts.length; chunk++) {
+            tables.get(chunk).compute(chunkOf(hash, chunk), (key, bucket) -> append(bucket, slot));
+        }
+    }
+    /**
+     * Retire une photo de l'index ; l'emplacement est recupere lors d'un compactage.
+     */
+    public synchronized void remove(long photoId) {
+        Integer slot = slotById.remove(photoId);
+        if (slot == null) {
+            return;
+        }
+        ids[slot] = REMOVED;
+        removed++;
+        if (removed >= MIN_COMPACTION && removed * 2 > size) {
+            compact();
+        }
+    }
+    /**
+     * Retourne les photos a distance au plus {@code maxDistance} d'une empreinte, triees par distance
+     * puis par identifiant.
+     *
+     * @param hash L'empreinte recherchee
+     * @param excludedId Une photo a ignorer (la photo elle-meme), ou null
+     */
+    public synchronized List<Match> search(long hash, Long excludedId) {
+        List<Match> matches = new ArrayList<>();
+        for (int chunk = 0; chunk < chunkShifts.length; chunk++) {
+            int[] bucket = tables.get(chunk).get(chunkOf(hash, chunk));
+            if (bucket == null) {
+                continue;
+            }
+            for (int i = 1; i <= bucket[0]; i++) {
+                int slot = bucket[i];
+                long id = ids[slot];
+                if (id == REMOVED || (excludedId != null && id == excludedId) || sharesEarlierChunk(hash, hashes[slot], chunk)) {
+                    continue;
+                }
+                int distance = PerceptualHash.distance(hash, hashes[slot]);
+                if (distance <= maxDistance) {
+                    matches.add(new Match(id, distance));
+                }
+            }
+        }
+        matches.sort((a, b) -> a.distance() != b.distance()
+                ? Integer.compare(a.distance(), b.distance())
+                : Long.compare(a.photoId(), b.photoId()));
+        return matches;
+    }
+    /**
+     * Retourne toutes les paires de photos a distance au plus {@code maxDistance}.
+     */
+    public synchronized List<Pair> pairs() {
+        List<Pair> pairs = new ArrayList<>();
+        for (int chunk = 0; chunk < chunkShifts.length; chunk++) {
+            for (int[] bucket : tables.get(chunk).values()) {
+                for (int i = 1; i <= bucket[0]; i++) {
+                    int first = bucket[i];
+                    if (ids[first] == REMOVED) {
+                        continue;
+                    }
+                    for (int j = i + 1; j <= bucket[0]; j++) {
+                        int second = bucket[j];
+                        if (ids[second] == REMOVED || sharesEarlierChunk(hashes[first], hashes[second], chunk)) {
+                            continue;
+                        }
+                        int distance = PerceptualHash.distance(hashes[first], hashes[second]);
+                        if (distance <= maxDistance) {
+                            pairs.add(new Pair(ids[first], ids[second], distance));
+                        }
+                    }
+                }
+            }
+        }
+        return pairs;
+    }
+    /**
+     * Retourne le nombre de photos indexees.
+     */
+    public synchronized int size() {
+        return slotById.size();
+    }
+    private int chunkOf(long hash, int chunk) {
+        return (int) ((hash >>> chunkShifts[chunk]) & chunkMasks[chunk]);
+    }
+    private boolean sharesEarlierChunk(long first, long second, int chunk) {
+        for (int earlier = 0; earlier < chunk; earlier++) {
+            if (chunkOf(first, earlier) == chunkOf(second, earlier)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    /**
+     * Ajoute un emplacement a un seau ; la case 0 contient le nombre d'elements.
+     */
+    private static int[] append(int[] bucket, int slot) {
+        if (bucket == null) {
+            bucket = new int[4];
+        } else if (bucket[0] + 1 == bucket.length) {
+            bucket = Arrays.copyOf(bucket, bucket.length * 2);
+        }
+        bucket[++bucket[0]] = slot;
+        return bucket;
+    }
+    /**
+     * Reconstruit l'index sans les emplacements des photos retirees.
+     */
+    private void compact() {
+        long[] liveHashes = new long[slotById.size()];
+        long[] liveIds = new long[slotById.size()];
+        int count = 0;
+        for (int slot = 0; slot < size; slot++) {
+            if (ids[slot] != REMOVED) {
+                liveHashes[count] = hashes[slot];
+                liveIds[count++] = ids[slot];
+            }
+        }
+        slotById.clear();
+        tables.forEach(Map::clear);
+        hashes = new long[Math.max(16, count * 2)];
+        ids = new long[hashes.length];
+        size = 0;
+        removed = 0;
+        for (int i = 0; i < count; i++) {
+            add(liveIds[i], liveHashes[i]);
+        }
+    }
+}
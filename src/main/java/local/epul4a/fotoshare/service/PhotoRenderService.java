@@ -0,0 +1,399 @@
+package local.epul4a.fotoshare.service;
+import jakarta.annotation.PostConstruct;
+import local.epul4a.fotoshare.dto.RenderCacheStatsDto;
+import local.epul4a.fotoshare.model.Photo;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Stream;
+/**
+ * Service de rendu des photos a la demande (largeur, hauteur, mode d'ajustement), limite a une
+ * liste de tailles autorisees.
+ * Un rendu est produit au premier appel a partir de l'original, puis enregistre dans un cache disque
+ * local ; les appels suivants sont servis depuis ce fichier. La cle du cache associe la photo, les
+ * parametres et une empreinte de la source (empreinte du contenu et parametres d'encodage) : un
+ * original remplace ou une autre configuration d'encodage donne une autre cle.
+ * La taille totale du cache est bornee, les rendus les moins recemment servis sont supprimes (LRU).
+ * Un rendu en cours d'envoi est epingle : il n'est pas evince et, s'il est invalide, son fichier
+ * n'est supprime qu'a la fin de l'envoi.
+ * Deux appels simultanes pour le meme rendu ne decodent l'original qu'une fois.
+ */
+@Service
+public class PhotoRenderService {
+    @Autowired
+    private ThumbnailService thumbnailService;
+    @Value("${fotoshare.render.sizes:150,300,800,1600}")
+    private List<Integer> allowedSizes;
+    @Value("${fotoshare.render.cache.location:./render-cache}")
+    private String cacheLocation;
+    @Value("${fotoshare.render.cache.max-bytes:1073741824}")
+    private long maxBytes;
+    private static final String TEMP_SUFFIX = ".tmp";
+    private Path cacheDirectory;
+    private final LinkedHashMap<String, CachedRender> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private final ConcurrentHashMap<String, CompletableFuture<Void>> inFlight = new ConcurrentHashMap<>();
+    private long currentBytes;
+    private long hits;
+    private long misses;
+    private long renders;
+    private long evictions;
+    /**
+     * Mode d'ajustement au cadre demande.
+     */
+    public enum Fit {
+        /** L'image tient dans le cadre, ratio conserve. */
+        CONTAIN,
+        /** L'image recouvre le cadre et est recadree au centre. */
+        COVER
+    }
+    /**
+     * Parametres valides d'un rendu ; une dimension nulle n'est pas imposee.
+     */
+    public record RenderParams(int width, int height, Fit fit) {
+    }
+    /**
+     * Rendu servi depuis le cache disque. Le fichier reste disponible jusqu'a l'appel a {@link #close()}.
+     */
+    public final class RenderedFile implements AutoCloseable {
+        private final CachedRender render;
+        private boolean closed;
+        private RenderedFile(CachedRender render) {
+            this.render = render;
+        }
+        public Path file() {
+            return render.file;
+        }
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                unpin(render);
+            }
+        }
+    }
+    private static final class CachedRender {
+        private final String key;
+        private final Path file;
+        private final long size;
+        private int pins;
+        private boolean removed;
+        private CachedRender(String key, Path file, long size) {
+            this.key = key;
+            this.file = file;
+            this.size = size;
+        }
+    }
+    @PostConstruct
+    public void init() {
+        this.cacheDirectory = Paths.get(cacheLocation).toAbsolutePath().normalize();
+        try {
+            Files.createDirectories(cacheDirectory);
+            // Les rendus deja presents sont repris, du plus ancien au plus recent
+            try (Stream<Path> files = Files.list(cacheDirectory)) {
+                List<Path> existing = files.filter(Files::isRegularFile)
+                        .sorted(Comparator.comparingLong(PhotoRenderService::lastModified))
+                        .toList();
+                for (Path file : existing) {
+                    String name = file.getFileName().toString();
+                    if (name.endsWith(TEMP_SUFFIX)) {
+                        Files.deleteIfExists(file);
+                        continue;
+                    }
+                    int dotIndex = name.lastIndexOf('.');
+                    String key = dotIndex > 0 ? name.substring(0, dotIndex) : name;
+                    addEntry(new CachedRender(key, file, Files.size(file)));
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Impossible de preparer le cache des rendus", e);
+        }
+    }
+    /**
+     * Valide les parametres d'un rendu.
+     *
+     * @param width La largeur demandee, ou null
+     * @param height La hauteur demandee, ou null
+     * @param fit Le mode d'ajustement (contain par defaut, ou cover)
+     * @return Les parametres valides
+     * @throws IllegalArgumentException Si une dimension n'est pas autorisee, si aucune n'est donnee
+     * ou si le mode cover n'a pas ses deux dimensions
+     */
+    public RenderParams parseParams(Integer width, Integer height, String fit) {
+        if (width == null && height == null) {
+            throw new IllegalArgumentException("Largeur ou hauteur requise");
+        }
+        if (width != null && !allowedSizes.contains(width) || height != null && !allowedSizes.contains(height)) {
+            throw new IllegalArgumentException("Taille non autorisee, tailles possibles : " + allowedSizes);
+        }
+        Fit mode;
+        try {
+            mode = fit == null || fit.isEmpty() ? Fit.CONTAIN : Fit.valueOf(fit.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Mode d'ajustement inconnu: " + fit);
+        }
+        if (mode == Fit.COVER && (width == null || height == null)) {
+            throw new IllegalArgumentException("Le mode cover requiert la largeur et la hauteur");
+        }
+        return new RenderParams(width != null ? width : 0, height != null ? height : 0, mode);
+    }
+    /**
+     * Calcule l'ETag fort d'un rendu.
+     *
+     * @return L'ETag entre guillemets, ou null si l'empreinte de la photo est inconnue
+     */
+    public String getEntityTag(Photo photo, RenderParams params) {
+        if (photo.getContent_hash() == null) {
+            return null;
+        }
+        return "\"" + photo.getContent_hash() + "-" + params.width() + "x" + params.height()
+                + "-" + params.fit().name().toLowerCase(Locale.ROOT)
+                + "-" + Integer.toHexString(thumbnailService.getRenderSpec().hashCode()) + "\"";
+    }
+    /**
+     * Retourne le fichier d'un rendu, produit et mis en cache au premier appel.
+     * Le rendu est epingle jusqu'a la fermeture du resultat, a fermer une fois l'envoi termine.
+     * L'appelant a deja verifie l'acces a la photo.
+     *
+     * @param photo La photo
+     * @param params Les parametres valides du rendu
+     * @return Le rendu epingle dans le cache disque
+     * @throws IOException Si erreur lors du rendu
+     */
+    public RenderedFile render(Photo photo, RenderParams params) throws IOException {
+        String key = cacheKey(photo, params);
+        RenderedFile cached = pin(key, true);
+        if (cached != null) {
+            return cached;
+        }
+        while (true) {
+            CompletableFuture<Void> own = new CompletableFuture<>();
+            CompletableFuture<Void> pending = inFlight.putIfAbsent(key, own);
+            if (pending != null) {
+                await(pending);
+                RenderedFile rendered = pin(key, false);
+                if (rendered != null) {
+                    return rendered;
+                }
+                // Rendu evince avant d'avoir pu etre epingle : il est produit de nouveau
+                continue;
+            }
+            try {
+                RenderedFile rendered = pin(key, false);
+                if (rendered == null) {
+                    rendered = renderToCache(photo, params, key);
+                }
+                own.complete(null);
+                return rendered;
+            } catch (IOException | RuntimeException e) {
+                own.completeExceptionally(e);
+                throw e;
+            } finally {
+                inFlight.remove(key, own);
+            }
+        }
+    }
+    /**
+     * Supprime les rendus d'une photo apres le commit de la transaction courante.
+     */
+    public void invalidateAfterCommit(Long photoId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    invalidate(photoId);
+                }
+            });
+        } else {
+            invalidate(photoId);
+        }
+    }
+    /**
+     * Supprime les rendus d'une photo.
+     */
+    public synchronized void invalidate(Long photoId) {
+        String prefix = photoId + "-";
+        Iterator<Map.Entry<String, CachedRender>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, CachedRender> entry = iterator.next();
+            if (entry.getKey().startsWith(prefix)) {
+                iterator.remove();
+                discard(entry.getValue());
+            }
+        }
+    }
+    /**
+     * Retourne les statistiques du cache des rendus.
+     */
+    public synchronized RenderCacheStatsDto getStats() {
+        long lookups = hits + misses;
+        return RenderCacheStatsDto.builder()
+                .entries(entries.size())
+                .bytes(currentBytes)
+                .maxBytes(maxBytes)
+                .hits(hits)
+                .misses(misses)
+                .hitRate(lookups > 0 ? (double) hits / lookups : 0)
+                .renders(renders)
+                .evictions(evictions)
+                .build();
+    }
+    private RenderedFile renderToCache(Photo photo, RenderParams params, String key) throws IOException {
+        Path temp = Files.createTempFile(cacheDirectory, key, TEMP_SUFFIX);
+        try {
+            String extension;
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp))) {
+                extension = thumbnailService.render(photo.getStorage_filename(), params.width(), params.height(),
+                        params.fit() == Fit.COVER, out);
+            }
+            Path file = cacheDirectory.resolve(key + "." + extension);
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            CachedRender render = new CachedRender(key, file, Files.size(file));
+            synchronized (this) {
+                renders++;
+                // Epingle avant l'eviction pour qu'un ajout concurrent ne le supprime pas
+                render.pins++;
+                addEntry(render);
+            }
+            return new RenderedFile(render);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+    /**
+     * Epingle le rendu en cache d'une cle.
+     *
+     * @return Le rendu epingle, ou null s'il n'est pas en cache
+     */
+    private synchronized RenderedFile pin(String key, boolean count) {
+        CachedRender cached = entries.get(key);
+        if (cached != null && !Files.isRegularFile(cached.file)) {
+            // Fichier supprime hors de l'application
+            entries.remove(key);
+            currentBytes -= cached.size;
+            cached = null;
+        }
+        if (count) {
+            if (cached != null) {
+                hits++;
+            } else {
+                misses++;
+            }
+        }
+        if (cached == null) {
+            return null;
+        }
+        cached.pins++;
+        return new RenderedFile(cached);
+    }
+    private synchronized void unpin(CachedRender render) {
+        render.pins--;
+        if (render.pins == 0 && render.removed) {
+            deleteFile(render);
+        }
+    }
+    /**
+     * Ajoute un rendu et supprime les moins recemment servis au-dela de la taille maximale,
+     * sans jamais supprimer celui qui vient d'etre ajoute ni un rendu en cours d'envoi.
+     */
+    private void addEntry(CachedRender render) {
+        CachedRender previous = entries.put(render.key, render);
+        if (previous != null) {
+            // Meme fichier, remplace par le nouveau rendu
+            currentBytes -= previous.size;
+        }
+        currentBytes += render.size;
+        Iterator<Map.Entry<String, CachedRender>> eldest = entries.entrySet().iterator();
+        while (currentBytes > maxBytes && eldest.hasNext()) {
+            CachedRender candidate = eldest.next().getValue();
+            if (candidate == render || candidate.pins > 0) {
+                continue;
+            }
+            eldest.remove();
+            discard(candidate);
+            evictions++;
+        }
+    }
+    /**
+     * Retire un rendu du compte du cache ; son fichier est supprime des qu'il n'est plus epingle.
+     */
+    private void discard(CachedRender render) {
+        currentBytes -= render.size;
+        if (render.pins > 0) {
+            render.removed = true;
+        } else {
+            deleteFile(render);
+        }
+    }
+    private void deleteFile(CachedRender render) {
+        if (entries.get(render.key) != null) {
+            // Le fichier a ete produit de nouveau sous la meme cle
+            return;
+        }
+        try {
+            Files.deleteIfExists(render.file);
+        } catch (IOException e) {
+            System.err.println("Erreur lors de la suppression du rendu: " + e.getMessage());
+        }
+    }
+    private void await(CompletableFuture<Void> pending) throws IOException {
+        try {
+            pending.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Rendu interrompu", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IOException("Erreur lors du rendu", e.getCause());
+        }
+    }
+    /**
+     * Cle du cache : ID de la photo, parametres, puis empreinte de la source et de la configuration d'encodage.
+     */
+    private String cacheKey(Photo photo, RenderParams params) {
+        String source = photo.getContent_hash() != null ? photo.getContent_hash() : photo.getStorage_filename();
+        String digest = sha256Hex(source + ";" + thumbnailService.getRenderSpec()).substring(0, 16);
+        return photo.getId() + "-" + params.width() + "x" + params.height()
+                + "-" + params.fit().name().toLowerCase(Locale.ROOT) + "-" + digest;
+    }
+    private static String sha256Hex(String value) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 indisponible", e);
+        }
+    }
+    private static long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+}
@@ -1,17 +1,25 @@
 package local.epul4a.fotoshare.service;
 import local.epul4a.fotoshare.model.Photo;
 import local.epul4a.fotoshare.model.PERMISSION;
+import local.epul4a.fotoshare.model.THUMBNAIL_STATUS;
 import local.epul4a.fotoshare.model.VISIBILITY;
 import local.epul4a.fotoshare.repository.CommentaryRepository;
 import local.epul4a.fotoshare.repository.PhotoRepository;
 import local.epul4a.fotoshare.repository.ShareRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ByteArrayResource;
 import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 /**
  * Service de gestion des photos.
@@ -26,15 +34,29 @@ public class PhotoService {
     @Autowired
     private CommentaryRepository commentaryRepository;
     @Autowired
-    private FileValidationService fileValidationService;
-    @Autowired
     private FileStorageService fileStorageService;
     @Autowired
+    private IngestService ingestService;
+    @Autowired
+    private BlobService blobService;
+    @Autowired
     private PermissionService permissionService;
     @Autowired
+    private ThumbnailJobService thumbnailJobService;
+    @Autowired
     private ThumbnailService thumbnailService;
+    @Autowired
+    private DuplicateIndexService duplicateIndexService;
+    @Autowired
+    private ThumbnailCacheService thumbnailCacheService;
+    @Autowired
+    private ThumbnailSlabCache thumbnailSlabCache;
+    @Autowired
+    private PhotoRenderService photoRenderService;
     /**
      * Upload une nouvelle photo avec validation complète.
+     * Le fichier est lu une seule fois ; la miniature est générée en arrière-plan
+     * après le commit, à partir du contenu déjà en mémoire.
      *
      * @param file Le fichier uploadé
      * @param title Le titre de la photo
@@ -46,28 +68,96 @@ public class PhotoService {
     @Transactional
     public Photo uploadPhoto(MultipartFile file, String title, String description,
                             VISIBILITY visibility, Long ownerId) {
-        String detectedMimeType = fileValidationService.validateFile(file);
-        String extension = fileValidationService.getExtensionForMimeType(detectedMimeType);
-        String storageFilename = fileStorageService.store(file, detectedMimeType, extension);
-        String thumbnailFilename = null;
+        IngestService.IngestedFile ingested = ingestService.ingest(file);
+        return savePhoto(ingested, file.getOriginalFilename(), title, description, visibility, ownerId);
+    }
+    /**
+     * Crée une photo à partir d'un fichier de transit (upload fractionné).
+     * Le fichier passe par la même validation qu'un upload direct, puis est déplacé
+     * vers son nom de stockage sans être recopié.
+     *
+     * @param stagedFile Le fichier de transit complet
+     * @param originalFilename Le nom du fichier d'origine
+     * @param title Le titre de la photo
+     * @param description La description de la photo
+     * @param visibility La visibilité de la photo
+     * @param ownerId L'ID du propriétaire
+     * @param maxFileSize La taille maximale autorisée
+     * @return La photo créée
+     */
+    @Transactional
+    public Photo uploadStagedPhoto(Path stagedFile, String originalFilename, String title, String description,
+                                   VISIBILITY visibility, Long ownerId, long maxFileSize) {
+        IngestService.IngestedFile ingested;
         try {
-            thumbnailFilename = thumbnailService.createThumbnail(storageFilename, detectedMimeType);
-        } catch (Exception e) {
-            System.err.println("Erreur lors de la création de la miniature: " + e.getMessage());
+            ingested = ingestService.ingestInPlace(stagedFile, maxFileSize);
+        } catch (IOException e) {
+            throw new RuntimeException("Échec du stockage du fichier", e);
+        }
+        return savePhoto(ingested, originalFilename, title, description, visibility, ownerId);
+    }
+    /**
+     * Enregistre la photo correspondant à un fichier ingéré et planifie sa miniature.
+     */
+    private Photo savePhoto(IngestService.IngestedFile ingested, String originalFilename, String title,
+                            String description, VISIBILITY visibility, Long ownerId) {
+        Photo saved = photoRepository.save(newPhoto(ingested, originalFilename, title, description, visibility, ownerId));
+        scheduleThumbnail(saved, ingested);
+        return saved;
+    }
+    /**
+     * Construit (sans l'enregistrer) la photo correspondant à un fichier ingéré.
+     * Un contenu dédupliqué reprend la miniature et les déclinaisons déjà générées pour ce fichier.
+     *
+     * @param ingested Le fichier ingéré
+     * @param originalFilename Le nom du fichier d'origine
+     * @param title Le titre de la photo (nom du fichier si null)
+     * @param description La description de la photo
+     * @param visibility La visibilité de la photo
+     * @param ownerId L'ID du propriétaire
+     * @return La photo à enregistrer
+     */
+    public Photo newPhoto(IngestService.IngestedFile ingested, String originalFilename, String title,
+                          String description, VISIBILITY visibility, Long ownerId) {
+        Photo existing = null;
+        if (ingested.isDeduplicated()) {
+            existing = photoRepository.findReadyByStorageFilename(ingested.getStorageFilename())
+                    .stream().findFirst().orElse(null);
         }
-        Photo photo = Photo.builder()
-                .title(title != null ? title : file.getOriginalFilename())
+        return Photo.builder()
+                .title(title != null ? title : originalFilename)
                 .description(description)
-                .original_filename(file.getOriginalFilename())
-                .storage_filename(storageFilename)
-                .thumbnail_filename(thumbnailFilename)
-                .content_type(detectedMimeType)
-                .file_size(file.getSize())
+                .original_filename(originalFilename)
+                .storage_filename(ingested.getStorageFilename())
+                .thumbnail_filename(existing != null ? existing.getThumbnail_filename() : null)
+                .rendition_sizes(existing != null ? existing.getRendition_sizes() : null)
+                .thumbnail_spec(existing != null ? existing.getThumbnail_spec() : null)
+                .thumbnail_status(existing != null ? THUMBNAIL_STATUS.READY : THUMBNAIL_STATUS.PENDING)
+                .perceptual_hash(existing != null ? existing.getPerceptual_hash() : null)
+                .placeholder(existing != null ? existing.getPlaceholder() : null)
+                .dominant_color(existing != null ? existing.getDominant_color() : null)
+                .content_type(ingested.getMimeType())
+                .file_size(ingested.getSize())
+                .content_hash(ingested.getSha256())
+                .width(ingested.getWidth())
+                .height(ingested.getHeight())
                 .visibility(visibility != null ? visibility : VISIBILITY.PRIVATE)
                 .owner_id(ownerId)
                 .created_at(new Date())
                 .build();
-        return photoRepository.save(photo);
+    }
+    /**
+     * Planifie la génération de la miniature d'une photo enregistrée, après le commit.
+     * Une photo dédupliquée, dont l'empreinte est déjà connue, est directement indexée
+     * pour la détection des doublons.
+     */
+    public void scheduleThumbnail(Photo photo, IngestService.IngestedFile ingested) {
+        if (photo.getThumbnail_status() == THUMBNAIL_STATUS.PENDING) {
+            thumbnailJobService.submitAfterCommit(photo.getId(), photo.getStorage_filename(),
+                    photo.getContent_type(), ingested.getContent());
+        } else if (photo.getPerceptual_hash() != null) {
+            duplicateIndexService.registerAfterCommit(photo.getId(), photo.getOwner_id(), photo.getPerceptual_hash());
+        }
     }
     /**
      * Récupère une photo par son ID avec vérification des permissions.
@@ -98,27 +188,165 @@ public class PhotoService {
         return fileStorageService.loadAsResource(photo.getStorage_filename());
     }
     /**
-     * Récupère le fichier miniature d'une photo comme Resource.
+     * Fichier servi pour une photo et son ETag fort.
      *
-     * @param photoId L'ID de la photo
-     * @param userId L'ID de l'utilisateur
-     * @return Le fichier miniature comme Resource, ou null si pas de miniature
+     * @param filename Le nom du fichier stocké (déclinaison ou original)
+     * @param entityTag L'ETag entre guillemets, ou null si l'empreinte est inconnue
      */
-    public Resource getThumbnailFile(Long photoId, Long userId) {
-        if (!permissionService.canView(photoId, userId)) {
-            throw new SecurityException("Accès non autorisé à cette photo");
+    public record PhotoFile(String filename, String entityTag) {
+    }
+    /**
+     * Choisit le fichier d'une photo servi dans la taille demandée et en déduit l'ETag.
+     * La plus petite déclinaison couvrant la taille demandée est servie ;
+     * à défaut (taille absente ou plus grande que toutes les déclinaisons), l'original.
+     * Le choix repose uniquement sur l'état en base (tailles et signature des déclinaisons) :
+     * aucun accès au stockage, la requête conditionnelle peut être évaluée aussitôt.
+     * L'existence du fichier est vérifiée ensuite par {@link #resolvePhotoFile(Photo, PhotoFile)}.
+     * L'appelant a déjà vérifié l'accès à la photo.
+     *
+     * @param photo La photo
+     * @param size La taille souhaitée en pixels (plus grand côté), ou null pour l'original
+     * @return Le fichier choisi et son ETag
+     */
+    public PhotoFile selectPhotoFile(Photo photo, Integer size) {
+        Integer rendition = selectRendition(photo.getRendition_sizes(), size);
+        if (rendition != null && photo.getThumbnail_filename() != null) {
+            String filename = thumbnailService.generateRenditionFilename(photo.getStorage_filename(), rendition,
+                    thumbnailService.getExtension(photo.getThumbnail_filename()));
+            return new PhotoFile(filename,
+                    photo.getContent_hash() != null ? derivativeEntityTag(photo, "r" + rendition) : null);
         }
-        Photo photo = photoRepository.findById(photoId)
-                .orElseThrow(() -> new IllegalArgumentException("Photo introuvable"));
+        return new PhotoFile(photo.getStorage_filename(), getEntityTag(photo));
+    }
+    /**
+     * Vérifie que le fichier choisi par {@link #selectPhotoFile(Photo, Integer)} existe,
+     * une fois la requête conditionnelle manquée.
+     * Une déclinaison manquante est remplacée par l'original, avec l'ETag de l'original.
+     *
+     * @param photo La photo
+     * @param selected Le fichier choisi
+     * @return Le fichier à servir et son ETag
+     */
+    public PhotoFile resolvePhotoFile(Photo photo, PhotoFile selected) {
+        if (selected.filename().equals(photo.getStorage_filename()) || fileStorageService.exists(selected.filename())) {
+            return selected;
+        }
+        System.err.println("Déclinaison " + selected.filename() + " introuvable pour la photo " + photo.getId());
+        return new PhotoFile(photo.getStorage_filename(), getEntityTag(photo));
+    }
+    /**
+     * Charge le fichier choisi par {@link #selectPhotoFile(Photo, Integer)}.
+     *
+     * @param file Le fichier choisi
+     * @return Le fichier comme Resource
+     */
+    public Resource loadPhotoFile(PhotoFile file) {
+        return fileStorageService.loadAsResource(file.filename());
+    }
+    /**
+     * Calcule l'ETag fort de l'original d'une photo, identifié par l'empreinte SHA-256 enregistrée à l'ingestion.
+     *
+     * @param photo La photo
+     * @return L'ETag entre guillemets, ou null si l'empreinte est inconnue
+     */
+    public String getEntityTag(Photo photo) {
+        if (photo.getContent_hash() == null) {
+            return null;
+        }
+        return "\"" + photo.getContent_hash() + "\"";
+    }
+    /**
+     * Calcule l'ETag fort de la miniature d'une photo (ou de l'original tant qu'elle n'existe pas).
+     *
+     * @param photo La photo
+     * @return L'ETag entre guillemets, ou null si l'empreinte est inconnue
+     */
+    public String getThumbnailEntityTag(Photo photo) {
+        if (photo.getContent_hash() == null) {
+            return null;
+        }
+        if (photo.getThumbnail_filename() == null || photo.getThumbnail_filename().isEmpty()) {
+            return getEntityTag(photo);
+        }
+        return derivativeEntityTag(photo, "t");
+    }
+    private String derivativeEntityTag(Photo photo, String variant) {
+        String spec = photo.getThumbnail_spec() != null ? photo.getThumbnail_spec() : "";
+        return "\"" + photo.getContent_hash() + "-" + variant + "-" + Integer.toHexString(spec.hashCode()) + "\"";
+    }
+    /**
+     * Choisit la plus petite déclinaison disponible au moins aussi grande que la taille demandée.
+     */
+    private Integer selectRendition(String renditionSizes, Integer size) {
+        if (size == null || size <= 0 || renditionSizes == null || renditionSizes.isEmpty()) {
+            return null;
+        }
+        Integer best = null;
+        for (String value : renditionSizes.split(",")) {
+            int candidate = Integer.parseInt(value.trim());
+            if (candidate >= size && (best == null || candidate < best)) {
+                best = candidate;
+            }
+        }
+        return best;
+    }
+    /**
+     * Écrit la miniature d'une photo depuis le cache hors tas, sans copie sur le tas.
+     * L'appelant a déjà vérifié l'accès à la photo.
+     *
+     * @param photo La photo
+     * @param writer Le destinataire du contenu, appelé uniquement si la miniature est en cache
+     * @return true si la miniature a été écrite, false si le cache hors tas est désactivé ou ne la contient pas
+     * @throws IOException Si erreur lors de l'écriture
+     */
+    public boolean writeCachedThumbnail(Photo photo, ThumbnailSlabCache.ContentWriter writer) throws IOException {
+        String version = thumbnailVersion(photo);
+        return version != null && thumbnailSlabCache.isEnabled()
+                && thumbnailSlabCache.write(photo.getId(), version, writer);
+    }
+    private String thumbnailVersion(Photo photo) {
         String thumbnailFilename = photo.getThumbnail_filename();
         if (thumbnailFilename == null || thumbnailFilename.isEmpty()) {
             return null;
         }
-        try {
-            return fileStorageService.loadAsResource(thumbnailFilename);
-        } catch (Exception e) {
+        return thumbnailFilename + ";" + photo.getThumbnail_spec();
+    }
+    /**
+     * Récupère le contenu de la miniature d'une photo déjà chargée, comme Resource.
+     * Le contenu est servi depuis le cache mémoire des miniatures, et y est placé au premier accès ;
+     * lorsque le cache hors tas est activé, il y est placé à la place du cache sur le tas.
+     * L'appelant a déjà vérifié l'accès à la photo : ni permission ni base ne sont consultées.
+     *
+     * @param photo La photo
+     * @return Le fichier miniature comme Resource, ou null si pas de miniature
+     */
+    public Resource getThumbnailContent(Photo photo) {
+        Long photoId = photo.getId();
+        String version = thumbnailVersion(photo);
+        if (version == null) {
             return null;
         }
+        String thumbnailFilename = photo.getThumbnail_filename();
+        boolean offHeap = thumbnailSlabCache.isEnabled();
+        byte[] content = offHeap ? null : thumbnailCacheService.get(photoId, version);
+        if (content == null) {
+            try {
+                content = fileStorageService.read(thumbnailFilename);
+            } catch (Exception e) {
+                return null;
+            }
+            if (offHeap) {
+                thumbnailSlabCache.put(photoId, version, content);
+            } else {
+                thumbnailCacheService.put(photoId, version, content);
+            }
+        }
+        return new ByteArrayResource(content) {
+            @Override
+            public String getFilename() {
+                return thumbnailFilename;
+            }
+        };
     }
     /**
      * Met à jour les métadonnées d'une photo.
@@ -162,13 +390,14 @@ public class PhotoService {
         }
         Photo photo = photoRepository.findById(photoId)
                 .orElseThrow(() -> new IllegalArgumentException("Photo introuvable"));
-        fileStorageService.delete(photo.getStorage_filename());
-        if (photo.getThumbnail_filename() != null) {
-            thumbnailService.deleteThumbnail(photo.getThumbnail_filename());
-        }
         commentaryRepository.deleteByPhotoId(photoId);
         shareRepository.deleteByPhotoId(photoId);
+        photoRepository.clearDuplicateOf(photoId);
         photoRepository.delete(photo);
+        blobService.releaseFiles(photo.getStorage_filename());
+        duplicateIndexService.unregisterAfterCommit(photoId, photo.getOwner_id());
+        thumbnailCacheService.invalidateAfterCommit(photoId);
+        photoRenderService.invalidateAfterCommit(photoId);
     }
     /**
      * Récupère toutes les photos d'un propriétaire.
@@ -189,6 +418,24 @@ public class PhotoService {
     public org.springframework.data.domain.Page<Photo> getPhotosByOwnerPaged(Long ownerId, org.springframework.data.domain.Pageable pageable) {
         return photoRepository.findByOwnerIdPaged(ownerId, pageable);
     }
+    /**
+     * Regroupe les photos d'un propriétaire qui sont des doublons probables les unes des autres.
+     *
+     * @param ownerId L'ID du propriétaire
+     * @return Les groupes d'au moins deux photos
+     */
+    public List<List<Photo>> getDuplicateGroups(Long ownerId) {
+        List<List<Photo>> groups = new ArrayList<>();
+        for (List<Long> ids : duplicateIndexService.findDuplicateGroups(ownerId)) {
+            Map<Long, Photo> photos = new HashMap<>();
+            photoRepository.findAllById(ids).forEach(photo -> photos.put(photo.getId(), photo));
+            List<Photo> group = ids.stream().map(photos::get).filter(Objects::nonNull).toList();
+            if (group.size() > 1) {
+                groups.add(group);
+            }
+        }
+        return groups;
+    }
     /**
      * Récupère toutes les photos accessibles par un utilisateur.
      *
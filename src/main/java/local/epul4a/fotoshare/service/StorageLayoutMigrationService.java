@@ -0,0 +1,179 @@
+package local.epul4a.fotoshare.service;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import local.epul4a.fotoshare.dto.StorageMigrationStatusDto;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+/**
+ * Migration en ligne des fichiers de l'ancienne disposition a plat vers les sous-repertoires
+ * {@code ab/cd}. La lecture passant d'abord par l'emplacement reparti puis par l'emplacement
+ * a plat, l'application reste servie pendant la migration.
+ * Chaque lot est migre en deux temps : un lien physique est cree a la nouvelle place, puis,
+ * apres un court delai, l'ancien nom est supprime. Une requete qui a resolu l'ancien chemin
+ * juste avant le lien a ainsi le temps d'ouvrir le fichier. Si le systeme de fichiers ne
+ * supporte pas les liens physiques, le fichier est deplace.
+ * La migration peut etre interrompue et relancee : elle ne traite que ce qui reste a plat.
+ */
+@Service
+public class StorageLayoutMigrationService {
+    @Autowired
+    private FileStorageService fileStorageService;
+    @Value("${fotoshare.storage.migration.batch-size:500}")
+    private int batchSize;
+    @Value("${fotoshare.storage.migration.unlink-delay-ms:1000}")
+    private long unlinkDelayMillis;
+    private ExecutorService executor;
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final AtomicBoolean stopRequested = new AtomicBoolean();
+    private final AtomicLong migrated = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private volatile Date startedAt;
+    private volatile Date finishedAt;
+    @PostConstruct
+    public void init() {
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "storage-migration");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    @PreDestroy
+    public void shutdown() {
+        stopRequested.set(true);
+        executor.shutdownNow();
+    }
+    /**
+     * Lance la migration en arriere-plan, si elle n'est pas deja en cours.
+     *
+     * @return L'etat de la migration
+     * @throws IllegalStateException si le stockage n'est pas local ou si la disposition repartie n'est pas activee
+     */
+    public StorageMigrationStatusDto start() {
+        if (!fileStorageService.getLocalStore().isSharded()) {
+            throw new IllegalStateException("La disposition repartie n'est pas activee (fotoshare.storage.layout.sharded)");
+        }
+        if (running.compareAndSet(false, true)) {
+            stopRequested.set(false);
+            executor.execute(() -> {
+                try {
+                    migrate();
+                } catch (RuntimeException e) {
+                    System.err.println("Erreur lors de la migration du stockage: " + e.getMessage());
+                } finally {
+                    running.set(false);
+                }
+            });
+        }
+        return getStatus();
+    }
+    /**
+     * Demande l'arret de la migration a la fin du lot en cours.
+     */
+    public StorageMigrationStatusDto stop() {
+        stopRequested.set(true);
+        return getStatus();
+    }
+    /**
+     * Retourne l'etat de la migration.
+     */
+    public StorageMigrationStatusDto getStatus() {
+        return StorageMigrationStatusDto.builder()
+                .running(running.get())
+                .migratedFiles(migrated.get())
+                .failedFiles(failed.get())
+                .startedAt(startedAt)
+                .finishedAt(finishedAt)
+                .build();
+    }
+    /**
+     * Migre tous les fichiers restant a plat, dans le thread appelant.
+     *
+     * @return Le nombre de fichiers migres
+     */
+    public long migrate() {
+        startedAt = new Date();
+        finishedAt = null;
+        long before = migrated.get();
+        List<Path> batch = new ArrayList<>(batchSize);
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(fileStorageService.getLocalStore().getRootLocation())) {
+            for (Path file : stream) {
+                if (stopRequested.get()) {
+                    break;
+                }
+                if (file.getFileName().toString().startsWith(".")
+                        || !Files.isRegularFile(file, LinkOption.NOFOLLOW_LINKS)) {
+                    continue;
+                }
+                batch.add(file);
+                if (batch.size() == batchSize) {
+                    migrateBatch(batch);
+                    batch.clear();
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Impossible de parcourir le repertoire de stockage", e);
+        }
+        migrateBatch(batch);
+        finishedAt = new Date();
+        return migrated.get() - before;
+    }
+    private void migrateBatch(List<Path> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<Path> linked = new ArrayList<>(batch.size());
+        for (Path file : batch) {
+            String filename = file.getFileName().toString();
+            try {
+                Path target = fileStorageService.getLocalStore().resolveForWrite(filename);
+                try {
+                    Files.createLink(target, file);
+                    linked.add(file);
+                } catch (FileAlreadyExistsException e) {
+                    linked.add(file);
+                } catch (UnsupportedOperationException e) {
+                    Files.move(file, target);
+                    migrated.incrementAndGet();
+                }
+            } catch (NoSuchFileException e) {
+                // Supprime entre-temps : rien a migrer
+            } catch (IOException | SecurityException e) {
+                failed.incrementAndGet();
+                System.err.println("Impossible de migrer " + filename + ": " + e.getMessage());
+            }
+        }
+        if (linked.isEmpty()) {
+            return;
+        }
+        try {
+            TimeUnit.MILLISECONDS.sleep(unlinkDelayMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Path file : linked) {
+            try {
+                Files.deleteIfExists(file);
+                migrated.incrementAndGet();
+            } catch (IOException e) {
+                failed.incrementAndGet();
+                System.err.println("Impossible de supprimer l'ancien emplacement de " + file.getFileName() + ": " + e.getMessage());
+            }
+        }
+    }
+}
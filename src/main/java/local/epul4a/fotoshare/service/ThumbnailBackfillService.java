@@ -0,0 +1,288 @@
+package local.epul4a.fotoshare.service;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import local.epul4a.fotoshare.dto.ThumbnailBackfillStatusDto;
+import local.epul4a.fotoshare.model.JOB_STATUS;
+import local.epul4a.fotoshare.model.JobCheckpoint;
+import local.epul4a.fotoshare.model.Photo;
+import local.epul4a.fotoshare.model.THUMBNAIL_STATUS;
+import local.epul4a.fotoshare.repository.JobCheckpointRepository;
+import local.epul4a.fotoshare.repository.PhotoRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+/**
+ * Rattrapage des miniatures manquantes, en echec ou produites avec une ancienne configuration.
+ * Les photos sont parcourues par identifiant croissant, par lots ; chaque lot est regenere
+ * en parallele sur un pool borne (le decodage reste soumis au {@link DecodeMemoryGovernor}),
+ * puis le dernier identifiant traite est enregistre dans la table job_checkpoint.
+ * Un rattrapage interrompu par un redemarrage reprend au lot suivant ; si la configuration
+ * des miniatures a change entre-temps, il repart du debut.
+ */
+@Service
+public class ThumbnailBackfillService {
+    static final String JOB_NAME = "thumbnail-backfill";
+    @Autowired
+    private ThumbnailService thumbnailService;
+    @Autowired
+    private PhotoRepository photoRepository;
+    @Autowired
+    private JobCheckpointRepository jobCheckpointRepository;
+    @Autowired
+    private DuplicateIndexService duplicateIndexService;
+    @Autowired
+    private ThumbnailCacheService thumbnailCacheService;
+    @Value("${fotoshare.thumbnail.backfill.threads:2}")
+    private int threads;
+    @Value("${fotoshare.thumbnail.backfill.batch-size:50}")
+    private int batchSize;
+    @Value("${fotoshare.thumbnail.backfill.pending-grace-minutes:30}")
+    private long pendingGraceMinutes;
+    @Value("${fotoshare.thumbnail.backfill.resume-on-startup:true}")
+    private boolean resumeOnStartup;
+    private ExecutorService workers;
+    private ExecutorService coordinator;
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final AtomicBoolean stopRequested = new AtomicBoolean();
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadCounter = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "thumbnail-backfill-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.coordinator = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "thumbnail-backfill");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    @PreDestroy
+    public void shutdown() {
+        stopRequested.set(true);
+        coordinator.shutdown();
+        workers.shutdown();
+        try {
+            if (!coordinator.awaitTermination(10, TimeUnit.SECONDS)) {
+                coordinator.shutdownNow();
+                workers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            coordinator.shutdownNow();
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+    /**
+     * Reprend au demarrage un rattrapage reste en cours lors de l'arret precedent.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeInterrupted() {
+        if (!resumeOnStartup) {
+            return;
+        }
+        jobCheckpointRepository.findById(JOB_NAME)
+                .filter(checkpoint -> checkpoint.getStatus() == JOB_STATUS.RUNNING)
+                .ifPresent(checkpoint -> start(false));
+    }
+    /**
+     * Lance le rattrapage en arriere-plan, s'il n'est pas deja en cours.
+     *
+     * @param restart Vrai pour repartir du debut au lieu de reprendre au dernier point enregistre
+     * @return L'etat du rattrapage
+     */
+    public ThumbnailBackfillStatusDto start(boolean restart) {
+        if (running.compareAndSet(false, true)) {
+            stopRequested.set(false);
+            coordinator.execute(() -> {
+                try {
+                    execute(restart);
+                } catch (Exception e) {
+                    System.err.println("Erreur lors du rattrapage des miniatures: " + e.getMessage());
+                } finally {
+                    running.set(false);
+                }
+            });
+        }
+        return getStatus();
+    }
+    /**
+     * Execute le rattrapage dans le thread appelant.
+     *
+     * @param restart Vrai pour repartir du debut
+     * @return Le point de reprise final
+     * @throws IllegalStateException si un rattrapage est deja en cours
+     */
+    public JobCheckpoint runNow(boolean restart) {
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("Un rattrapage des miniatures est deja en cours");
+        }
+        try {
+            stopRequested.set(false);
+            return execute(restart);
+        } finally {
+            running.set(false);
+        }
+    }
+    /**
+     * Demande l'arret du rattrapage a la fin du lot en cours ; il pourra etre repris plus tard.
+     */
+    public ThumbnailBackfillStatusDto stop() {
+        stopRequested.set(true);
+        return getStatus();
+    }
+    /**
+     * Retourne l'etat du rattrapage.
+     */
+    public ThumbnailBackfillStatusDto getStatus() {
+        JobCheckpoint checkpoint = jobCheckpointRepository.findById(JOB_NAME).orElse(null);
+        ThumbnailBackfillStatusDto.ThumbnailBackfillStatusDtoBuilder status = ThumbnailBackfillStatusDto.builder()
+                .running(running.get())
+                .spec(thumbnailService.getSpec());
+        if (checkpoint != null) {
+            status.status(checkpoint.getStatus())
+                    .lastPhotoId(checkpoint.getLast_id())
+                    .processed(checkpoint.getProcessed())
+                    .failed(checkpoint.getFailed())
+                    .startedAt(checkpoint.getStarted_at())
+                    .updatedAt(checkpoint.getUpdated_at());
+        }
+        return status.build();
+    }
+    private JobCheckpoint execute(boolean restart) {
+        String spec = thumbnailService.getSpec();
+        Date now = new Date();
+        JobCheckpoint checkpoint = jobCheckpointRepository.findById(JOB_NAME).orElse(null);
+        boolean resume = !restart && checkpoint != null
+                && checkpoint.getStatus() != JOB_STATUS.COMPLETED && spec.equals(checkpoint.getSpec());
+        if (!resume) {
+            checkpoint = JobCheckpoint.builder()
+                    .name(JOB_NAME)
+                    .last_id(0)
+                    .spec(spec)
+                    .started_at(now)
+                    .build();
+        }
+        checkpoint.setStatus(JOB_STATUS.RUNNING);
+        checkpoint.setUpdated_at(now);
+        checkpoint = jobCheckpointRepository.save(checkpoint);
+        Date pendingBefore = new Date(now.getTime() - TimeUnit.MINUTES.toMillis(pendingGraceMinutes));
+        List<Photo> batch;
+        do {
+            if (stopRequested.get()) {
+                checkpoint.setStatus(JOB_STATUS.PAUSED);
+                checkpoint.setUpdated_at(new Date());
+                return jobCheckpointRepository.save(checkpoint);
+            }
+            batch = photoRepository.findNeedingDerivatives(checkpoint.getLast_id(), spec, pendingBefore,
+                    PageRequest.of(0, batchSize));
+            if (batch.isEmpty()) {
+                break;
+            }
+            int failures = regenerate(batch, spec);
+            checkpoint.setLast_id(batch.get(batch.size() - 1).getId());
+            checkpoint.setProcessed(checkpoint.getProcessed() + batch.size() - failures);
+            checkpoint.setFailed(checkpoint.getFailed() + failures);
+            checkpoint.setUpdated_at(new Date());
+            checkpoint = jobCheckpointRepository.save(checkpoint);
+        } while (batch.size() == batchSize);
+        checkpoint.setStatus(JOB_STATUS.COMPLETED);
+        checkpoint.setUpdated_at(new Date());
+        return jobCheckpointRepository.save(checkpoint);
+    }
+    /**
+     * Regenere un lot en parallele. Les photos partageant le meme original (deduplication)
+     * sont regroupees : l'original n'est decode qu'une fois et ses fichiers ne sont jamais
+     * ecrits par deux workers en meme temps.
+     *
+     * @return Le nombre de photos en echec
+     */
+    private int regenerate(List<Photo> batch, String spec) {
+        Map<String, List<Photo>> byOriginal = batch.stream()
+                .collect(Collectors.groupingBy(Photo::getStorage_filename, LinkedHashMap::new, Collectors.toList()));
+        List<List<Photo>> groups = new ArrayList<>(byOriginal.values());
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for (List<Photo> photos : groups) {
+            tasks.add(() -> regenerate(photos.get(0).getStorage_filename(), photos, spec));
+        }
+        int failures = 0;
+        try {
+            List<Future<Integer>> results = workers.invokeAll(tasks);
+            for (int i = 0; i < results.size(); i++) {
+                try {
+                    failures += results.get(i).get();
+                } catch (ExecutionException e) {
+                    failures += groups.get(i).size();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            stopRequested.set(true);
+        }
+        return failures;
+    }
+    /**
+     * Regenere les derivees d'un original et met a jour les photos qui le referencent.
+     * En cas d'echec, une photo deja prete conserve ses anciennes derivees ;
+     * les autres passent en statut FAILED.
+     *
+     * @return Le nombre de photos en echec
+     */
+    private int regenerate(String storageFilename, List<Photo> photos, String spec) {
+        try {
+            ThumbnailService.Derivatives derivatives = thumbnailService.createDerivatives(storageFilename, null);
+            String renditionSizes = derivatives.getRenditionSizes().stream()
+                    .map(String::valueOf)
+                    .collect(Collectors.joining(","));
+            for (Photo photo : photos) {
+                photoRepository.updateDerivatives(photo.getId(), derivatives.getThumbnailFilename(),
+                        renditionSizes, spec, derivatives.getPerceptualHash(), derivatives.getPlaceholder(),
+                        derivatives.getDominantColor(), THUMBNAIL_STATUS.READY);
+                if (photo.getWidth() == null || photo.getWidth() != derivatives.getWidth()
+                        || photo.getHeight() == null || photo.getHeight() != derivatives.getHeight()) {
+                    // Dimensions enregistrees avant la prise en compte de l'orientation EXIF
+                    photoRepository.updateDimensions(photo.getId(), derivatives.getWidth(), derivatives.getHeight());
+                }
+                thumbnailCacheService.invalidate(photo.getId());
+                if (photo.getPerceptual_hash() == null || photo.getPerceptual_hash() != derivatives.getPerceptualHash()) {
+                    duplicateIndexService.register(photo.getId(), photo.getOwner_id(), derivatives.getPerceptualHash());
+                }
+            }
+            for (Photo photo : photos) {
+                thumbnailService.deleteStaleDerivatives(storageFilename, photo.getThumbnail_filename(),
+                        photo.getRendition_sizes(), derivatives);
+            }
+            return 0;
+        } catch (DecodeMemoryGovernor.BudgetExceededException e) {
+            System.err.println("Budget de decodage epuise, rattrapage de " + storageFilename + " reporte: " + e.getMessage());
+            return photos.size();
+        } catch (Exception e) {
+            System.err.println("Erreur lors du rattrapage de la miniature de " + storageFilename + ": " + e.getMessage());
+            for (Photo photo : photos) {
+                if (photo.getThumbnail_status() != THUMBNAIL_STATUS.READY || photo.getThumbnail_filename() == null) {
+                    photoRepository.updateDerivatives(photo.getId(), null, null, null, photo.getPerceptual_hash(),
+                            photo.getPlaceholder(), photo.getDominant_color(), THUMBNAIL_STATUS.FAILED);
+                }
+            }
+            return photos.size();
+        }
+    }
+}
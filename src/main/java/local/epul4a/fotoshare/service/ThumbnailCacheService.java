@@ -0,0 +1,127 @@
+package local.epul4a.fotoshare.service;
+import local.epul4a.fotoshare.dto.ThumbnailCacheStatsDto;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+/**
+ * Cache memoire (LRU, borne en octets) du contenu des miniatures, devant le stockage.
+ * Une grille de N photos declenche N lectures de miniature : les plus demandees sont servies
+ * depuis la memoire sans ouvrir de fichier.
+ * Une entree est associee a la version de la miniature (nom du fichier et signature de
+ * generation) : une miniature regeneree n'est jamais servie depuis une ancienne entree, meme si
+ * l'invalidation explicite (suppression, regeneration) arrive apres une lecture concurrente.
+ * L'invalidation et le vidage s'appliquent aussi au cache hors tas (ThumbnailSlabCache).
+ */
+@Service
+public class ThumbnailCacheService {
+    @Value("${fotoshare.thumbnail.cache.max-bytes:67108864}")
+    private long maxBytes;
+    @Value("${fotoshare.thumbnail.cache.max-entry-bytes:1048576}")
+    private long maxEntryBytes;
+    @Autowired
+    private ThumbnailSlabCache slabCache;
+    private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long currentBytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+    private long rejected;
+    private record Entry(String version, byte[] content) {
+    }
+    /**
+     * Retourne le contenu en cache de la miniature d'une photo.
+     *
+     * @param photoId L'ID de la photo
+     * @param version La version attendue de la miniature
+     * @return Le contenu, ou null si absent ou d'une autre version
+     */
+    public synchronized byte[] get(Long photoId, String version) {
+        Entry entry = entries.get(photoId);
+        if (entry == null || !entry.version().equals(version)) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.content();
+    }
+    /**
+     * Met en cache le contenu d'une miniature, en evincant les entrees les moins recemment utilisees.
+     * Un contenu plus grand que la taille maximale d'une entree n'est pas conserve.
+     */
+    public synchronized void put(Long photoId, String version, byte[] content) {
+        if (content.length > maxEntryBytes || content.length > maxBytes) {
+            rejected++;
+            return;
+        }
+        Entry previous = entries.put(photoId, new Entry(version, content));
+        if (previous != null) {
+            currentBytes -= previous.content().length;
+        }
+        currentBytes += content.length;
+        Iterator<Map.Entry<Long, Entry>> eldest = entries.entrySet().iterator();
+        while (currentBytes > maxBytes && eldest.hasNext()) {
+            Entry evicted = eldest.next().getValue();
+            eldest.remove();
+            currentBytes -= evicted.content().length;
+            evictions++;
+        }
+    }
+    /**
+     * Retire la miniature d'une photo du cache et du cache hors tas.
+     */
+    public synchronized void invalidate(Long photoId) {
+        slabCache.invalidate(photoId);
+        Entry removed = entries.remove(photoId);
+        if (removed != null) {
+            currentBytes -= removed.content().length;
+            invalidations++;
+        }
+    }
+    /**
+     * Retire la miniature d'une photo du cache apres le commit de la transaction courante.
+     */
+    public void invalidateAfterCommit(Long photoId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    invalidate(photoId);
+                }
+            });
+        } else {
+            invalidate(photoId);
+        }
+    }
+    /**
+     * Vide le cache et le cache hors tas.
+     */
+    public synchronized void clear() {
+        slabCache.clear();
+        invalidations += entries.size();
+        entries.clear();
+        currentBytes = 0;
+    }
+    /**
+     * Retourne les statistiques du cache.
+     */
+    public synchronized ThumbnailCacheStatsDto getStats() {
+        long lookups = hits + misses;
+        return ThumbnailCacheStatsDto.builder()
+                .entries(entries.size())
+                .bytes(currentBytes)
+                .maxBytes(maxBytes)
+                .hits(hits)
+                .misses(misses)
+                .hitRate(lookups > 0 ? (double) hits / lookups : 0)
+                .evictions(evictions)
+                .invalidations(invalidations)
+                .rejected(rejected)
+                .build();
+    }
+}
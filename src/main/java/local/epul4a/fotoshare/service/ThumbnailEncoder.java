@@ -0,0 +1,141 @@
+package local.epul4a.fotoshare.service;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.plugins.jpeg.JPEGImageWriteParam;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.io.OutputStream;
+/**
+ * Encodage des miniatures et declinaisons.
+ * Le format de sortie depend du contenu et non du format source :
+ * PNG (compression maximale) si l'image a de la transparence, JPEG sinon,
+ * avec qualite, mode progressif et sous-echantillonnage de la chrominance explicites.
+ * Les metadonnees de l'original (EXIF, ICC, commentaires) ne sont jamais recopiees.
+ */
+public class ThumbnailEncoder {
+    public static final String JPEG_EXTENSION = "jpg";
+    public static final String PNG_EXTENSION = "png";
+    private static final String JPEG_METADATA_FORMAT = "javax_imageio_jpeg_image_1.0";
+    private final float jpegQuality;
+    private final boolean progressive;
+    private final boolean chromaSubsampling;
+    /**
+     * @param jpegQuality La qualite JPEG, entre 0 et 1
+     * @param progressive Vrai pour un JPEG progressif
+     * @param chromaSubsampling Vrai pour une chrominance en 4:2:0, faux pour 4:4:4
+     */
+    public ThumbnailEncoder(float jpegQuality, boolean progressive, boolean chromaSubsampling) {
+        if (jpegQuality <= 0 || jpegQuality > 1) {
+            throw new IllegalArgumentException("La qualite JPEG doit etre comprise entre 0 et 1");
+        }
+        this.jpegQuality = jpegQuality;
+        this.progressive = progressive;
+        this.chromaSubsampling = chromaSubsampling;
+    }
+    /**
+     * Retourne l'extension du fichier produit pour une image avec ou sans transparence.
+     */
+    public String extensionFor(boolean transparent) {
+        return transparent ? PNG_EXTENSION : JPEG_EXTENSION;
+    }
+    /**
+     * Encode une image.
+     *
+     * @param image L'image a encoder
+     * @param transparent Vrai si la transparence doit etre conservee
+     * @param out Le flux de sortie
+     * @throws IOException Si erreur lors de l'encodage
+     */
+    public void encode(BufferedImage image, boolean transparent, OutputStream out) throws IOException {
+        if (transparent) {
+            writePng(image, out);
+        } else {
+            writeJpeg(image, out);
+        }
+    }
+    /**
+     * Indique si l'image contient au moins un pixel non opaque.
+     */
+    public static boolean hasTransparency(BufferedImage image) {
+        if (!image.getColorModel().hasAlpha()) {
+            return false;
+        }
+        WritableRaster alpha = image.getAlphaRaster();
+        if (alpha == null) {
+            return true;
+        }
+        int width = alpha.getWidth();
+        int[] row = new int[width];
+        for (int y = 0; y < alpha.getHeight(); y++) {
+            alpha.getSamples(0, y, width, 1, 0, row);
+            for (int value : row) {
+                if (value != 0xFF) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    private void writeJpeg(BufferedImage image, OutputStream out) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try (ImageOutputStream ios = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(ios);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(jpegQuality);
+            if (param instanceof JPEGImageWriteParam jpegParam) {
+                jpegParam.setOptimizeHuffmanTables(true);
+            }
+            if (progressive) {
+                param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+            }
+            IIOMetadata metadata = writer.getDefaultImageMetadata(ImageTypeSpecifier.createFromRenderedImage(image), param);
+            applyChromaSubsampling(metadata);
+            writer.write(null, new IIOImage(image, null, metadata), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+    /**
+     * Fixe les facteurs d'echantillonnage de la luminance (2x2 pour 4:2:0, 1x1 pour 4:4:4).
+     */
+    private void applyChromaSubsampling(IIOMetadata metadata) throws IOException {
+        Element tree = (Element) metadata.getAsTree(JPEG_METADATA_FORMAT);
+        NodeList components = tree.getElementsByTagName("componentSpec");
+        if (components.getLength() == 0) {
+            return;
+        }
+        String factor = chromaSubsampling ? "2" : "1";
+        Element luminance = (Element) components.item(0);
+        luminance.setAttribute("HsamplingFactor", factor);
+        luminance.setAttribute("VsamplingFactor", factor);
+        for (int i = 1; i < components.getLength(); i++) {
+            Element chrominance = (Element) components.item(i);
+            chrominance.setAttribute("HsamplingFactor", "1");
+            chrominance.setAttribute("VsamplingFactor", "1");
+        }
+        metadata.setFromTree(JPEG_METADATA_FORMAT, tree);
+    }
+    private void writePng(BufferedImage image, OutputStream out) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("png").next();
+        try (ImageOutputStream ios = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(ios);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if (param.canWriteCompressed()) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(0.0f);
+            }
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package local.epul4a.fotoshare.service;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import local.epul4a.fotoshare.dto.ThumbnailQueueStatsDto;
+import local.epul4a.fotoshare.model.Photo;
+import local.epul4a.fotoshare.model.THUMBNAIL_STATUS;
+import local.epul4a.fotoshare.repository.PhotoRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+/**
+ * Service de generation asynchrone des miniatures.
+ * Les miniatures sont produites sur un pool de threads borne, apres le commit de l'upload,
+ * afin que la requete HTTP ne paie pas le decodage et le redimensionnement de l'image.
+ * Une photo reste en statut PENDING tant que sa miniature n'a pas ete produite.
+ * Le decodage est borne par le budget memoire du {@link DecodeMemoryGovernor} :
+ * une tache qui n'obtient pas sa memoire a temps est remise en file.
+ * Une photo laissee en PENDING parce que la file etait pleine est resoumise par un passage
+ * periodique, une fois le delai de grace ecoule.
+ */
+@Service
+public class ThumbnailJobService {
+    @Autowired
+    private ThumbnailService thumbnailService;
+    @Autowired
+    private PhotoRepository photoRepository;
+    @Autowired
+    private DecodeMemoryGovernor decodeMemoryGovernor;
+    @Autowired
+    private DuplicateIndexService duplicateIndexService;
+    @Autowired
+    private ThumbnailCacheService thumbnailCacheService;
+    @Value("${fotoshare.thumbnail.executor.threads:2}")
+    private int threads;
+    @Value("${fotoshare.thumbnail.executor.queue-capacity:200}")
+    private int queueCapacity;
+    @Value("${fotoshare.thumbnail.executor.max-buffered-bytes:268435456}")
+    private long maxBufferedBytes;
+    @Value("${fotoshare.thumbnail.backfill.pending-grace-minutes:30}")
+    private long pendingGraceMinutes;
+    @Value("${fotoshare.thumbnail.sweep.batch-size:100}")
+    private int sweepBatchSize;
+    private ThreadPoolExecutor executor;
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong deferred = new AtomicLong();
+    private final AtomicLong resubmitted = new AtomicLong();
+    private final Set<Long> queued = ConcurrentHashMap.newKeySet();
+    private final AtomicLong totalLatencyNanos = new AtomicLong();
+    private final AtomicLong totalProcessingNanos = new AtomicLong();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+    private final AtomicLong bufferedBytes = new AtomicLong();
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadCounter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(
+            threads, threads,
+            0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity),
+            runnable -> {
+                Thread thread = new Thread(runnable, "thumbnail-" + threadCounter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            },
+            new ThreadPoolExecutor.AbortPolicy()
+        );
+    }
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+    /**
+     * Planifie la generation d'une miniature apres le commit de la transaction courante.
+     * Sans transaction active, la tache est soumise immediatement.
+     *
+     * @param photoId L'ID de la photo
+     * @param storageFilename Le nom du fichier original stocke
+     * @param contentType Le type MIME de l'image
+     * @param source Le contenu de l'original deja en memoire, ou null
+     */
+    public void submitAfterCommit(Long photoId, String storageFilename, String contentType, byte[] source) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    submit(photoId, storageFilename, contentType, source);
+                }
+            });
+        } else {
+            submit(photoId, storageFilename, contentType, source);
+        }
+    }
+    /**
+     * Soumet la generation d'une miniature au pool.
+     * Une photo deja en file n'est pas soumise de nouveau : la tache en attente la traitera.
+     * Si la file est pleine, la photo reste en statut PENDING jusqu'au prochain passage de reprise.
+     * Le contenu en memoire n'est conserve que dans la limite du budget
+     * {@code max-buffered-bytes} ; au-dela, le worker relit l'original depuis le disque.
+     *
+     * @return true si la tache a ete acceptee ou si la photo etait deja en file
+     */
+    public boolean submit(Long photoId, String storageFilename, String contentType, byte[] source) {
+        // La soumission qui ajoute la photo a l'ensemble en est proprietaire jusqu'a la fin de sa tache
+        if (!queued.add(photoId)) {
+            return true;
+        }
+        return execute(photoId, storageFilename, contentType, source);
+    }
+    /**
+     * Confie au pool la tache d'une photo que l'appelant vient d'ajouter a l'ensemble des taches en file.
+     *
+     * @return false si la file est pleine ; la photo quitte alors l'ensemble
+     */
+    private boolean execute(Long photoId, String storageFilename, String contentType, byte[] source) {
+        long enqueuedAt = System.nanoTime();
+        byte[] buffered = reserveBuffer(source);
+        try {
+            executor.execute(() -> run(photoId, storageFilename, contentType, buffered, enqueuedAt));
+            submitted.incrementAndGet();
+            return true;
+        } catch (RejectedExecutionException e) {
+            releaseBuffer(buffered);
+            queued.remove(photoId);
+            rejected.incrementAndGet();
+            System.err.println("File des miniatures pleine, photo " + photoId + " laissee en attente");
+            return false;
+        }
+    }
+    /**
+     * Resoumet les photos restees en PENDING au-dela du delai de grace et absentes de la file
+     * (file pleine lors de l'upload ou d'une remise en file), dans la limite de la place disponible.
+     *
+     * @return Le nombre de photos resoumises
+     */
+    @Scheduled(initialDelayString = "${fotoshare.thumbnail.sweep.interval-ms:300000}",
+               fixedDelayString = "${fotoshare.thumbnail.sweep.interval-ms:300000}")
+    public int sweepPending() {
+        Date pendingBefore = new Date(System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(pendingGraceMinutes));
+        int count = 0;
+        long afterId = 0;
+        try {
+            List<Photo> batch;
+            do {
+                batch = photoRepository.findPendingBefore(afterId, pendingBefore, PageRequest.of(0, sweepBatchSize));
+                for (Photo photo : batch) {
+                    afterId = photo.getId();
+                    if (executor.getQueue().remainingCapacity() == 0) {
+                        return count;
+                    }
+                    if (!queued.add(photo.getId())) {
+                        continue;
+                    }
+                    if (!execute(photo.getId(), photo.getStorage_filename(), photo.getContent_type(), null)) {
+                        return count;
+                    }
+                    resubmitted.incrementAndGet();
+                    count++;
+                }
+            } while (batch.size() == sweepBatchSize);
+        } catch (RuntimeException e) {
+            System.err.println("Erreur lors de la reprise des miniatures en attente: " + e.getMessage());
+        }
+        return count;
+    }
+    /**
+     * Execute une tache de la file ; la photo quitte l'ensemble des taches en file sauf si elle y a ete remise,
+     * la tache remise en file en devenant proprietaire.
+     */
+    private void run(Long photoId, String storageFilename, String contentType, byte[] buffered, long enqueuedAt) {
+        boolean requeued = false;
+        try {
+            requeued = process(photoId, storageFilename, contentType, buffered, enqueuedAt);
+        } finally {
+            releaseBuffer(buffered);
+            if (!requeued) {
+                queued.remove(photoId);
+            }
+        }
+    }
+    /**
+     * Genere la miniature et les declinaisons, puis met a jour le statut de la photo
+     * et l'indexe pour la detection des doublons.
+     * Si la photo a disparu entre-temps, les fichiers ne sont supprimes que
+     * si aucune autre photo ne partage le meme original.
+     *
+     * @return true si la tache a ete remise en file faute de memoire de decodage
+     */
+    private boolean process(Long photoId, String storageFilename, String contentType, byte[] source, long enqueuedAt) {
+        long startedAt = System.nanoTime();
+        boolean requeued = false;
+        boolean finished = false;
+        try {
+            ThumbnailService.Derivatives derivatives = thumbnailService.createDerivatives(storageFilename, source);
+            String renditionSizes = derivatives.getRenditionSizes().stream()
+                    .map(String::valueOf)
+                    .collect(Collectors.joining(","));
+            int updated = photoRepository.updateDerivatives(photoId, derivatives.getThumbnailFilename(),
+                    renditionSizes, thumbnailService.getSpec(), derivatives.getPerceptualHash(),
+                    derivatives.getPlaceholder(), derivatives.getDominantColor(), THUMBNAIL_STATUS.READY);
+            if (updated == 0 && photoRepository.countByStorageFilename(storageFilename) == 0) {
+                thumbnailService.deleteDerivatives(storageFilename);
+            } else if (updated > 0) {
+                thumbnailCacheService.invalidate(photoId);
+                duplicateIndexService.register(photoId, derivatives.getPerceptualHash());
+            }
+            completed.incrementAndGet();
+            finished = true;
+        } catch (DecodeMemoryGovernor.BudgetExceededException e) {
+            requeued = defer(photoId, storageFilename, contentType);
+        } catch (Exception e) {
+            failed.incrementAndGet();
+            finished = true;
+            System.err.println("Erreur lors de la création de la miniature de la photo " + photoId + ": " + e.getMessage());
+            try {
+                photoRepository.updateDerivatives(photoId, null, null, null, null, null, null, THUMBNAIL_STATUS.FAILED);
+            } catch (Exception updateError) {
+                System.err.println("Impossible de marquer la miniature en echec: " + updateError.getMessage());
+            }
+        } finally {
+            // Seuls les traitements termines (READY ou FAILED) entrent dans les moyennes
+            if (finished) {
+                long finishedAt = System.nanoTime();
+                long latency = finishedAt - enqueuedAt;
+                totalLatencyNanos.addAndGet(latency);
+                totalProcessingNanos.addAndGet(finishedAt - startedAt);
+                maxLatencyNanos.accumulateAndGet(latency, Math::max);
+            }
+        }
+        return requeued;
+    }
+    /**
+     * Remet en fin de file une tache dont le decodage n'a pas obtenu de memoire.
+     * Le contenu en memoire est abandonne (l'original sera relu depuis le disque) ;
+     * si la file est pleine, la photo reste en statut PENDING jusqu'au prochain passage de reprise.
+     *
+     * @return true si la tache a ete remise en file
+     */
+    private boolean defer(Long photoId, String storageFilename, String contentType) {
+        deferred.incrementAndGet();
+        long enqueuedAt = System.nanoTime();
+        try {
+            executor.execute(() -> run(photoId, storageFilename, contentType, null, enqueuedAt));
+            return true;
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            System.err.println("Budget de decodage epuise et file pleine, photo " + photoId + " laissee en attente");
+            return false;
+        }
+    }
+    private byte[] reserveBuffer(byte[] source) {
+        if (source == null) {
+            return null;
+        }
+        if (bufferedBytes.addAndGet(source.length) > maxBufferedBytes) {
+            bufferedBytes.addAndGet(-source.length);
+            return null;
+        }
+        return source;
+    }
+    private void releaseBuffer(byte[] buffered) {
+        if (buffered != null) {
+            bufferedBytes.addAndGet(-buffered.length);
+        }
+    }
+    /**
+     * Retourne le nombre de taches en attente dans la file.
+     */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+    /**
+     * Retourne les statistiques de la file de miniatures.
+     */
+    public ThumbnailQueueStatsDto getStats() {
+        long done = completed.get() + failed.get();
+        return ThumbnailQueueStatsDto.builder()
+                .queueDepth(getQueueDepth())
+                .queueCapacity(queueCapacity)
+                .activeWorkers(executor.getActiveCount())
+                .submitted(submitted.get())
+                .completed(completed.get())
+                .failed(failed.get())
+                .rejected(rejected.get())
+                .averageLatencyMillis(done == 0 ? 0 : totalLatencyNanos.get() / 1_000_000.0 / done)
+                .averageProcessingMillis(done == 0 ? 0 : totalProcessingNanos.get() / 1_000_000.0 / done)
+                .maxLatencyMillis(maxLatencyNanos.get() / 1_000_000.0)
+                .bufferedBytes(bufferedBytes.get())
+                .deferred(deferred.get())
+                .resubmitted(resubmitted.get())
+                .decodeBudgetBytes(decodeMemoryGovernor.getBudgetBytes())
+                .decodeBytesInUse(decodeMemoryGovernor.getBytesInUse())
+                .decodePeakBytes(decodeMemoryGovernor.getPeakBytes())
+                .decodeWaits(decodeMemoryGovernor.getWaits())
+                .build();
+    }
+}
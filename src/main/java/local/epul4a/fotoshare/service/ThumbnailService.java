@@ -1,61 +1,290 @@
 package local.epul4a.fotoshare.service;
+import jakarta.annotation.PostConstruct;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
 /**
- * Service pour la creation de miniatures (thumbnails) des images.
+ * Service pour la creation de miniatures (thumbnails) des images
+ * et de leurs declinaisons en plusieurs tailles (renditions).
  */
 @Service
 public class ThumbnailService {
-    @Value("${fotoshare.storage.location}")
-    private String storageLocation;
+    @Autowired
+    private FileValidationService fileValidationService;
+    @Autowired
+    private DecodeMemoryGovernor decodeMemoryGovernor;
+    @Autowired
+    private FileStorageService fileStorageService;
     @Value("${fotoshare.thumbnail.width:300}")
     private int thumbnailWidth;
     @Value("${fotoshare.thumbnail.height:300}")
     private int thumbnailHeight;
+    @Value("${fotoshare.renditions:150,300,800,1600}")
+    private List<Integer> renditionSizes;
+    @Value("${fotoshare.thumbnail.jpeg.quality:0.82}")
+    private float jpegQuality;
+    @Value("${fotoshare.thumbnail.jpeg.progressive:true}")
+    private boolean jpegProgressive;
+    @Value("${fotoshare.thumbnail.jpeg.chroma-subsampling:true}")
+    private boolean jpegChromaSubsampling;
+    private ThumbnailEncoder encoder;
     private static final String THUMBNAIL_SUFFIX = "_thumb";
+    private static final String PERCEPTUAL_HASH_VERSION = "dh1";
+    private static final String PLACEHOLDER_VERSION = "lq1";
+    private static final String ORIENTATION_VERSION = "exif1";
+    private static final int DECODE_BYTES_PER_PIXEL = 4;
+    private static final String RENDITION_SUFFIX = "_r";
+    @PostConstruct
+    public void init() {
+        this.encoder = new ThumbnailEncoder(jpegQuality, jpegProgressive, jpegChromaSubsampling);
+    }
     /**
-     * Cree une miniature pour une image.
+     * Miniature et declinaisons produites pour un original.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class Derivatives {
+        private final String thumbnailFilename;
+        /**
+         * Tailles des declinaisons generees, par ordre croissant.
+         * Une taille n'est pas generee si l'original tient deja dans ce cadre.
+         */
+        private final List<Integer> renditionSizes;
+        /**
+         * Empreinte perceptuelle (dHash) calculee sur la miniature.
+         */
+        private final long perceptualHash;
+        /**
+         * Apercu basse qualite (data URI) et couleur dominante, calcules sur la miniature.
+         */
+        private final String placeholder;
+        private final String dominantColor;
+        /**
+         * Dimensions de l'original dans le sens d'affichage (orientation EXIF appliquee).
+         */
+        private final int width;
+        private final int height;
+    }
+    /**
+     * Cree la miniature et les declinaisons d'une image en un seul decodage.
+     * L'image est decodee une fois (sous-echantillonnee pour la plus grande declinaison)
+     * et remise dans le sens d'affichage selon son orientation EXIF, puis chaque taille est obtenue en reduisant la precedente, de la plus grande a la plus petite.
+     * Toutes les declinaisons sont encodees dans le meme format (PNG si l'image a de la
+     * transparence, JPEG sinon), quel que soit le format de l'original.
+     * L'empreinte perceptuelle et l'apercu basse qualite sont calcules sur la miniature, deja reduite.
      *
      * @param originalFilename Le nom du fichier original stocke
-     * @param contentType Le type MIME de l'image
-     * @return Le nom du fichier miniature
+     * @param source Le contenu de l'original, ou null pour le relire depuis le stockage
+     * @return Les fichiers produits et l'empreinte
      * @throws IOException Si erreur lors de la creation
      */
-    public String createThumbnail(String originalFilename, String contentType) throws IOException {
-        Path originalPath = Paths.get(storageLocation).resolve(originalFilename);
-        if (!Files.exists(originalPath)) {
-            throw new IOException("Fichier original introuvable: " + originalFilename);
+    public Derivatives createDerivatives(String originalFilename, byte[] source) throws IOException {
+        int largestRendition = renditionSizes.stream().mapToInt(Integer::intValue).max().orElse(0);
+        DecodedImage decoded;
+        try (ImageInputStream iis = source != null
+                ? new MemoryCacheImageInputStream(new ByteArrayInputStream(source))
+                : fileStorageService.openImageStream(originalFilename)) {
+            decoded = decodeSubsampled(iis,
+                    Math.max(thumbnailWidth, largestRendition),
+                    Math.max(thumbnailHeight, largestRendition), false);
+        } catch (NoSuchFileException e) {
+            throw new IOException("Fichier original introuvable: " + originalFilename, e);
+        }
+        if (decoded == null) {
+            throw new IOException("Impossible de lire l'image: " + originalFilename);
+        }
+        try {
+            List<int[]> steps = new ArrayList<>();
+            for (int size : renditionSizes) {
+                steps.add(new int[]{size, size, size});
+            }
+            steps.add(new int[]{thumbnailWidth, thumbnailHeight, 0});
+            steps.sort(Comparator.comparingInt((int[] step) -> Math.max(step[0], step[1])).reversed());
+            boolean transparent = ThumbnailEncoder.hasTransparency(decoded.image);
+            String extension = encoder.extensionFor(transparent);
+            String thumbnailFilename = generateThumbnailFilename(originalFilename, extension);
+            List<Integer> generated = new ArrayList<>();
+            long perceptualHash = 0;
+            String placeholder = null;
+            String dominantColor = null;
+            BufferedImage previous = decoded.image;
+            for (int[] step : steps) {
+                boolean isThumbnail = step[2] == 0;
+                int[] dimensions = calculateDimensions(decoded.sourceWidth, decoded.sourceHeight, step[0], step[1]);
+                boolean fitsAlready = dimensions[0] == decoded.sourceWidth && dimensions[1] == decoded.sourceHeight;
+                if (fitsAlready && !isThumbnail) {
+                    continue;
+                }
+                BufferedImage resized = resizeImage(previous, dimensions[0], dimensions[1], transparent);
+                String filename = isThumbnail ? thumbnailFilename : generateRenditionFilename(originalFilename, step[2], extension);
+                ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+                encoder.encode(resized, transparent, encoded);
+                fileStorageService.write(filename, encoded.toByteArray());
+                if (isThumbnail) {
+                    perceptualHash = PerceptualHash.dHash(resized);
+                    placeholder = ImagePlaceholder.dataUri(resized);
+                    dominantColor = ImagePlaceholder.dominantColor(resized);
+                } else {
+                    generated.add(step[2]);
+                }
+                previous = resized;
+            }
+            Collections.sort(generated);
+            return new Derivatives(thumbnailFilename, generated, perceptualHash, placeholder, dominantColor,
+                    decoded.sourceWidth, decoded.sourceHeight);
+        } finally {
+            decodeMemoryGovernor.release(decoded.reservedBytes);
+        }
+    }
+    /**
+     * Produit une image redimensionnee a la demande, sans l'enregistrer dans le stockage.
+     * L'original est decode sous-echantillonne pour le cadre demande, puis reduit : en mode
+     * contain l'image tient dans le cadre, en mode cover elle le recouvre et est recadree au centre.
+     * L'image n'est jamais agrandie. Le format suit la meme regle que les declinaisons
+     * (PNG si l'image a de la transparence, JPEG sinon).
+     *
+     * @param originalFilename Le nom du fichier original stocke
+     * @param width La largeur du cadre, ou 0 si seule la hauteur est imposee
+     * @param height La hauteur du cadre, ou 0 si seule la largeur est imposee
+     * @param cover true pour recouvrir le cadre (les deux dimensions sont alors requises)
+     * @param out Le flux recevant l'image encodee
+     * @return L'extension du format produit
+     * @throws IOException Si erreur lors de la lecture ou de l'encodage
+     */
+    public String render(String originalFilename, int width, int height, boolean cover, OutputStream out) throws IOException {
+        if (width <= 0 && height <= 0 || cover && (width <= 0 || height <= 0)) {
+            throw new IllegalArgumentException("Dimensions de rendu invalides");
         }
-        String format = getFormatFromContentType(contentType);
-        String thumbnailFilename = generateThumbnailFilename(originalFilename);
-        Path thumbnailPath = Paths.get(storageLocation).resolve(thumbnailFilename);
-        BufferedImage originalImage;
-        try (InputStream is = Files.newInputStream(originalPath)) {
-            originalImage = ImageIO.read(is);
+        // Une dimension non imposee ne limite pas le sous-echantillonnage
+        int decodeWidth = width > 0 ? width : Integer.MAX_VALUE;
+        int decodeHeight = height > 0 ? height : Integer.MAX_VALUE;
+        DecodedImage decoded;
+        try (ImageInputStream iis = fileStorageService.openImageStream(originalFilename)) {
+            decoded = decodeSubsampled(iis, decodeWidth, decodeHeight, cover);
+        } catch (NoSuchFileException e) {
+            throw new IOException("Fichier original introuvable: " + originalFilename, e);
         }
-        if (originalImage == null) {
+        if (decoded == null) {
             throw new IOException("Impossible de lire l'image: " + originalFilename);
         }
-        int[] dimensions = calculateDimensions(
-            originalImage.getWidth(),
-            originalImage.getHeight(),
-            thumbnailWidth,
-            thumbnailHeight
-        );
-        BufferedImage thumbnail = resizeImage(originalImage, dimensions[0], dimensions[1]);
-        try (OutputStream os = Files.newOutputStream(thumbnailPath)) {
-            ImageIO.write(thumbnail, format, os);
+        try {
+            boolean transparent = ThumbnailEncoder.hasTransparency(decoded.image);
+            BufferedImage result;
+            if (cover) {
+                double ratio = Math.min(1.0, Math.max((double) width / decoded.sourceWidth, (double) height / decoded.sourceHeight));
+                int scaledWidth = Math.max(1, (int) Math.round(decoded.sourceWidth * ratio));
+                int scaledHeight = Math.max(1, (int) Math.round(decoded.sourceHeight * ratio));
+                BufferedImage scaled = resizeImage(decoded.image, scaledWidth, scaledHeight, transparent);
+                int cropWidth = Math.min(width, scaledWidth);
+                int cropHeight = Math.min(height, scaledHeight);
+                result = scaled.getSubimage((scaledWidth - cropWidth) / 2, (scaledHeight - cropHeight) / 2, cropWidth, cropHeight);
+            } else {
+                int[] dimensions = calculateDimensions(decoded.sourceWidth, decoded.sourceHeight,
+                        width > 0 ? width : Integer.MAX_VALUE, height > 0 ? height : Integer.MAX_VALUE);
+                result = resizeImage(decoded.image, Math.max(1, dimensions[0]), Math.max(1, dimensions[1]), transparent);
+            }
+            encoder.encode(result, transparent, out);
+            return encoder.extensionFor(transparent);
+        } finally {
+            decodeMemoryGovernor.release(decoded.reservedBytes);
+        }
+    }
+    /**
+     * Image decodee dans le sens d'affichage, avec les dimensions de la source (orientees)
+     * avant sous-echantillonnage.
+     */
+    private record DecodedImage(BufferedImage image, int sourceWidth, int sourceHeight, long reservedBytes) {
+    }
+    /**
+     * Decode une image en sous-echantillonnant la source des la lecture.
+     * Les dimensions sont lues dans l'en-tete, puis seule une ligne/colonne sur N est decodee,
+     * N etant le plus grand pas qui garde au moins la taille cible dans le cadre : le raster alloue
+     * est donc proportionnel a la plus grande derivee et non a l'original.
+     * L'orientation EXIF est lue dans l'en-tete et appliquee aux pixels decodes, les derivees etant
+     * encodees sans metadonnees.
+     * Une image declarant plus de pixels que la limite d'upload est refusee avant lecture,
+     * et la memoire du raster est reservee aupres du {@link DecodeMemoryGovernor} avant allocation :
+     * elle est rendue par l'appelant une fois les declinaisons ecrites.
+     *
+     * @param cover true si l'image doit recouvrir le cadre, false si elle doit y tenir
+     * @return L'image decodee, ou null si aucun lecteur ne reconnait le format
+     */
+    private DecodedImage decodeSubsampled(ImageInputStream iis, int maxWidth, int maxHeight, boolean cover) throws IOException {
+        int orientation = ExifOrientation.read(iis);
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+        if (!readers.hasNext()) {
+            return null;
+        }
+        ImageReader reader = readers.next();
+        try {
+            reader.setInput(iis, true, true);
+            int sourceWidth = reader.getWidth(0);
+            int sourceHeight = reader.getHeight(0);
+            if ((long) sourceWidth * sourceHeight > fileValidationService.getMaxPixels()) {
+                throw new IOException("Image trop grande pour etre decodee: " + sourceWidth + "x" + sourceHeight);
+            }
+            if (ExifOrientation.swapsDimensions(orientation)) {
+                int swapped = sourceWidth;
+                sourceWidth = sourceHeight;
+                sourceHeight = swapped;
+            }
+            ImageReadParam param = reader.getDefaultReadParam();
+            int subsampling = computeSubsampling(sourceWidth, sourceHeight, maxWidth, maxHeight, cover);
+            if (subsampling > 1) {
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+            }
+            long reserved = decodeMemoryGovernor.reserve(estimateDecodeBytes(sourceWidth, sourceHeight, subsampling));
+            try {
+                BufferedImage image = ExifOrientation.apply(reader.read(0, param), orientation);
+                return new DecodedImage(image, sourceWidth, sourceHeight, reserved);
+            } catch (IOException | RuntimeException e) {
+                decodeMemoryGovernor.release(reserved);
+                throw e;
+            }
+        } finally {
+            reader.dispose();
         }
-        return thumbnailFilename;
+    }
+    /**
+     * Estime la memoire d'un decodage : le raster sous-echantillonne (4 octets par pixel),
+     * plus autant pour la copie de travail du redimensionnement.
+     */
+    static long estimateDecodeBytes(int sourceWidth, int sourceHeight, int subsampling) {
+        long width = (sourceWidth + subsampling - 1) / subsampling;
+        long height = (sourceHeight + subsampling - 1) / subsampling;
+        return width * height * DECODE_BYTES_PER_PIXEL * 2;
+    }
+    /**
+     * Calcule le pas de sous-echantillonnage a la lecture.
+     * Le rapport de reduction est celui du cadre : le plus grand des deux axes si l'image doit
+     * y tenir, le plus petit si elle doit le recouvrir. Le pas est la partie entiere de ce rapport,
+     * l'image decodee reste donc au moins aussi grande que le resultat final.
+     */
+    static int computeSubsampling(int sourceWidth, int sourceHeight, int maxWidth, int maxHeight, boolean cover) {
+        double widthRatio = (double) sourceWidth / maxWidth;
+        double heightRatio = (double) sourceHeight / maxHeight;
+        double ratio = cover ? Math.min(widthRatio, heightRatio) : Math.max(widthRatio, heightRatio);
+        return Math.max(1, (int) Math.floor(ratio));
     }
     /**
      * Supprime une miniature.
@@ -67,23 +296,120 @@ public class ThumbnailService {
             return;
         }
         try {
-            Path thumbnailPath = Paths.get(storageLocation).resolve(thumbnailFilename);
-            Files.deleteIfExists(thumbnailPath);
-        } catch (IOException e) {
+            fileStorageService.delete(thumbnailFilename);
+        } catch (RuntimeException e) {
             System.err.println("Erreur lors de la suppression de la miniature: " + e.getMessage());
         }
     }
     /**
-     * Genere le nom du fichier miniature a partir du nom original.
+     * Supprime la miniature et toutes les declinaisons configurees d'un original,
+     * quel que soit leur format (y compris les anciennes miniatures au format de l'original).
+     *
+     * @param originalFilename Le nom du fichier original stocke
      */
-    public String generateThumbnailFilename(String originalFilename) {
-        int dotIndex = originalFilename.lastIndexOf('.');
-        if (dotIndex > 0) {
-            String name = originalFilename.substring(0, dotIndex);
-            String extension = originalFilename.substring(dotIndex);
-            return name + THUMBNAIL_SUFFIX + extension;
+    public void deleteDerivatives(String originalFilename) {
+        List<String> extensions = new ArrayList<>(List.of(ThumbnailEncoder.JPEG_EXTENSION, ThumbnailEncoder.PNG_EXTENSION));
+        String sourceExtension = getExtension(originalFilename);
+        if (sourceExtension != null && !extensions.contains(sourceExtension)) {
+            extensions.add(sourceExtension);
+        }
+        for (String extension : extensions) {
+            deleteThumbnail(generateThumbnailFilename(originalFilename, extension));
+            for (int size : renditionSizes) {
+                deleteThumbnail(generateRenditionFilename(originalFilename, size, extension));
+            }
         }
-        return originalFilename + THUMBNAIL_SUFFIX;
+    }
+    /**
+     * Supprime les derivees d'une generation precedente qui ne font plus partie de la generation
+     * courante : miniature d'un autre format, declinaisons d'une taille retiree ou d'un autre format.
+     *
+     * @param originalFilename Le nom du fichier original stocke
+     * @param previousThumbnail La miniature precedente (peut etre null)
+     * @param previousRenditionSizes Les tailles precedentes, separees par des virgules (peut etre null)
+     * @param current Les derivees qui viennent d'etre produites
+     */
+    public void deleteStaleDerivatives(String originalFilename, String previousThumbnail,
+                                       String previousRenditionSizes, Derivatives current) {
+        if (previousThumbnail == null) {
+            return;
+        }
+        if (!previousThumbnail.equals(current.getThumbnailFilename())) {
+            deleteThumbnail(previousThumbnail);
+        }
+        String previousExtension = getExtension(previousThumbnail);
+        if (previousExtension == null || previousRenditionSizes == null || previousRenditionSizes.isEmpty()) {
+            return;
+        }
+        boolean sameFormat = previousExtension.equals(getExtension(current.getThumbnailFilename()));
+        for (String value : previousRenditionSizes.split(",")) {
+            int size = Integer.parseInt(value.trim());
+            if (!sameFormat || !current.getRenditionSizes().contains(size)) {
+                deleteThumbnail(generateRenditionFilename(originalFilename, size, previousExtension));
+            }
+        }
+    }
+    /**
+     * Genere le nom du fichier d'une declinaison a partir du nom original.
+     *
+     * @param originalFilename Le nom du fichier original stocke
+     * @param size La taille de la declinaison
+     * @param extension L'extension du format de sortie (celle de la miniature)
+     */
+    public String generateRenditionFilename(String originalFilename, int size, String extension) {
+        return baseName(originalFilename) + RENDITION_SUFFIX + size + "." + extension;
+    }
+    /**
+     * Retourne l'extension d'un nom de fichier, ou null s'il n'en a pas.
+     */
+    public String getExtension(String filename) {
+        int dotIndex = filename.lastIndexOf('.');
+        return dotIndex > 0 ? filename.substring(dotIndex + 1) : null;
+    }
+    private String baseName(String filename) {
+        int dotIndex = filename.lastIndexOf('.');
+        return dotIndex > 0 ? filename.substring(0, dotIndex) : filename;
+    }
+    /**
+     * Retourne la signature des parametres de generation (cadre de la miniature, tailles des
+     * declinaisons, encodage, versions de l'empreinte perceptuelle et de l'apercu). Elle est enregistree
+     * avec les derivees d'une photo : une signature differente signale des derivees produites
+     * avec une autre configuration.
+     */
+    public String getSpec() {
+        return thumbnailWidth + "x" + thumbnailHeight
+                + ";r=" + renditionSizes.stream().sorted().map(String::valueOf).collect(Collectors.joining(","))
+                + ";q=" + jpegQuality
+                + (jpegProgressive ? ";p" : "")
+                + (jpegChromaSubsampling ? ";420" : ";444")
+                + ";" + PERCEPTUAL_HASH_VERSION
+                + ";" + PLACEHOLDER_VERSION
+                + ";" + ORIENTATION_VERSION;
+    }
+    /**
+     * Retourne la signature des parametres d'encodage d'un rendu a la demande :
+     * une signature differente signale des rendus produits avec une autre configuration.
+     */
+    public String getRenderSpec() {
+        return "q=" + jpegQuality
+                + (jpegProgressive ? ";p" : "")
+                + (jpegChromaSubsampling ? ";420" : ";444")
+                + ";" + ORIENTATION_VERSION;
+    }
+    /**
+     * Retourne les tailles de declinaison configurees.
+     */
+    public List<Integer> getRenditionSizes() {
+        return renditionSizes;
+    }
+    /**
+     * Genere le nom du fichier miniature a partir du nom original.
+     *
+     * @param originalFilename Le nom du fichier original stocke
+     * @param extension L'extension du format de sortie
+     */
+    public String generateThumbnailFilename(String originalFilename, String extension) {
+        return baseName(originalFilename) + THUMBNAIL_SUFFIX + "." + extension;
     }
     /**
      * Calcule les dimensions de la miniature en conservant le ratio.
@@ -102,34 +428,39 @@ public class ThumbnailService {
     }
     /**
      * Redimensionne une image.
+     * Tant que la source fait plus du double de la cible, elle est divisee par deux
+     * (interpolation bilineaire) ; la derniere etape produit la taille exacte.
+     * Cette reduction progressive evite le crenelage d'un seul grand saut.
      */
-    private BufferedImage resizeImage(BufferedImage originalImage, int targetWidth, int targetHeight) {
-        BufferedImage resizedImage = new BufferedImage(targetWidth, targetHeight, BufferedImage.TYPE_INT_RGB);
+    private BufferedImage resizeImage(BufferedImage originalImage, int targetWidth, int targetHeight, boolean keepAlpha) {
+        BufferedImage current = originalImage;
+        int width = current.getWidth();
+        int height = current.getHeight();
+        do {
+            width = width / 2 >= targetWidth ? width / 2 : targetWidth;
+            height = height / 2 >= targetHeight ? height / 2 : targetHeight;
+            current = drawScaled(current, width, height, keepAlpha);
+        } while (width != targetWidth || height != targetHeight);
+        return current;
+    }
+    /**
+     * Dessine une image a la taille donnee, sur un fond blanc sauf si la transparence est conservee.
+     */
+    private BufferedImage drawScaled(BufferedImage source, int targetWidth, int targetHeight, boolean keepAlpha) {
+        BufferedImage resizedImage = new BufferedImage(targetWidth, targetHeight,
+                keepAlpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
         Graphics2D g2d = resizedImage.createGraphics();
         g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
         g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
         g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-        g2d.setColor(Color.WHITE);
-        g2d.fillRect(0, 0, targetWidth, targetHeight);
-        g2d.drawImage(originalImage, 0, 0, targetWidth, targetHeight, null);
+        if (!keepAlpha) {
+            g2d.setColor(Color.WHITE);
+            g2d.fillRect(0, 0, targetWidth, targetHeight);
+        }
+        g2d.drawImage(source, 0, 0, targetWidth, targetHeight, null);
         g2d.dispose();
         return resizedImage;
     }
-    /**
-     * Determine le format d'image a partir du type MIME.
-     */
-    private String getFormatFromContentType(String contentType) {
-        if (contentType == null) {
-            return "jpg";
-        }
-        return switch (contentType.toLowerCase()) {
-            case "image/png" -> "png";
-            case "image/gif" -> "gif";
-            case "image/webp" -> "webp";
-            case "image/bmp" -> "bmp";
-            default -> "jpg";
-        };
-    }
     /**
      * Verifie si une miniature existe.
      */
@@ -137,7 +468,6 @@ public class ThumbnailService {
         if (thumbnailFilename == null || thumbnailFilename.isEmpty()) {
             return false;
         }
-        Path thumbnailPath = Paths.get(storageLocation).resolve(thumbnailFilename);
-        return Files.exists(thumbnailPath);
+        return fileStorageService.exists(thumbnailFilename);
     }
 }
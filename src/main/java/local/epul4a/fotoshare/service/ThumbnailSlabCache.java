@@ -0,0 +1,292 @@
+package local.epul4a.fotoshare.service;
+import local.epul4a.fotoshare.dto.ThumbnailCacheStatsDto;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+/**
+ * Cache hors tas du contenu des miniatures, pour garder un ensemble chaud de plusieurs Go sans
+ * agrandir le tas ni allonger les pauses du ramasse-miettes.
+ * Le contenu est copie dans des tranches (slabs) de memoire directe, allouees a la demande et
+ * parcourues en anneau : les miniatures sont ajoutees a la suite dans la tranche courante et,
+ * lorsqu'elle est pleine, la tranche suivante est recuperee. Les entrees lues depuis leur
+ * ajout y sont compactees en debut de tranche (seconde chance), les autres sont evincees.
+ * Un index associe l'ID de la photo a sa tranche, son decalage, sa longueur et sa version.
+ * Une lecture ecrit directement depuis la tranche, sous son verrou de lecture : une tranche n'est
+ * recuperee que si aucune lecture n'y est en cours, sinon l'ajout est abandonne.
+ * Desactive par defaut (taille maximale nulle) ; la memoire directe de la JVM
+ * (-XX:MaxDirectMemorySize) doit couvrir la taille maximale.
+ */
+@Service
+public class ThumbnailSlabCache {
+    @Value("${fotoshare.thumbnail.cache.off-heap.max-bytes:0}")
+    private long maxBytes;
+    @Value("${fotoshare.thumbnail.cache.off-heap.slab-bytes:67108864}")
+    private int slabBytes;
+    @Value("${fotoshare.thumbnail.cache.max-entry-bytes:1048576}")
+    private long maxEntryBytes;
+    private Slab[] slabs;
+    private int ringSize;
+    private int current;
+    private final Map<Long, Location> index = new HashMap<>();
+    private long currentBytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+    private long rejected;
+    /**
+     * Ecrit le contenu d'une miniature lu depuis le cache.
+     */
+    @FunctionalInterface
+    public interface ContentWriter {
+        /**
+         * @param content Une vue en lecture seule du contenu, valable pendant l'appel uniquement
+         */
+        void write(ByteBuffer content) throws IOException;
+    }
+    private static final class Slab {
+        private final ByteBuffer buffer;
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private final List<Location> locations = new ArrayList<>();
+        private int used;
+        private int generation;
+        private Slab(int capacity) {
+            this.buffer = ByteBuffer.allocateDirect(capacity);
+        }
+    }
+    private static final class Location {
+        private final Long photoId;
+        private final String version;
+        private final Slab slab;
+        private final int length;
+        private int offset;
+        private boolean accessed;
+        private Location(Long photoId, String version, Slab slab, int offset, int length) {
+            this.photoId = photoId;
+            this.version = version;
+            this.slab = slab;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+    /**
+     * Indique si le cache hors tas est active.
+     */
+    public boolean isEnabled() {
+        return maxBytes > 0 && slabBytes > 0;
+    }
+    /**
+     * Ecrit la miniature d'une photo depuis le cache.
+     *
+     * @param photoId L'ID de la photo
+     * @param version La version attendue de la miniature
+     * @param writer Le destinataire du contenu, appele uniquement si la miniature est en cache
+     * @return true si le contenu a ete ecrit, false si absent ou d'une autre version
+     * @throws IOException Si erreur lors de l'ecriture
+     */
+    public boolean write(Long photoId, String version, ContentWriter writer) throws IOException {
+        Slab slab;
+        int offset;
+        int length;
+        int generation;
+        synchronized (this) {
+            Location location = index.get(photoId);
+            if (location == null || !location.version.equals(version)) {
+                misses++;
+                return false;
+            }
+            location.accessed = true;
+            slab = location.slab;
+            offset = location.offset;
+            length = location.length;
+            generation = slab.generation;
+            hits++;
+        }
+        Lock lock = slab.lock.readLock();
+        lock.lock();
+        try {
+            if (slab.generation != generation) {
+                // Tranche recuperee entre la recherche et la lecture
+                return false;
+            }
+            writer.write(slab.buffer.asReadOnlyBuffer().position(offset).limit(offset + length).slice());
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+    /**
+     * Met en cache le contenu d'une miniature. Un contenu plus grand que la taille maximale d'une
+     * entree ou d'une tranche n'est pas conserve.
+     */
+    public synchronized void put(Long photoId, String version, byte[] content) {
+        if (!isEnabled() || content.length > maxEntryBytes || content.length > slabCapacity()) {
+            rejected++;
+            return;
+        }
+        remove(photoId);
+        Slab slab = currentSlab();
+        if (slab == null) {
+            rejected++;
+            return;
+        }
+        if (slab.buffer.capacity() - slab.used < content.length) {
+            slab = nextSlab(content.length);
+            if (slab == null) {
+                rejected++;
+                return;
+            }
+        }
+        Location location = new Location(photoId, version, slab, slab.used, content.length);
+        slab.buffer.put(slab.used, content);
+        slab.used += content.length;
+        slab.locations.add(location);
+        index.put(photoId, location);
+        currentBytes += content.length;
+    }
+    /**
+     * Retire la miniature d'une photo du cache ; sa place est reprise lors de la recuperation de la tranche.
+     */
+    public synchronized void invalidate(Long photoId) {
+        if (remove(photoId)) {
+            invalidations++;
+        }
+    }
+    /**
+     * Vide le cache. Les tranches deja allouees sont conservees et reutilisees.
+     */
+    public synchronized void clear() {
+        invalidations += index.size();
+        index.clear();
+        currentBytes = 0;
+    }
+    /**
+     * Retourne les statistiques du cache.
+     */
+    public synchronized ThumbnailCacheStatsDto getStats() {
+        long lookups = hits + misses;
+        return ThumbnailCacheStatsDto.builder()
+                .entries(index.size())
+                .bytes(currentBytes)
+                .maxBytes(isEnabled() ? maxBytes : 0)
+                .hits(hits)
+                .misses(misses)
+                .hitRate(lookups > 0 ? (double) hits / lookups : 0)
+                .evictions(evictions)
+                .invalidations(invalidations)
+                .rejected(rejected)
+                .build();
+    }
+    private boolean remove(Long photoId) {
+        Location removed = index.remove(photoId);
+        if (removed == null) {
+            return false;
+        }
+        currentBytes -= removed.length;
+        return true;
+    }
+    private int slabCapacity() {
+        return (int) Math.min(slabBytes, maxBytes);
+    }
+    private Slab currentSlab() {
+        if (slabs == null) {
+            ringSize = (int) Math.max(1, Math.min(Integer.MAX_VALUE, maxBytes / slabBytes));
+            slabs = new Slab[ringSize];
+        }
+        if (slabs[current] == null) {
+            slabs[current] = allocate();
+        }
+        return slabs[current];
+    }
+    /**
+     * Passe a la tranche suivante de l'anneau : une nouvelle tranche tant que la taille maximale
+     * n'est pas atteinte, sinon la plus ancienne, recuperee.
+     *
+     * @return La tranche ayant assez de place, ou null si aucune n'a pu etre preparee
+     */
+    private Slab nextSlab(int needed) {
+        int next = (current + 1) % ringSize;
+        if (slabs[next] == null) {
+            Slab allocated = allocate();
+            if (allocated == null) {
+                // Memoire directe epuisee : l'anneau se limite aux tranches deja allouees
+                ringSize = current + 1;
+                next = (current + 1) % ringSize;
+            } else {
+                slabs[next] = allocated;
+                current = next;
+                return allocated;
+            }
+        }
+        Slab slab = slabs[next];
+        if (!reclaim(slab, needed)) {
+            return null;
+        }
+        current = next;
+        return slab;
+    }
+    private Slab allocate() {
+        try {
+            return new Slab(slabCapacity());
+        } catch (OutOfMemoryError e) {
+            System.err.println("Allocation d'une tranche du cache hors tas impossible : " + e.getMessage());
+            return null;
+        }
+    }
+    /**
+     * Recupere une tranche : les entrees lues depuis le dernier passage sont compactees en debut de
+     * tranche, les autres sont evincees. Si la place liberee reste insuffisante, toute la tranche
+     * est evincee.
+     *
+     * @return false si une lecture est en cours dans la tranche
+     */
+    private boolean reclaim(Slab slab, int needed) {
+        Lock lock = slab.lock.writeLock();
+        if (!lock.tryLock()) {
+            return false;
+        }
+        try {
+            long kept = 0;
+            for (Location location : slab.locations) {
+                if (location.accessed && index.get(location.photoId) == location) {
+                    kept += location.length;
+                }
+            }
+            boolean compact = kept + needed <= slab.buffer.capacity();
+            List<Location> survivors = new ArrayList<>();
+            int position = 0;
+            for (Location location : slab.locations) {
+                if (index.get(location.photoId) != location) {
+                    continue;
+                }
+                if (compact && location.accessed) {
+                    if (location.offset != position) {
+                        slab.buffer.put(position, slab.buffer, location.offset, location.length);
+                        location.offset = position;
+                    }
+                    location.accessed = false;
+                    position += location.length;
+                    survivors.add(location);
+                } else {
+                    index.remove(location.photoId);
+                    currentBytes -= location.length;
+                    evictions++;
+                }
+            }
+            slab.locations.clear();
+            slab.locations.addAll(survivors);
+            slab.used = position;
+            slab.generation++;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package local.epul4a.fotoshare.service;
+import local.epul4a.fotoshare.model.Photo;
+import local.epul4a.fotoshare.model.UploadSession;
+import local.epul4a.fotoshare.model.VISIBILITY;
+import local.epul4a.fotoshare.repository.UploadSessionRepository;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Date;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+/**
+ * Service d'upload fractionné et reprenable.
+ * Le client crée une session, envoie les morceaux à la position courante,
+ * peut interroger cette position après une coupure, puis finalise :
+ * le fichier de transit passe alors par la validation habituelle et devient le fichier stocké.
+ */
+@Service
+public class UploadSessionService {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    @Autowired
+    private UploadSessionRepository uploadSessionRepository;
+    @Autowired
+    private FileStorageService fileStorageService;
+    @Autowired
+    private PhotoService photoService;
+    @Value("${fotoshare.upload.chunked.max-file-size:104857600}")
+    private long maxFileSize;
+    @Value("${fotoshare.upload.chunked.session-ttl-hours:24}")
+    private long sessionTtlHours;
+    private final ConcurrentHashMap<String, Object> sessionLocks = new ConcurrentHashMap<>();
+    /**
+     * Levée quand un morceau n'est pas envoyé à la position attendue.
+     */
+    @Getter
+    public static class OffsetMismatchException extends IllegalStateException {
+        private final long expectedOffset;
+        public OffsetMismatchException(long expectedOffset) {
+            super("Position d'upload invalide, position attendue: " + expectedOffset);
+            this.expectedOffset = expectedOffset;
+        }
+    }
+    /**
+     * Crée une session d'upload.
+     *
+     * @param ownerId L'ID du propriétaire
+     * @param originalFilename Le nom du fichier d'origine
+     * @param title Le titre de la photo
+     * @param description La description de la photo
+     * @param visibility La visibilité de la photo
+     * @param totalSize La taille totale annoncée (peut être null)
+     * @return La session créée
+     */
+    public UploadSession createSession(Long ownerId, String originalFilename, String title, String description,
+                                       VISIBILITY visibility, Long totalSize) {
+        if (originalFilename == null || originalFilename.isBlank()) {
+            throw new IllegalArgumentException("Le nom du fichier est obligatoire");
+        }
+        if (totalSize != null && (totalSize <= 0 || totalSize > maxFileSize)) {
+            throw new IllegalArgumentException(
+                String.format("La taille du fichier doit être comprise entre 1 octet et %d MB", maxFileSize / (1024 * 1024))
+            );
+        }
+        UploadSession session = UploadSession.builder()
+                .id(UUID.randomUUID().toString())
+                .owner_id(ownerId)
+                .original_filename(originalFilename)
+                .title(title)
+                .description(description)
+                .visibility(visibility != null ? visibility : VISIBILITY.PRIVATE)
+                .total_size(totalSize)
+                .received_bytes(0)
+                .created_at(new Date())
+                .updated_at(new Date())
+                .build();
+        try {
+            Files.deleteIfExists(fileStorageService.resolveStagingFile(session.getId()));
+            Files.createFile(fileStorageService.resolveStagingFile(session.getId()));
+        } catch (IOException e) {
+            throw new RuntimeException("Impossible de créer le fichier de transit", e);
+        }
+        return uploadSessionRepository.save(session);
+    }
+    /**
+     * Récupère une session appartenant à l'utilisateur.
+     */
+    public UploadSession getSession(String sessionId, Long ownerId) {
+        UploadSession session = uploadSessionRepository.findById(sessionId)
+                .orElseThrow(() -> new NoSuchElementException("Session d'upload introuvable"));
+        if (!session.getOwner_id().equals(ownerId)) {
+            throw new SecurityException("Cette session d'upload ne vous appartient pas");
+        }
+        return session;
+    }
+    /**
+     * Ajoute un morceau à la position donnée.
+     * Un morceau partiellement reçu lors d'une tentative précédente est écrasé.
+     *
+     * @param sessionId L'identifiant de la session
+     * @param ownerId L'ID du propriétaire
+     * @param offset La position du morceau
+     * @param body Le contenu du morceau
+     * @return La session mise à jour
+     */
+    public UploadSession appendChunk(String sessionId, Long ownerId, long offset, InputStream body) {
+        synchronized (sessionLocks.computeIfAbsent(sessionId, id -> new Object())) {
+            UploadSession session = getSession(sessionId, ownerId);
+            if (offset != session.getReceived_bytes()) {
+                throw new OffsetMismatchException(session.getReceived_bytes());
+            }
+            long limit = session.getTotal_size() != null ? session.getTotal_size() : maxFileSize;
+            Path stagingFile = fileStorageService.resolveStagingFile(sessionId);
+            long position = offset;
+            try (FileChannel channel = FileChannel.open(stagingFile, StandardOpenOption.WRITE)) {
+                channel.truncate(offset);
+                channel.position(offset);
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int read;
+                while ((read = body.read(buffer)) != -1) {
+                    if (position + read > limit) {
+                        channel.truncate(offset);
+                        throw new IllegalArgumentException(
+                            String.format("La taille du fichier dépasse la limite autorisée de %d octets", limit)
+                        );
+                    }
+                    ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, read);
+                    while (chunk.hasRemaining()) {
+                        channel.write(chunk);
+                    }
+                    position += read;
+                }
+            } catch (IOException e) {
+                // Les octets déjà écrits restent acquis : le client reprendra à la position enregistrée
+                System.err.println("Morceau interrompu pour la session " + sessionId + ": " + e.getMessage());
+            }
+            session.setReceived_bytes(position);
+            session.setUpdated_at(new Date());
+            return uploadSessionRepository.save(session);
+        }
+    }
+    /**
+     * Finalise la session : le fichier de transit est validé puis déplacé vers le stockage comme une photo.
+     *
+     * @param sessionId L'identifiant de la session
+     * @param ownerId L'ID du propriétaire
+     * @return La photo créée
+     */
+    public Photo completeSession(String sessionId, Long ownerId) {
+        synchronized (sessionLocks.computeIfAbsent(sessionId, id -> new Object())) {
+            UploadSession session = getSession(sessionId, ownerId);
+            if (session.getTotal_size() != null && session.getReceived_bytes() != session.getTotal_size()) {
+                throw new IllegalArgumentException(
+                    "Upload incomplet: " + session.getReceived_bytes() + " octets reçus sur " + session.getTotal_size()
+                );
+            }
+            Path stagingFile = fileStorageService.resolveStagingFile(sessionId);
+            Photo photo = photoService.uploadStagedPhoto(stagingFile, session.getOriginal_filename(),
+                    session.getTitle(), session.getDescription(), session.getVisibility(), ownerId, maxFileSize);
+            removeSession(session);
+            return photo;
+        }
+    }
+    /**
+     * Abandonne une session et supprime son fichier de transit.
+     */
+    public void abortSession(String sessionId, Long ownerId) {
+        synchronized (sessionLocks.computeIfAbsent(sessionId, id -> new Object())) {
+            removeSession(getSession(sessionId, ownerId));
+        }
+    }
+    /**
+     * Retourne la taille maximale autorisée pour un upload fractionné.
+     */
+    public long getMaxFileSize() {
+        return maxFileSize;
+    }
+    /**
+     * Supprime les sessions inactives depuis plus que la durée de vie configurée.
+     */
+    @Scheduled(fixedDelayString = "${fotoshare.upload.chunked.cleanup-interval-ms:3600000}")
+    public void purgeExpiredSessions() {
+        Date before = new Date(System.currentTimeMillis() - sessionTtlHours * 3600_000L);
+        for (UploadSession session : uploadSessionRepository.findInactiveSince(before)) {
+            synchronized (sessionLocks.computeIfAbsent(session.getId(), id -> new Object())) {
+                removeSession(session);
+            }
+        }
+    }
+    private void removeSession(UploadSession session) {
+        fileStorageService.discardTempFile(fileStorageService.resolveStagingFile(session.getId()));
+        uploadSessionRepository.delete(session);
+        sessionLocks.remove(session.getId());
+    }
+}
@@ -24,11 +24,15 @@ public class UserService {
     @Autowired
     private AlbumRepository albumRepository;
     @Autowired
-    private FileStorageService fileStorageService;
-    @Autowired
-    private ThumbnailService thumbnailService;
+    private BlobService blobService;
     @Autowired
     private BCryptPasswordEncoder passwordEncoder;
+    @Autowired
+    private DuplicateIndexService duplicateIndexService;
+    @Autowired
+    private ThumbnailCacheService thumbnailCacheService;
+    @Autowired
+    private PhotoRenderService photoRenderService;
     public List<User> getAllUsers() {
         return userRepository.findAll();
     }
@@ -99,15 +103,13 @@ public class UserService {
         for (Photo photo : userPhotos) {
             commentaryRepository.deleteByPhotoId(photo.getId());
             shareRepository.deleteByPhotoId(photo.getId());
-            if (photo.getStorage_filename() != null) {
-                fileStorageService.delete(photo.getStorage_filename());
-            }
-            if (photo.getThumbnail_filename() != null) {
-                thumbnailService.deleteThumbnail(photo.getThumbnail_filename());
-            }
             photoRepository.delete(photo);
+            blobService.releaseFiles(photo.getStorage_filename());
+            thumbnailCacheService.invalidateAfterCommit(photo.getId());
+            photoRenderService.invalidateAfterCommit(photo.getId());
         }
         albumRepository.deleteByOwnerId(userId);
         userRepository.delete(user);
+        duplicateIndexService.evictAfterCommit(userId);
     }
 }
\ No newline at end of file
@@ -0,0 +1,7 @@
+package local.epul4a.fotoshare.storage;
+import java.time.Instant;
+/**
+ * Taille et date de modification d'un objet stocke.
+ */
+public record BlobMetadata(long size, Instant lastModified) {
+}
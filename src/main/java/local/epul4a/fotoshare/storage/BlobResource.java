@@ -0,0 +1,48 @@
+package local.epul4a.fotoshare.storage;
+import org.springframework.core.io.AbstractResource;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+/**
+ * Ressource Spring adossee a un objet d'un {@link BlobStore} distant.
+ * Le nom de fichier est la cle, ce qui permet de deduire le type du contenu de son extension.
+ */
+public class BlobResource extends AbstractResource {
+    private final BlobStore store;
+    private final String key;
+    public BlobResource(BlobStore store, String key) {
+        this.store = store;
+        this.key = BlobStore.checkKey(key);
+    }
+    @Override
+    public boolean exists() {
+        try {
+            return store.exists(key);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return store.get(key);
+    }
+    @Override
+    public long contentLength() throws IOException {
+        return metadata().size();
+    }
+    @Override
+    public long lastModified() throws IOException {
+        return metadata().lastModified().toEpochMilli();
+    }
+    @Override
+    public String getFilename() {
+        return key;
+    }
+    @Override
+    public String getDescription() {
+        return "Blob [" + key + "] (" + store.getName() + ")";
+    }
+    private BlobMetadata metadata() throws IOException {
+        return store.stat(key).orElseThrow(() -> new FileNotFoundException(getDescription() + " introuvable"));
+    }
+}
@@ -0,0 +1,91 @@
+package local.epul4a.fotoshare.storage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Optional;
+/**
+ * Interface des pilotes de stockage des fichiers photos (originaux, miniatures, declinaisons).
+ * Les cles sont les noms de stockage ; chaque pilote choisit l'emplacement physique des objets.
+ * Les lectures et ecritures se font en flux : un pilote ne charge pas un objet entier en memoire,
+ * sauf le pilote en memoire destine aux tests.
+ */
+public interface BlobStore {
+    /**
+     * Ecrit un objet depuis un flux, en remplacant un objet existant de meme cle.
+     * L'objet n'est visible qu'une fois entierement ecrit.
+     *
+     * @param key La cle de l'objet
+     * @param content Le contenu, lu jusqu'a la fin (non ferme)
+     * @param length La taille du contenu en octets
+     */
+    void put(String key, InputStream content, long length) throws IOException;
+    /**
+     * Ecrit un objet depuis un tableau d'octets.
+     */
+    default void put(String key, byte[] content) throws IOException {
+        put(key, new ByteArrayInputStream(content), content.length);
+    }
+    /**
+     * Ecrit un objet depuis un fichier local, qui est consomme : deplace quand le pilote le permet,
+     * supprime apres envoi sinon.
+     *
+     * @param key La cle de l'objet
+     * @param source Le fichier a stocker
+     */
+    void putFile(String key, Path source) throws IOException;
+    /**
+     * Ouvre un objet en lecture.
+     *
+     * @throws NoSuchFileException si l'objet n'existe pas
+     */
+    InputStream get(String key) throws IOException;
+    /**
+     * Ouvre une plage d'un objet en lecture. Une plage depassant la fin de l'objet est tronquee ;
+     * une plage commencant apres la fin donne un flux vide.
+     *
+     * @param key La cle de l'objet
+     * @param offset La position du premier octet
+     * @param length Le nombre maximal d'octets a lire
+     * @throws NoSuchFileException si l'objet n'existe pas
+     */
+    InputStream get(String key, long offset, long length) throws IOException;
+    /**
+     * Retourne la taille et la date de modification d'un objet, ou vide s'il n'existe pas.
+     */
+    Optional<BlobMetadata> stat(String key) throws IOException;
+    /**
+     * Indique si un objet existe.
+     */
+    default boolean exists(String key) throws IOException {
+        return stat(key).isPresent();
+    }
+    /**
+     * Supprime un objet ; supprimer un objet absent n'est pas une erreur.
+     */
+    void delete(String key) throws IOException;
+    /**
+     * Retourne le fichier local d'un objet quand le pilote stocke sur le disque, ce qui permet
+     * des lectures sans copie. Les autres pilotes retournent vide.
+     */
+    default Optional<Path> localPath(String key) {
+        return Optional.empty();
+    }
+    /**
+     * Retourne le nom du pilote, pour les messages et l'administration.
+     */
+    String getName();
+    /**
+     * Verifie qu'une cle est un simple nom de stockage : ni chemin, ni fichier cache.
+     *
+     * @return La cle
+     * @throws SecurityException si la cle sort de l'espace de stockage
+     */
+    static String checkKey(String key) {
+        if (key == null || key.isEmpty() || key.startsWith(".") || key.contains("/") || key.contains("\\")) {
+            throw new SecurityException("Tentative d'accès en dehors du répertoire autorisé");
+        }
+        return key;
+    }
+}
@@ -0,0 +1,65 @@
+package local.epul4a.fotoshare.storage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+/**
+ * Pilote de stockage en memoire, pour les tests : les objets sont perdus a l'arret.
+ */
+public class InMemoryBlobStore implements BlobStore {
+    private record Entry(byte[] content, Instant lastModified) {
+    }
+    private final ConcurrentMap<String, Entry> objects = new ConcurrentHashMap<>();
+    @Override
+    public void put(String key, InputStream content, long length) throws IOException {
+        objects.put(BlobStore.checkKey(key), new Entry(content.readAllBytes(), Instant.now()));
+    }
+    @Override
+    public void putFile(String key, Path source) throws IOException {
+        objects.put(BlobStore.checkKey(key), new Entry(Files.readAllBytes(source), Instant.now()));
+        Files.deleteIfExists(source);
+    }
+    @Override
+    public InputStream get(String key) throws IOException {
+        return new ByteArrayInputStream(entry(key).content());
+    }
+    @Override
+    public InputStream get(String key, long offset, long length) throws IOException {
+        byte[] content = entry(key).content();
+        int start = (int) Math.min(offset, content.length);
+        int count = (int) Math.min(length, content.length - start);
+        return new ByteArrayInputStream(content, start, count);
+    }
+    @Override
+    public Optional<BlobMetadata> stat(String key) {
+        Entry entry = objects.get(BlobStore.checkKey(key));
+        return Optional.ofNullable(entry).map(e -> new BlobMetadata(e.content().length, e.lastModified()));
+    }
+    @Override
+    public void delete(String key) {
+        objects.remove(BlobStore.checkKey(key));
+    }
+    @Override
+    public String getName() {
+        return "memory";
+    }
+    /**
+     * Retourne le nombre d'objets stockes.
+     */
+    public int size() {
+        return objects.size();
+    }
+    private Entry entry(String key) throws NoSuchFileException {
+        Entry entry = objects.get(BlobStore.checkKey(key));
+        if (entry == null) {
+            throw new NoSuchFileException(key);
+        }
+        return entry;
+    }
+}
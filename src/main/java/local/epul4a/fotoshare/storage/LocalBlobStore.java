@@ -0,0 +1,217 @@
+package local.epul4a.fotoshare.storage;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.regex.Pattern;
+/**
+ * Pilote de stockage sur le systeme de fichiers local.
+ * Les fichiers sont repartis dans deux niveaux de sous-repertoires derives du nom de stockage
+ * ({@code ab/cd/<uuid>.jpg}) ; une miniature ou une declinaison est rangee avec son original.
+ * Les fichiers de l'ancienne disposition a plat restent lisibles jusqu'a leur migration.
+ * Une ecriture passe par un fichier temporaire de la racine, deplace atomiquement a sa place.
+ */
+public class LocalBlobStore implements BlobStore {
+    private static final Pattern DERIVATIVE_SUFFIX = Pattern.compile("_(thumb|r\\d+)$");
+    private static final Pattern HEX_PREFIX = Pattern.compile("^[0-9a-fA-F]{4}");
+    private final Path rootLocation;
+    private final boolean sharded;
+    public LocalBlobStore(Path rootLocation, boolean sharded) {
+        this.rootLocation = rootLocation.toAbsolutePath().normalize();
+        this.sharded = sharded;
+        try {
+            Files.createDirectories(this.rootLocation);
+        } catch (IOException e) {
+            throw new RuntimeException("Impossible de creer le repertoire de stockage", e);
+        }
+    }
+    @Override
+    public void put(String key, InputStream content, long length) throws IOException {
+        Path tempFile = Files.createTempFile(rootLocation, ".ingest-", ".tmp");
+        try {
+            Files.copy(content, tempFile, StandardCopyOption.REPLACE_EXISTING);
+            putFile(key, tempFile);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+    @Override
+    public void putFile(String key, Path source) throws IOException {
+        Files.move(source, resolveForWrite(key), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+    @Override
+    public InputStream get(String key) throws IOException {
+        return Files.newInputStream(resolve(key));
+    }
+    @Override
+    public InputStream get(String key, long offset, long length) throws IOException {
+        SeekableByteChannel channel = Files.newByteChannel(resolve(key));
+        try {
+            channel.position(offset);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        return new RangeInputStream(Channels.newInputStream(channel), length);
+    }
+    @Override
+    public Optional<BlobMetadata> stat(String key) throws IOException {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(resolve(key), BasicFileAttributes.class);
+            return Optional.of(new BlobMetadata(attributes.size(), attributes.lastModifiedTime().toInstant()));
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        }
+    }
+    @Override
+    public boolean exists(String key) {
+        return Files.exists(shardedPath(key)) || Files.exists(flatPath(key));
+    }
+    @Override
+    public void delete(String key) throws IOException {
+        Files.deleteIfExists(shardedPath(key));
+        Files.deleteIfExists(flatPath(key));
+    }
+    @Override
+    public Optional<Path> localPath(String key) {
+        return Optional.of(resolve(key));
+    }
+    @Override
+    public String getName() {
+        return "local:" + rootLocation;
+    }
+    /**
+     * Retourne le chemin d'un fichier stocke pour le lire : son emplacement reparti s'il existe,
+     * sinon son emplacement a plat s'il n'a pas encore ete migre.
+     *
+     * @param key Le nom du fichier stocke
+     * @return Le chemin du fichier (emplacement reparti si le fichier n'existe nulle part)
+     */
+    public Path resolve(String key) {
+        Path file = shardedPath(key);
+        if (!sharded || Files.exists(file)) {
+            return file;
+        }
+        Path flat = flatPath(key);
+        return Files.exists(flat) ? flat : file;
+    }
+    /**
+     * Retourne le chemin ou ecrire un fichier stocke, en creant ses sous-repertoires.
+     *
+     * @param key Le nom du fichier stocke
+     * @return Le chemin de destination
+     */
+    public Path resolveForWrite(String key) throws IOException {
+        Path file = shardedPath(key);
+        Files.createDirectories(file.getParent());
+        return file;
+    }
+    /**
+     * Retourne l'emplacement reparti d'un fichier (a plat si la repartition est desactivee).
+     */
+    Path shardedPath(String key) {
+        Path directory = sharded ? rootLocation.resolve(shardDirectory(key)) : rootLocation;
+        return checkedResolve(directory, key);
+    }
+    /**
+     * Retourne l'emplacement d'un fichier dans l'ancienne disposition a plat.
+     */
+    Path flatPath(String key) {
+        return checkedResolve(rootLocation, key);
+    }
+    /**
+     * Indique si les fichiers sont repartis en sous-repertoires.
+     */
+    public boolean isSharded() {
+        return sharded;
+    }
+    /**
+     * Retourne la racine du stockage.
+     */
+    public Path getRootLocation() {
+        return rootLocation;
+    }
+    /**
+     * Calcule le sous-repertoire {@code ab/cd} d'un fichier a partir de son nom de base,
+     * sans extension ni suffixe de miniature ou de declinaison : les derivees sont ainsi rangees
+     * avec leur original. Les noms de stockage (UUID ou SHA-256) commencent par des chiffres
+     * hexadecimaux aleatoires, utilises tels quels ; un autre nom est d'abord hache.
+     *
+     * @param key Le nom du fichier stocke
+     * @return Le chemin relatif du sous-repertoire
+     */
+    static String shardDirectory(String key) {
+        int dotIndex = key.lastIndexOf('.');
+        String base = dotIndex > 0 ? key.substring(0, dotIndex) : key;
+        base = DERIVATIVE_SUFFIX.matcher(base).replaceFirst("");
+        String hashKey = HEX_PREFIX.matcher(base).find() ? base.toLowerCase() : sha256Hex(base);
+        return hashKey.substring(0, 2) + "/" + hashKey.substring(2, 4);
+    }
+    private static String sha256Hex(String value) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 indisponible", e);
+        }
+    }
+    private Path checkedResolve(Path directory, String key) {
+        Path file = directory.resolve(key).normalize();
+        if (!file.getParent().equals(directory) || key.startsWith(".")) {
+            throw new SecurityException("Tentative d'accès en dehors du répertoire autorisé");
+        }
+        return file;
+    }
+    /**
+     * Flux limite a un nombre d'octets, pour la lecture d'une plage.
+     */
+    private static class RangeInputStream extends FilterInputStream {
+        private long remaining;
+        RangeInputStream(InputStream in, long length) {
+            super(in);
+            this.remaining = length;
+        }
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = super.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int read = super.read(buffer, offset, (int) Math.min(length, remaining));
+            if (read > 0) {
+                remaining -= read;
+            }
+            return read;
+        }
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(super.available(), remaining);
+        }
+    }
+}
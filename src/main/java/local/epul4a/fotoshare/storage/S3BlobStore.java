@@ -0,0 +1,195 @@
+package local.epul4a.fotoshare.storage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Optional;
+import java.util.SortedMap;
+import java.util.TreeMap;
+/**
+ * Pilote de stockage compatible avec l'API S3 (AWS, MinIO, Ceph...), en adressage par chemin
+ * ({@code <endpoint>/<bucket>/<prefixe><cle>}). Les requetes sont signees en Signature V4 ;
+ * le corps des envois n'est pas hache ({@code UNSIGNED-PAYLOAD}) pour rester en flux.
+ * Les lectures de plage utilisent l'en-tete Range.
+ * Une requete dont le corps peut etre renvoye est retentee une fois si la connexion est coupee
+ * (connexion gardee ouverte puis fermee par le serveur).
+ */
+public class S3BlobStore implements BlobStore {
+    private final HttpClient httpClient;
+    private final SigV4Signer signer;
+    private final URI endpoint;
+    private final String bucket;
+    private final String prefix;
+    private final Duration timeout;
+    public S3BlobStore(URI endpoint, String region, String bucket, String accessKey, String secretKey,
+                       String prefix, Duration timeout) {
+        if (bucket == null || bucket.isBlank()) {
+            throw new IllegalArgumentException("Le bucket S3 doit etre renseigne");
+        }
+        String base = endpoint.toString();
+        this.endpoint = URI.create(base.endsWith("/") ? base.substring(0, base.length() - 1) : base);
+        this.bucket = bucket;
+        this.prefix = prefix == null ? "" : prefix;
+        this.timeout = timeout;
+        this.signer = new SigV4Signer(accessKey, secretKey, region, "s3");
+        this.httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).connectTimeout(timeout).build();
+    }
+    @Override
+    public void put(String key, InputStream content, long length) throws IOException {
+        if (length < 0) {
+            throw new IllegalArgumentException("La taille du contenu est requise pour un envoi S3");
+        }
+        HttpRequest.BodyPublisher body = HttpRequest.BodyPublishers.fromPublisher(
+                HttpRequest.BodyPublishers.ofInputStream(() -> content), length);
+        HttpResponse<InputStream> response = send("PUT", key, null, body, false, SigV4Signer.UNSIGNED_PAYLOAD);
+        expect(response, "PUT", key, 200);
+        response.body().close();
+    }
+    @Override
+    public void put(String key, byte[] content) throws IOException {
+        HttpResponse<InputStream> response = send("PUT", key, null,
+                HttpRequest.BodyPublishers.ofByteArray(content), true, SigV4Signer.UNSIGNED_PAYLOAD);
+        expect(response, "PUT", key, 200);
+        response.body().close();
+    }
+    @Override
+    public void putFile(String key, Path source) throws IOException {
+        HttpResponse<InputStream> response = send("PUT", key, null,
+                HttpRequest.BodyPublishers.ofFile(source), true, SigV4Signer.UNSIGNED_PAYLOAD);
+        expect(response, "PUT", key, 200);
+        response.body().close();
+        Files.deleteIfExists(source);
+    }
+    @Override
+    public InputStream get(String key) throws IOException {
+        HttpResponse<InputStream> response = send("GET", key, null, HttpRequest.BodyPublishers.noBody(), true,
+                SigV4Signer.EMPTY_PAYLOAD_HASH);
+        expect(response, "GET", key, 200);
+        return response.body();
+    }
+    @Override
+    public InputStream get(String key, long offset, long length) throws IOException {
+        if (length <= 0) {
+            stat(key).orElseThrow(() -> new NoSuchFileException(key));
+            return InputStream.nullInputStream();
+        }
+        String range = "bytes=" + offset + "-" + (offset + length - 1);
+        HttpResponse<InputStream> response = send("GET", key, range, HttpRequest.BodyPublishers.noBody(), true,
+                SigV4Signer.EMPTY_PAYLOAD_HASH);
+        if (response.statusCode() == 416) {
+            response.body().close();
+            return InputStream.nullInputStream();
+        }
+        expect(response, "GET", key, 200, 206);
+        return response.body();
+    }
+    @Override
+    public Optional<BlobMetadata> stat(String key) throws IOException {
+        HttpResponse<InputStream> response = send("HEAD", key, null, HttpRequest.BodyPublishers.noBody(), true,
+                SigV4Signer.EMPTY_PAYLOAD_HASH);
+        response.body().close();
+        if (response.statusCode() == 404) {
+            return Optional.empty();
+        }
+        expect(response, "HEAD", key, 200);
+        long size = response.headers().firstValueAsLong("Content-Length").orElse(0);
+        Instant lastModified = response.headers().firstValue("Last-Modified")
+                .map(S3BlobStore::parseHttpDate)
+                .orElse(Instant.EPOCH);
+        return Optional.of(new BlobMetadata(size, lastModified));
+    }
+    @Override
+    public void delete(String key) throws IOException {
+        HttpResponse<InputStream> response = send("DELETE", key, null, HttpRequest.BodyPublishers.noBody(), true,
+                SigV4Signer.EMPTY_PAYLOAD_HASH);
+        response.body().close();
+        if (response.statusCode() != 404) {
+            expect(response, "DELETE", key, 200, 204);
+        }
+    }
+    @Override
+    public String getName() {
+        return "s3:" + endpoint + "/" + bucket;
+    }
+    private HttpResponse<InputStream> send(String method, String key, String range, HttpRequest.BodyPublisher body,
+                                           boolean replayable, String payloadHash) throws IOException {
+        String path = SigV4Signer.encodePath("/" + bucket + "/" + prefix + BlobStore.checkKey(key));
+        URI uri = URI.create(endpoint + path);
+        Instant now = Instant.now();
+        SortedMap<String, String> headers = new TreeMap<>();
+        headers.put("host", hostHeader(uri));
+        headers.put("x-amz-content-sha256", payloadHash);
+        headers.put("x-amz-date", SigV4Signer.AMZ_DATE.format(now));
+        if (range != null) {
+            headers.put("range", range);
+        }
+        HttpRequest.Builder request = HttpRequest.newBuilder(uri)
+                .timeout(timeout)
+                .method(method, body)
+                .header("Authorization", signer.authorization(method, path, "", headers, payloadHash, now));
+        headers.forEach((name, value) -> {
+            if (!"host".equals(name)) {
+                request.header(name, value);
+            }
+        });
+        try {
+            try {
+                return httpClient.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+            } catch (HttpTimeoutException e) {
+                throw e;
+            } catch (IOException e) {
+                if (!replayable) {
+                    throw e;
+                }
+                return httpClient.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Requete S3 interrompue: " + method + " " + key);
+        }
+    }
+    private static void expect(HttpResponse<InputStream> response, String method, String key, int... statuses)
+            throws IOException {
+        int status = response.statusCode();
+        for (int expected : statuses) {
+            if (status == expected) {
+                return;
+            }
+        }
+        response.body().close();
+        if (status == 404) {
+            throw new NoSuchFileException(key);
+        }
+        throw new IOException("Requete S3 " + method + " " + key + " en echec: HTTP " + status);
+    }
+    /**
+     * En-tete Host tel que l'envoie le client HTTP : le port n'est indique que s'il n'est pas
+     * celui par defaut du schema.
+     */
+    private static String hostHeader(URI uri) {
+        int port = uri.getPort();
+        boolean defaultPort = port == -1
+                || ("http".equals(uri.getScheme()) && port == 80)
+                || ("https".equals(uri.getScheme()) && port == 443);
+        return defaultPort ? uri.getHost() : uri.getHost() + ":" + port;
+    }
+    private static Instant parseHttpDate(String value) {
+        try {
+            return ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+        } catch (DateTimeParseException e) {
+            return Instant.EPOCH;
+        }
+    }
+}
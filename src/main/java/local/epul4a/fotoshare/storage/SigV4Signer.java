@@ -0,0 +1,95 @@
+package local.epul4a.fotoshare.storage;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.HexFormat;
+import java.util.SortedMap;
+import java.util.stream.Collectors;
+/**
+ * Signature des requetes S3 (AWS Signature Version 4).
+ * Tous les en-tetes fournis sont signes ; leurs noms doivent etre en minuscules.
+ */
+class SigV4Signer {
+    static final String ALGORITHM = "AWS4-HMAC-SHA256";
+    static final String UNSIGNED_PAYLOAD = "UNSIGNED-PAYLOAD";
+    static final String EMPTY_PAYLOAD_HASH = sha256Hex(new byte[0]);
+    static final DateTimeFormatter AMZ_DATE = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'").withZone(ZoneOffset.UTC);
+    private static final DateTimeFormatter SCOPE_DATE = DateTimeFormatter.ofPattern("yyyyMMdd").withZone(ZoneOffset.UTC);
+    private final String accessKey;
+    private final String secretKey;
+    private final String region;
+    private final String service;
+    SigV4Signer(String accessKey, String secretKey, String region, String service) {
+        this.accessKey = accessKey;
+        this.secretKey = secretKey;
+        this.region = region;
+        this.service = service;
+    }
+    /**
+     * Calcule l'en-tete Authorization d'une requete.
+     *
+     * @param method La methode HTTP
+     * @param canonicalPath Le chemin, deja encode
+     * @param canonicalQuery La chaine de requete canonique (vide si aucune)
+     * @param headers Les en-tetes a signer (dont host, x-amz-date et x-amz-content-sha256)
+     * @param payloadHash Le SHA-256 hexadecimal du corps, ou {@link #UNSIGNED_PAYLOAD}
+     * @param time La date de la requete, egale a l'en-tete x-amz-date
+     */
+    String authorization(String method, String canonicalPath, String canonicalQuery,
+                         SortedMap<String, String> headers, String payloadHash, Instant time) {
+        String canonicalHeaders = headers.entrySet().stream()
+                .map(header -> header.getKey() + ":" + header.getValue().trim() + "\n")
+                .collect(Collectors.joining());
+        String signedHeaders = String.join(";", headers.keySet());
+        String canonicalRequest = method + "\n" + canonicalPath + "\n" + canonicalQuery + "\n"
+                + canonicalHeaders + "\n" + signedHeaders + "\n" + payloadHash;
+        String date = SCOPE_DATE.format(time);
+        String scope = date + "/" + region + "/" + service + "/aws4_request";
+        String stringToSign = ALGORITHM + "\n" + AMZ_DATE.format(time) + "\n" + scope + "\n"
+                + sha256Hex(canonicalRequest.getBytes(StandardCharsets.UTF_8));
+        byte[] signingKey = hmac(("AWS4" + secretKey).getBytes(StandardCharsets.UTF_8), date);
+        for (String part : new String[]{region, service, "aws4_request"}) {
+            signingKey = hmac(signingKey, part);
+        }
+        String signature = HexFormat.of().formatHex(hmac(signingKey, stringToSign));
+        return ALGORITHM + " Credential=" + accessKey + "/" + scope
+                + ", SignedHeaders=" + signedHeaders + ", Signature=" + signature;
+    }
+    /**
+     * Encode un chemin selon les regles S3 : chaque segment en RFC 3986, les '/' conserves.
+     */
+    static String encodePath(String path) {
+        StringBuilder encoded = new StringBuilder();
+        for (byte b : path.getBytes(StandardCharsets.UTF_8)) {
+            char c = (char) (b & 0xFF);
+            if ((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')
+                    || c == '-' || c == '_' || c == '.' || c == '~' || c == '/') {
+                encoded.append(c);
+            } else {
+                encoded.append('%').append(String.format("%02X", b & 0xFF));
+            }
+        }
+        return encoded.toString();
+    }
+    static String sha256Hex(byte[] data) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("SHA-256 indisponible", e);
+        }
+    }
+    private static byte[] hmac(byte[] key, String data) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(key, "HmacSHA256"));
+            return mac.doFinal(data.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 indisponible", e);
+        }
+    }
+}
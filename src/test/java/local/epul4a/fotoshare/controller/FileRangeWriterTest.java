@@ -0,0 +1,122 @@
+package local.epul4a.fotoshare.controller;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import static org.junit.jupiter.api.Assertions.*;
+/**
+ * Tests unitaires pour le FileRangeWriter.
+ */
+class FileRangeWriterTest {
+    private static final String CONTENT = "0123456789abcdefghij";
+    @TempDir
+    Path tempDir;
+    private FileRangeWriter writer;
+    private Path file;
+    @BeforeEach
+    void setUp() throws Exception {
+        writer = new FileRangeWriter();
+        ReflectionTestUtils.setField(writer, "maxRanges", 4);
+        ReflectionTestUtils.setField(writer, "sendfileMinBytes", 10L);
+        file = Files.writeString(tempDir.resolve("photo.jpg"), CONTENT, StandardCharsets.US_ASCII);
+    }
+    @Test
+    @DisplayName("Plages - Sans en-tete Range le fichier est envoye en entier")
+    void noRange_SendsWholeFile() throws Exception {
+        MockHttpServletResponse response = send(null);
+        assertEquals(200, response.getStatus());
+        assertEquals("bytes", response.getHeader("Accept-Ranges"));
+        assertEquals(CONTENT, response.getContentAsString());
+        assertEquals(20, response.getContentLengthLong());
+    }
+    @Test
+    @DisplayName("Plages - Une plage unique ou un suffixe donne une reponse 206")
+    void singleRange_ReturnsPartialContent() throws Exception {
+        MockHttpServletResponse response = send("bytes=5-9");
+        assertEquals(206, response.getStatus());
+        assertEquals("bytes 5-9/20", response.getHeader("Content-Range"));
+        assertEquals("56789", response.getContentAsString());
+        MockHttpServletResponse suffix = send("bytes=-4");
+        assertEquals("bytes 16-19/20", suffix.getHeader("Content-Range"));
+        assertEquals("ghij", suffix.getContentAsString());
+        MockHttpServletResponse open = send("bytes=18-");
+        assertEquals("ij", open.getContentAsString());
+    }
+    @Test
+    @DisplayName("Plages - Plusieurs plages donnent un corps multipart/byteranges de longueur exacte")
+    void multipleRanges_ReturnsMultipart() throws Exception {
+        MockHttpServletResponse response = send("bytes=0-1, 10-12, 11-14");
+        assertEquals(206, response.getStatus());
+        String contentType = response.getContentType();
+        assertTrue(contentType.startsWith("multipart/byteranges; boundary="));
+        String boundary = contentType.substring(contentType.indexOf('=') + 1);
+        String body = response.getContentAsString();
+        assertEquals(body.length(), response.getContentLengthLong());
+        assertEquals("\r\n--" + boundary + "\r\nContent-Type: image/jpeg\r\nContent-Range: bytes 0-1/20\r\n\r\n01"
+                + "\r\n--" + boundary + "\r\nContent-Type: image/jpeg\r\nContent-Range: bytes 10-14/20\r\n\r\nabcde"
+                + "\r\n--" + boundary + "--\r\n", body, "Les plages qui se chevauchent sont fusionnees");
+    }
+    @Test
+    @DisplayName("Plages - Une plage hors du fichier donne 416, une plage mal formee le fichier entier")
+    void unsatisfiableOrInvalidRange() throws Exception {
+        MockHttpServletResponse unsatisfiable = send("bytes=20-30");
+        assertEquals(416, unsatisfiable.getStatus());
+        assertEquals("bytes */20", unsatisfiable.getHeader("Content-Range"));
+        assertEquals(200, send("bytes=9-3").getStatus());
+        assertEquals(200, send("octets=0-3").getStatus());
+        assertEquals(200, send("bytes=0-0,2-2,4-4,6-6,8-8").getStatus(), "Trop de plages");
+    }
+    @Test
+    @DisplayName("Plages - If-Range perime renvoie le fichier entier, un ETag identique la plage, sendfile est utilise si disponible")
+    void ifRangeAndSendfile() throws Exception {
+        MockHttpServletRequest stale = request("bytes=0-3");
+        stale.addHeader("If-Range", "Thu, 01 Jan 1970 00:00:00 GMT");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        writer.write(stale, response, file, MediaType.IMAGE_JPEG, null, "\"abc\"", -1);
+        assertEquals(200, response.getStatus());
+        MockHttpServletRequest current = request("bytes=0-3");
+        current.addHeader("If-Range", "\"abc\"");
+        MockHttpServletResponse partial = new MockHttpServletResponse();
+        writer.write(current, partial, file, MediaType.IMAGE_JPEG, null, "\"abc\"", -1);
+        assertEquals(206, partial.getStatus(), "Un ETag identique autorise la reprise");
+        MockHttpServletRequest sendfile = request("bytes=2-15");
+        sendfile.setAttribute(FileRangeWriter.SENDFILE_SUPPORT, Boolean.TRUE);
+        MockHttpServletResponse delegated = new MockHttpServletResponse();
+        writer.write(sendfile, delegated, file, MediaType.IMAGE_JPEG, null, "\"abc\"", -1);
+        assertEquals(206, delegated.getStatus());
+        assertEquals(0, delegated.getContentAsByteArray().length, "Le corps est envoye par le connecteur");
+        assertEquals(file.toRealPath().toString(), sendfile.getAttribute(FileRangeWriter.SENDFILE_FILENAME));
+        assertEquals(2L, sendfile.getAttribute(FileRangeWriter.SENDFILE_START));
+        assertEquals(16L, sendfile.getAttribute(FileRangeWriter.SENDFILE_END));
+    }
+    @Test
+    @DisplayName("Sendfile - Desactive par l'appelant, le corps est ecrit avant le retour")
+    void sendfileDisabled_WritesBody() throws Exception {
+        MockHttpServletRequest request = request(null);
+        request.setAttribute(FileRangeWriter.SENDFILE_SUPPORT, Boolean.TRUE);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        writer.write(request, response, file, MediaType.IMAGE_JPEG, null, "\"abc\"", -1, false);
+        assertEquals(200, response.getStatus());
+        assertArrayEquals(Files.readAllBytes(file), response.getContentAsByteArray());
+        assertNull(request.getAttribute(FileRangeWriter.SENDFILE_FILENAME));
+    }
+    private MockHttpServletResponse send(String range) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        writer.write(request(range), response, file, MediaType.IMAGE_JPEG, "inline", "\"abc\"", -1);
+        return response;
+    }
+    private static MockHttpServletRequest request(String range) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/photos/1/file");
+        if (range != null) {
+            request.addHeader("Range", range);
+        }
+        return request;
+    }
+}
@@ -0,0 +1,91 @@
+package local.epul4a.fotoshare.integration;
+import local.epul4a.fotoshare.model.Photo;
+import local.epul4a.fotoshare.model.UploadSession;
+import local.epul4a.fotoshare.model.VISIBILITY;
+import local.epul4a.fotoshare.repository.UploadSessionRepository;
+import local.epul4a.fotoshare.service.FileStorageService;
+import local.epul4a.fotoshare.service.PhotoService;
+import local.epul4a.fotoshare.service.UploadSessionService;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import static org.junit.jupiter.api.Assertions.*;
+/**
+ * Tests d'integration pour l'upload fractionne et reprenable.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class ChunkedUploadIntegrationTest {
+    @Autowired
+    private UploadSessionService uploadSessionService;
+    @Autowired
+    private UploadSessionRepository uploadSessionRepository;
+    @Autowired
+    private PhotoService photoService;
+    @Autowired
+    private FileStorageService fileStorageService;
+    private static final Long TEST_USER_ID = 1L;
+    @Test
+    @DisplayName("Upload fractionne - Les morceaux sont assembles puis stockes comme une photo")
+    void chunkedUpload_CompleteCycle_Success() throws Exception {
+        byte[] content = createPng();
+        int half = content.length / 2;
+        UploadSession session = uploadSessionService.createSession(
+                TEST_USER_ID, "chunked.png", "Fractionnee", null, VISIBILITY.PRIVATE, (long) content.length);
+        uploadSessionService.appendChunk(session.getId(), TEST_USER_ID, 0,
+                new ByteArrayInputStream(Arrays.copyOfRange(content, 0, half)));
+        assertEquals(half, uploadSessionService.getSession(session.getId(), TEST_USER_ID).getReceived_bytes());
+        uploadSessionService.appendChunk(session.getId(), TEST_USER_ID, half,
+                new ByteArrayInputStream(Arrays.copyOfRange(content, half, content.length)));
+        Object stagedKey = Files.readAttributes(fileStorageService.resolveStagingFile(session.getId()),
+                BasicFileAttributes.class).fileKey();
+        Photo photo = uploadSessionService.completeSession(session.getId(), TEST_USER_ID);
+        assertEquals("image/png", photo.getContent_type());
+        assertEquals(content.length, photo.getFile_size());
+        assertArrayEquals(content, Files.readAllBytes(fileStorageService.resolve(photo.getStorage_filename())));
+        assertEquals(stagedKey, Files.readAttributes(fileStorageService.resolve(photo.getStorage_filename()),
+                BasicFileAttributes.class).fileKey(), "Le fichier de transit est deplace, pas recopie");
+        assertFalse(uploadSessionRepository.findById(session.getId()).isPresent(), "La session doit etre supprimee");
+        photoService.deletePhoto(photo.getId(), TEST_USER_ID);
+    }
+    @Test
+    @DisplayName("Upload fractionne - Un morceau a la mauvaise position est refuse avec la position attendue")
+    void chunkedUpload_WrongOffset_ReportsExpectedOffset() {
+        UploadSession session = uploadSessionService.createSession(
+                TEST_USER_ID, "offset.png", null, null, null, 100L);
+        uploadSessionService.appendChunk(session.getId(), TEST_USER_ID, 0, new ByteArrayInputStream(new byte[10]));
+        UploadSessionService.OffsetMismatchException e = assertThrows(
+                UploadSessionService.OffsetMismatchException.class,
+                () -> uploadSessionService.appendChunk(session.getId(), TEST_USER_ID, 50, new ByteArrayInputStream(new byte[10])));
+        assertEquals(10, e.getExpectedOffset());
+        assertThrows(IllegalArgumentException.class,
+                () -> uploadSessionService.completeSession(session.getId(), TEST_USER_ID));
+        uploadSessionService.abortSession(session.getId(), TEST_USER_ID);
+    }
+    @Test
+    @DisplayName("Upload fractionne - Un autre utilisateur ne peut pas ecrire dans la session")
+    void chunkedUpload_OtherUser_IsRejected() {
+        UploadSession session = uploadSessionService.createSession(
+                TEST_USER_ID, "owner.png", null, null, null, null);
+        assertThrows(SecurityException.class,
+                () -> uploadSessionService.appendChunk(session.getId(), 2L, 0, new ByteArrayInputStream(new byte[1])));
+        uploadSessionService.abortSession(session.getId(), TEST_USER_ID);
+    }
+    private byte[] createPng() throws IOException {
+        BufferedImage image = new BufferedImage(32, 32, BufferedImage.TYPE_INT_RGB);
+        image.setRGB(1, 1, (int) System.nanoTime());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+}
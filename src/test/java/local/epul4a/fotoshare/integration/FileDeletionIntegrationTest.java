@@ -0,0 +1,142 @@
+package local.epul4a.fotoshare.integration;
+import local.epul4a.fotoshare.model.Photo;
+import local.epul4a.fotoshare.model.VISIBILITY;
+import local.epul4a.fotoshare.repository.FileDeletionRepository;
+import local.epul4a.fotoshare.repository.PhotoRepository;
+import local.epul4a.fotoshare.repository.StoredBlobRepository;
+import local.epul4a.fotoshare.service.FileDeletionService;
+import local.epul4a.fotoshare.service.FileStorageService;
+import local.epul4a.fotoshare.service.PhotoService;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.doAnswer;
+/**
+ * Tests d'integration pour la suppression differee des fichiers.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class FileDeletionIntegrationTest {
+    @Autowired
+    private PhotoService photoService;
+    @Autowired
+    private PhotoRepository photoRepository;
+    @Autowired
+    private FileDeletionService fileDeletionService;
+    @Autowired
+    private FileDeletionRepository fileDeletionRepository;
+    @MockitoSpyBean
+    private FileStorageService fileStorageService;
+    @Autowired
+    private StoredBlobRepository storedBlobRepository;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    private static final Long TEST_USER_ID = 1L;
+    @Test
+    @DisplayName("Suppression differee - Une suppression annulee conserve le fichier, un commit l'efface apres coup")
+    void deletePhoto_FileRemovedOnlyAfterCommit() throws Exception {
+        Photo photo = photoService.uploadPhoto(
+                new MockMultipartFile("file", "outbox.png", "image/png", createPng()),
+                "Outbox", null, VISIBILITY.PRIVATE, TEST_USER_ID);
+        String storageFilename = photo.getStorage_filename();
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            photoService.deletePhoto(photo.getId(), TEST_USER_ID);
+            status.setRollbackOnly();
+        });
+        assertTrue(photoRepository.findById(photo.getId()).isPresent());
+        fileDeletionService.drain();
+        assertTrue(fileStorageService.exists(storageFilename), "Une transaction annulee ne doit effacer aucun fichier");
+        photoService.deletePhoto(photo.getId(), TEST_USER_ID);
+        fileDeletionService.drain();
+        assertFalse(fileStorageService.exists(storageFilename));
+        assertEquals(0, fileDeletionService.getStats().getPending());
+    }
+    @Test
+    @DisplayName("Suppression differee - Un fichier de nouveau reference avant le passage du thread est conserve")
+    void drain_ReferencedAgain_SkipsDeletion() throws Exception {
+        String storageFilename = UUID.randomUUID() + ".png";
+        fileStorageService.write(storageFilename, createPng());
+        Photo photo = photoRepository.save(Photo.builder()
+                .original_filename("outbox.png")
+                .storage_filename(storageFilename)
+                .content_type("image/png")
+                .visibility(VISIBILITY.PRIVATE)
+                .owner_id(TEST_USER_ID)
+                .created_at(new Date())
+                .build());
+        try {
+            long skippedBefore = fileDeletionService.getStats().getSkipped();
+            new TransactionTemplate(transactionManager).executeWithoutResult(status ->
+                    fileDeletionService.schedule(storageFilename));
+            fileDeletionService.drain();
+            assertTrue(fileStorageService.exists(storageFilename));
+            assertTrue(fileDeletionService.getStats().getSkipped() > skippedBefore);
+            assertTrue(fileDeletionRepository.findAll().stream()
+                    .noneMatch(deletion -> storageFilename.equals(deletion.getStorage_filename())));
+        } finally {
+            photoRepository.deleteById(photo.getId());
+            fileStorageService.delete(storageFilename);
+        }
+    }
+    @Test
+    @DisplayName("Suppression differee - Un contenu deduplique renvoye pendant l'effacement conserve son fichier")
+    void drain_ReuploadDuringDeletion_KeepsNewFile() throws Exception {
+        byte[] content = createPng();
+        Photo photo = photoService.uploadPhoto(new MockMultipartFile("file", "race.png", "image/png", content),
+                "Race", null, VISIBILITY.PRIVATE, TEST_USER_ID);
+        String storageFilename = photo.getStorage_filename();
+        AtomicReference<CompletableFuture<Photo>> reupload = new AtomicReference<>();
+        AtomicBoolean blockedDuringDeletion = new AtomicBoolean();
+        // Le nouvel upload arrive alors que le thread de suppression a verifie le blob et s'apprete a effacer
+        doAnswer(invocation -> {
+            CompletableFuture<Photo> upload = CompletableFuture.supplyAsync(() -> photoService.uploadPhoto(
+                    new MockMultipartFile("file", "race.png", "image/png", content),
+                    "Race bis", null, VISIBILITY.PRIVATE, TEST_USER_ID));
+            reupload.set(upload);
+            Thread.sleep(300);
+            blockedDuringDeletion.set(!upload.isDone());
+            invocation.callRealMethod();
+            return null;
+        }).doCallRealMethod().when(fileStorageService).delete(storageFilename);
+        photoService.deletePhoto(photo.getId(), TEST_USER_ID);
+        fileDeletionService.drain();
+        assertNotNull(reupload.get(), "Le fichier aurait du etre efface");
+        Photo again = reupload.get().get(10, TimeUnit.SECONDS);
+        try {
+            assertTrue(blockedDuringDeletion.get(), "L'upload doit attendre la fin de l'effacement");
+            assertEquals(storageFilename, again.getStorage_filename());
+            assertTrue(fileStorageService.exists(storageFilename), "Le fichier du nouvel upload doit etre conserve");
+            assertEquals(1, storedBlobRepository.findAll().stream()
+                    .filter(blob -> storageFilename.equals(blob.getStorage_filename()))
+                    .findFirst().orElseThrow().getRef_count());
+        } finally {
+            photoService.deletePhoto(again.getId(), TEST_USER_ID);
+            fileDeletionService.drain();
+        }
+        assertFalse(fileStorageService.exists(storageFilename));
+    }
+    private byte[] createPng() throws IOException {
+        BufferedImage image = new BufferedImage(4, 4, BufferedImage.TYPE_INT_RGB);
+        image.setRGB(0, 0, (int) System.nanoTime());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+}
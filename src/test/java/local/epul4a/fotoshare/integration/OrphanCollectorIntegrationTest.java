@@ -0,0 +1,117 @@
+package local.epul4a.fotoshare.integration;
+import local.epul4a.fotoshare.dto.OrphanCollectionReportDto;
+import local.epul4a.fotoshare.model.Photo;
+import local.epul4a.fotoshare.model.VISIBILITY;
+import local.epul4a.fotoshare.repository.PhotoRepository;
+import local.epul4a.fotoshare.service.FileStorageService;
+import local.epul4a.fotoshare.service.OrphanCollectorService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import static org.junit.jupiter.api.Assertions.*;
+/**
+ * Tests d'integration pour le ramasse-miettes des fichiers orphelins.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class OrphanCollectorIntegrationTest {
+    @Autowired
+    private OrphanCollectorService orphanCollectorService;
+    @Autowired
+    private FileStorageService fileStorageService;
+    @Autowired
+    private PhotoRepository photoRepository;
+    private final List<Path> files = new ArrayList<>();
+    private Photo photo;
+    @AfterEach
+    void tearDown() throws IOException {
+        for (Path file : files) {
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(fileStorageService.getQuarantineLocation().resolve(file.getFileName()));
+        }
+        if (photo != null) {
+            photoRepository.deleteById(photo.getId());
+        }
+    }
+    @Test
+    @DisplayName("GC - Un orphelin ancien est mis en quarantaine puis supprime, les fichiers references sont conserves")
+    void collect_OldOrphan_IsQuarantinedThenDeleted() throws Exception {
+        String referencedName = UUID.randomUUID() + ".jpg";
+        Path referenced = oldFile(referencedName, 100);
+        Path referencedThumbnail = oldFile(referencedName.replace(".jpg", "_thumb.jpg"), 10);
+        Path orphan = oldFile(UUID.randomUUID() + ".png", 300);
+        Path orphanRendition = oldFile(orphan.getFileName().toString().replace(".png", "_r800.png"), 50);
+        Path recentOrphan = fileStorageService.getRootLocation().resolve(UUID.randomUUID() + ".gif");
+        Files.write(recentOrphan, new byte[20]);
+        files.add(recentOrphan);
+        photo = photoRepository.save(Photo.builder()
+                .original_filename("gc.jpg")
+                .storage_filename(referencedName)
+                .content_type("image/jpeg")
+                .visibility(VISIBILITY.PRIVATE)
+                .owner_id(1L)
+                .created_at(new Date())
+                .build());
+        OrphanCollectionReportDto dryRun = orphanCollectorService.collect(true);
+        assertTrue(dryRun.isDryRun());
+        assertTrue(dryRun.getQuarantinedBytes() >= 350);
+        assertTrue(Files.exists(orphan), "La simulation ne deplace rien");
+        OrphanCollectionReportDto report = orphanCollectorService.collect(false);
+        assertTrue(report.getQuarantinedFiles() >= 2);
+        assertTrue(Files.exists(referenced));
+        assertTrue(Files.exists(referencedThumbnail));
+        assertTrue(Files.exists(recentOrphan), "Un orphelin recent est protege par le delai de grace");
+        assertFalse(Files.exists(orphan));
+        Path quarantined = fileStorageService.getQuarantineLocation().resolve(orphan.getFileName());
+        Path quarantinedRendition = fileStorageService.getQuarantineLocation().resolve(orphanRendition.getFileName());
+        assertTrue(Files.exists(quarantined));
+        age(quarantined);
+        age(quarantinedRendition);
+        OrphanCollectionReportDto purge = orphanCollectorService.collect(false);
+        assertFalse(Files.exists(quarantined));
+        assertTrue(purge.getDeletedFiles() >= 2);
+        assertTrue(purge.getReclaimedBytes() >= 350);
+    }
+    @Test
+    @DisplayName("GC - Un fichier en quarantaine de nouveau reference est restaure")
+    void collect_QuarantinedFileReferencedAgain_IsRestored() throws Exception {
+        String name = UUID.randomUUID() + ".jpg";
+        Path file = oldFile(name, 10);
+        orphanCollectorService.collect(false);
+        assertFalse(Files.exists(file));
+        photo = photoRepository.save(Photo.builder()
+                .original_filename("gc.jpg")
+                .storage_filename(name)
+                .content_type("image/jpeg")
+                .visibility(VISIBILITY.PRIVATE)
+                .owner_id(1L)
+                .created_at(new Date())
+                .build());
+        OrphanCollectionReportDto report = orphanCollectorService.collect(false);
+        assertTrue(fileStorageService.exists(name));
+        assertTrue(report.getRestoredFiles() >= 1);
+        files.add(fileStorageService.resolve(name));
+    }
+    private Path oldFile(String name, int size) throws IOException {
+        Path file = fileStorageService.resolveForWrite(name);
+        Files.write(file, new byte[size]);
+        age(file);
+        files.add(file);
+        return file;
+    }
+    private void age(Path file) throws IOException {
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(30)));
+    }
+}
@@ -0,0 +1,265 @@
+package local.epul4a.fotoshare.integration;
+import local.epul4a.fotoshare.controller.FileRangeWriter;
+import local.epul4a.fotoshare.controller.PhotoController;
+import local.epul4a.fotoshare.model.Photo;
+import local.epul4a.fotoshare.model.ROLE_USER;
+import local.epul4a.fotoshare.model.THUMBNAIL_STATUS;
+import local.epul4a.fotoshare.model.User;
+import local.epul4a.fotoshare.model.VISIBILITY;
+import local.epul4a.fotoshare.repository.PhotoRepository;
+import local.epul4a.fotoshare.repository.UserRepository;
+import local.epul4a.fotoshare.service.FileDeletionService;
+import local.epul4a.fotoshare.service.FileStorageService;
+import local.epul4a.fotoshare.service.PhotoRenderService;
+import local.epul4a.fotoshare.service.PhotoService;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.io.Resource;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+import org.springframework.test.util.ReflectionTestUtils;
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+/**
+ * Tests d'integration pour le telechargement des photos : validateurs, requetes partielles
+ * et rendus a la demande.
+ * Le controleur est appele directement, en visiteur anonyme sur une photo publique.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class PhotoDownloadIntegrationTest {
+    @Autowired
+    private PhotoController photoController;
+    @Autowired
+    private PhotoService photoService;
+    @Autowired
+    private FileRangeWriter fileRangeWriter;
+    @MockitoSpyBean
+    private FileStorageService fileStorageService;
+    @Autowired
+    private FileDeletionService fileDeletionService;
+    @Autowired
+    private PhotoRenderService photoRenderService;
+    @Autowired
+    private PhotoRepository photoRepository;
+    @Autowired
+    private UserRepository userRepository;
+    private static final Long TEST_USER_ID = 1L;
+    @Test
+    @DisplayName("Telechargement - ETag fort, reprise par plage et 304 sans acces au disque")
+    void servePhoto_ConditionalAndRangeRequests() throws Exception {
+        byte[] png = createPng();
+        Photo photo = photoService.uploadPhoto(new MockMultipartFile("file", "download.png", "image/png", png),
+                "Telechargement", null, VISIBILITY.PUBLIC, TEST_USER_ID);
+        try {
+            MockHttpServletResponse full = get(photo.getId(), new MockHttpServletRequest());
+            assertEquals(200, full.getStatus());
+            String etag = full.getHeader("ETag");
+            assertEquals("\"" + photo.getContent_hash() + "\"", etag);
+            assertNotNull(full.getHeader("Last-Modified"));
+            assertArrayEquals(png, full.getContentAsByteArray());
+            MockHttpServletRequest resume = new MockHttpServletRequest();
+            resume.addHeader("Range", "bytes=10-");
+            resume.addHeader("If-Range", etag);
+            MockHttpServletResponse partial = get(photo.getId(), resume);
+            assertEquals(206, partial.getStatus());
+            assertArrayEquals(Arrays.copyOfRange(png, 10, png.length), partial.getContentAsByteArray());
+            Path stored = fileStorageService.resolve(photo.getStorage_filename());
+            Path moved = Files.move(stored, stored.resolveSibling("moved-" + stored.getFileName()));
+            try {
+                MockHttpServletRequest revalidation = new MockHttpServletRequest();
+                revalidation.addHeader("If-None-Match", etag);
+                MockHttpServletResponse notModified = get(photo.getId(), revalidation);
+                assertEquals(304, notModified.getStatus(), "La revalidation ne doit pas ouvrir le fichier");
+                assertEquals(0, notModified.getContentAsByteArray().length);
+                assertEquals(etag, notModified.getHeader("ETag"));
+            } finally {
+                Files.move(moved, stored);
+            }
+            MockHttpServletRequest thumbnailRequest = new MockHttpServletRequest("GET", "/");
+            MockHttpServletResponse thumbnail = new MockHttpServletResponse();
+            photoController.serveThumbnail(photo.getId(), thumbnailRequest, thumbnail);
+            assertNotNull(thumbnail.getHeader("ETag"));
+            MockHttpServletRequest cachedThumbnail = new MockHttpServletRequest("GET", "/");
+            cachedThumbnail.addHeader("If-None-Match", thumbnail.getHeader("ETag"));
+            MockHttpServletResponse thumbnailNotModified = new MockHttpServletResponse();
+            photoController.serveThumbnail(photo.getId(), cachedThumbnail, thumbnailNotModified);
+            assertEquals(304, thumbnailNotModified.getStatus());
+            assertEquals("max-age=86400", thumbnailNotModified.getHeader("Cache-Control"));
+        } finally {
+            photoService.deletePhoto(photo.getId(), TEST_USER_ID);
+            fileDeletionService.drain();
+        }
+    }
+    @Test
+    @DisplayName("Telechargement - Declinaison manquante : l'original est servi sous son propre ETag")
+    void servePhoto_MissingRendition_ServesOriginalWithItsEntityTag() throws Exception {
+        byte[] png = createPng();
+        String storageFilename = UUID.randomUUID() + ".png";
+        fileStorageService.write(storageFilename, png);
+        Photo photo = photoRepository.save(Photo.builder()
+                .original_filename("rendition.png")
+                .storage_filename(storageFilename)
+                .thumbnail_filename("thumb_" + storageFilename.replace(".png", ".jpg"))
+                .rendition_sizes("300")
+                .thumbnail_spec("spec")
+                .thumbnail_status(THUMBNAIL_STATUS.READY)
+                .content_type("image/png")
+                .content_hash("missing-rendition-" + UUID.randomUUID())
+                .visibility(VISIBILITY.PUBLIC)
+                .owner_id(TEST_USER_ID)
+                .created_at(new Date())
+                .build());
+        try {
+            MockHttpServletRequest request = new MockHttpServletRequest();
+            request.setMethod("GET");
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            assertNull(photoController.servePhoto(photo.getId(), 300, request, response));
+            assertEquals(200, response.getStatus());
+            assertEquals("\"" + photo.getContent_hash() + "\"", response.getHeader("ETag"));
+            assertArrayEquals(png, response.getContentAsByteArray());
+            // L'ETag de la declinaison vient de la base : la revalidation repond 304 sans toucher au stockage
+            String renditionTag = "\"" + photo.getContent_hash() + "-r300-" + Integer.toHexString("spec".hashCode()) + "\"";
+            MockHttpServletRequest conditional = new MockHttpServletRequest();
+            conditional.setMethod("GET");
+            conditional.addHeader("If-None-Match", renditionTag);
+            MockHttpServletResponse notModified = new MockHttpServletResponse();
+            clearInvocations(fileStorageService);
+            assertNull(photoController.servePhoto(photo.getId(), 300, conditional, notModified));
+            assertEquals(304, notModified.getStatus());
+            verify(fileStorageService, never()).exists(anyString());
+        } finally {
+            photoRepository.deleteById(photo.getId());
+            fileStorageService.delete(storageFilename);
+        }
+    }
+    @Test
+    @DisplayName("Rendu a la demande - Tailles autorisees, cache disque et suppression avec la photo")
+    void renderPhoto_RendersOnceThenServesFromCache() throws Exception {
+        BufferedImage source = new BufferedImage(400, 200, BufferedImage.TYPE_INT_RGB);
+        source.setRGB(0, 0, (int) System.nanoTime());
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(source, "png", png);
+        Photo photo = photoService.uploadPhoto(new MockMultipartFile("file", "render.png", "image/png", png.toByteArray()),
+                "Rendu", null, VISIBILITY.PUBLIC, TEST_USER_ID);
+        try {
+            long rendersBefore = photoRenderService.getStats().getRenders();
+            long hitsBefore = photoRenderService.getStats().getHits();
+            MockHttpServletResponse contain = render(photo.getId(), 150, null, null, new MockHttpServletRequest());
+            assertEquals(200, contain.getStatus());
+            assertEquals("image/jpeg", contain.getContentType());
+            assertEquals("max-age=86400", contain.getHeader("Cache-Control"), "Photo publique : cache partage autorise");
+            BufferedImage contained = ImageIO.read(new ByteArrayInputStream(contain.getContentAsByteArray()));
+            assertEquals(150, contained.getWidth());
+            assertEquals(75, contained.getHeight());
+            MockHttpServletResponse again = render(photo.getId(), 150, null, null, new MockHttpServletRequest());
+            assertArrayEquals(contain.getContentAsByteArray(), again.getContentAsByteArray());
+            assertEquals(rendersBefore + 1, photoRenderService.getStats().getRenders(), "Le second appel est servi depuis le cache");
+            assertEquals(hitsBefore + 1, photoRenderService.getStats().getHits());
+            // Connecteur avec sendfile : le rendu epingle est tout de meme ecrit avant le retour
+            MockHttpServletRequest sendfile = new MockHttpServletRequest();
+            sendfile.setAttribute("org.apache.tomcat.sendfile.support", Boolean.TRUE);
+            Object sendfileMinBytes = ReflectionTestUtils.getField(fileRangeWriter, "sendfileMinBytes");
+            ReflectionTestUtils.setField(fileRangeWriter, "sendfileMinBytes", 0L);
+            try {
+                MockHttpServletResponse written = render(photo.getId(), 150, null, null, sendfile);
+                assertArrayEquals(contain.getContentAsByteArray(), written.getContentAsByteArray());
+                assertNull(sendfile.getAttribute("org.apache.tomcat.sendfile.filename"));
+            } finally {
+                ReflectionTestUtils.setField(fileRangeWriter, "sendfileMinBytes", sendfileMinBytes);
+            }
+            MockHttpServletResponse cover = render(photo.getId(), 150, 150, "cover", new MockHttpServletRequest());
+            BufferedImage covered = ImageIO.read(new ByteArrayInputStream(cover.getContentAsByteArray()));
+            assertEquals(150, covered.getWidth());
+            assertEquals(150, covered.getHeight());
+            MockHttpServletRequest revalidation = new MockHttpServletRequest();
+            revalidation.addHeader("If-None-Match", cover.getHeader("ETag"));
+            assertEquals(304, render(photo.getId(), 150, 150, "cover", revalidation).getStatus());
+            assertEquals(400, render(photo.getId(), 151, null, null, new MockHttpServletRequest()).getStatus(), "Taille hors liste");
+            assertEquals(400, render(photo.getId(), 150, null, "cover", new MockHttpServletRequest()).getStatus());
+            Path pinned;
+            try (PhotoRenderService.RenderedFile rendered = photoRenderService.render(photo, photoRenderService.parseParams(150, null, null))) {
+                pinned = rendered.file();
+                photoRenderService.invalidate(photo.getId());
+                assertTrue(Files.isRegularFile(pinned), "Un rendu en cours d'envoi n'est pas supprime");
+            }
+            assertFalse(Files.exists(pinned), "Le rendu invalide est supprime a la fin de l'envoi");
+            // Photo privee, servie a son proprietaire : le rendu ne doit pas aller dans un cache partage
+            User owner = userRepository.save(User.builder()
+                    .username("render-owner")
+                    .email("render-owner@test.com")
+                    .password_hash("hashedpassword")
+                    .role(ROLE_USER.USER)
+                    .enabled(true)
+                    .created_at(new Date())
+                    .build());
+            Photo stored = photoRepository.findById(photo.getId()).orElseThrow();
+            stored.setVisibility(VISIBILITY.PRIVATE);
+            stored.setOwner_id(owner.getId());
+            photoRepository.save(stored);
+            SecurityContextHolder.setContext(new SecurityContextImpl(
+                    UsernamePasswordAuthenticationToken.authenticated(owner.getUsername(), null, List.of())));
+            try {
+                MockHttpServletResponse privateRender = render(photo.getId(), 150, null, null, new MockHttpServletRequest());
+                assertEquals(200, privateRender.getStatus());
+                assertEquals("max-age=86400, private", privateRender.getHeader("Cache-Control"));
+            } finally {
+                SecurityContextHolder.clearContext();
+                stored.setOwner_id(TEST_USER_ID);
+                photoRepository.save(stored);
+                userRepository.deleteById(owner.getId());
+            }
+        } finally {
+            photoService.deletePhoto(photo.getId(), TEST_USER_ID);
+            fileDeletionService.drain();
+        }
+        try (var files = Files.list(Path.of("target", "test-render-cache"))) {
+            assertTrue(files.noneMatch(file -> file.getFileName().toString().startsWith(photo.getId() + "-")),
+                    "Les rendus sont supprimes avec la photo");
+        }
+    }
+    private MockHttpServletResponse render(Long photoId, Integer width, Integer height, String fit,
+                                           MockHttpServletRequest request) {
+        request.setMethod("GET");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        ResponseEntity<Resource> result = photoController.renderPhoto(photoId, width, height, fit, request, response);
+        if (result != null) {
+            response.setStatus(result.getStatusCode().value());
+        }
+        return response;
+    }
+    private MockHttpServletResponse get(Long photoId, MockHttpServletRequest request) {
+        request.setMethod("GET");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        assertNull(photoController.servePhoto(photoId, null, request, response), "Fichier local : la reponse est ecrite directement");
+        return response;
+    }
+    private byte[] createPng() throws IOException {
+        BufferedImage image = new BufferedImage(16, 16, BufferedImage.TYPE_INT_RGB);
+        image.setRGB(0, 0, (int) System.nanoTime());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+}
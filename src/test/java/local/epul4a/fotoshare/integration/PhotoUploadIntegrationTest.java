@@ -1,8 +1,16 @@
 package local.epul4a.fotoshare.integration;
+import local.epul4a.fotoshare.dto.BatchUploadItemDto;
+import jakarta.persistence.Column;
+import jakarta.persistence.Id;
 import local.epul4a.fotoshare.model.Photo;
 import local.epul4a.fotoshare.model.VISIBILITY;
+import local.epul4a.fotoshare.repository.PhotoBatchRepository;
 import local.epul4a.fotoshare.repository.PhotoRepository;
+import local.epul4a.fotoshare.service.FileDeletionService;
+import local.epul4a.fotoshare.service.FileStorageService;
+import local.epul4a.fotoshare.service.BatchUploadService;
 import local.epul4a.fotoshare.service.PhotoService;
+import local.epul4a.fotoshare.service.ThumbnailService;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
@@ -12,10 +20,19 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.test.context.ActiveProfiles;
+import org.springframework.web.multipart.MultipartFile;
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.lang.reflect.Field;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
 import java.util.Optional;
 import static org.junit.jupiter.api.Assertions.*;
 /**
@@ -29,6 +46,16 @@ class PhotoUploadIntegrationTest {
     private PhotoService photoService;
     @Autowired
     private PhotoRepository photoRepository;
+    @Autowired
+    private BatchUploadService batchUploadService;
+    @Autowired
+    private PhotoBatchRepository photoBatchRepository;
+    @Autowired
+    private ThumbnailService thumbnailService;
+    @Autowired
+    private FileStorageService fileStorageService;
+    @Autowired
+    private FileDeletionService fileDeletionService;
     @Value("${fotoshare.storage.location}")
     private String storageLocation;
     private Photo uploadedPhoto;
@@ -41,10 +68,10 @@ class PhotoUploadIntegrationTest {
     void tearDown() {
         if (uploadedPhoto != null && uploadedPhoto.getId() != null) {
             try {
-                Path filePath = Paths.get(storageLocation).resolve(uploadedPhoto.getStorage_filename());
+                Path filePath = fileStorageService.resolve(uploadedPhoto.getStorage_filename());
                 Files.deleteIfExists(filePath);
                 if (uploadedPhoto.getThumbnail_filename() != null) {
-                    Path thumbPath = Paths.get(storageLocation).resolve(uploadedPhoto.getThumbnail_filename());
+                    Path thumbPath = fileStorageService.resolve(uploadedPhoto.getThumbnail_filename());
                     Files.deleteIfExists(thumbPath);
                 }
                 photoRepository.deleteById(uploadedPhoto.getId());
@@ -77,9 +104,13 @@ class PhotoUploadIntegrationTest {
         assertNotNull(uploadedPhoto.getStorage_filename(), "Le nom de fichier stocke ne doit pas etre null");
         assertEquals("image/jpeg", uploadedPhoto.getContent_type());
         assertNotNull(uploadedPhoto.getCreated_at());
-        Path storedFile = Paths.get(storageLocation).resolve(uploadedPhoto.getStorage_filename());
+        Path storedFile = fileStorageService.resolve(uploadedPhoto.getStorage_filename());
         assertTrue(Files.exists(storedFile), "Le fichier doit exister sur le disque");
         assertTrue(Files.size(storedFile) > 0, "Le fichier ne doit pas etre vide");
+        assertEquals(jpegBytes.length, uploadedPhoto.getFile_size());
+        assertEquals(64, uploadedPhoto.getContent_hash().length(), "L'empreinte SHA-256 doit etre calculee a l'ingestion");
+        assertEquals(1, uploadedPhoto.getWidth(), "La largeur doit etre lue dans l'en-tete");
+        assertEquals(1, uploadedPhoto.getHeight(), "La hauteur doit etre lue dans l'en-tete");
         Optional<Photo> foundPhoto = photoRepository.findById(uploadedPhoto.getId());
         assertTrue(foundPhoto.isPresent(), "La photo doit etre retrouvable en BDD");
         assertEquals(uploadedPhoto.getStorage_filename(), foundPhoto.get().getStorage_filename());
@@ -160,9 +191,140 @@ class PhotoUploadIntegrationTest {
             );
         });
     }
+    @Test
+    @DisplayName("Upload en double - Le contenu identique partage un seul fichier")
+    void uploadPhoto_DuplicateContent_SharesStoredFile() throws Exception {
+        byte[] pngBytes = createPng();
+        Photo first = photoService.uploadPhoto(
+                new MockMultipartFile("file", "a.png", "image/png", pngBytes),
+                "A", null, VISIBILITY.PRIVATE, TEST_USER_ID);
+        Photo second = photoService.uploadPhoto(
+                new MockMultipartFile("file", "b.png", "image/png", pngBytes),
+                "B", null, VISIBILITY.PRIVATE, TEST_USER_ID);
+        assertEquals(first.getStorage_filename(), second.getStorage_filename());
+        Path storedFile = fileStorageService.resolve(first.getStorage_filename());
+        photoService.deletePhoto(first.getId(), TEST_USER_ID);
+        assertTrue(Files.exists(storedFile), "Le fichier doit rester tant qu'une photo le reference");
+        photoService.deletePhoto(second.getId(), TEST_USER_ID);
+        fileDeletionService.drain();
+        assertFalse(Files.exists(storedFile), "Le fichier doit etre supprime avec la derniere reference");
+    }
+    @Test
+    @DisplayName("Upload multiple - Chaque fichier a son resultat, un fichier invalide n'echoue pas le lot")
+    void uploadPhotos_Batch_ReportsPerFileResult() throws Exception {
+        List<MultipartFile> files = List.of(
+                new MockMultipartFile("files", "un.png", "image/png", createPng()),
+                new MockMultipartFile("files", "texte.txt", "text/plain", "pas une image".getBytes()),
+                new MockMultipartFile("files", "deux.png", "image/png", createPng())
+        );
+        List<BatchUploadItemDto> results = batchUploadService.uploadPhotos(files, null, VISIBILITY.PRIVATE, TEST_USER_ID);
+        assertEquals(3, results.size());
+        assertTrue(results.get(0).isSuccess());
+        assertFalse(results.get(1).isSuccess());
+        assertNotNull(results.get(1).getError());
+        assertTrue(results.get(2).isSuccess());
+        for (BatchUploadItemDto result : List.of(results.get(0), results.get(2))) {
+            Photo photo = photoRepository.findById(result.getPhotoId()).orElseThrow();
+            assertEquals(result.getOriginalFilename(), photo.getTitle());
+            assertTrue(Files.exists(fileStorageService.resolve(photo.getStorage_filename())));
+            photoService.deletePhoto(photo.getId(), TEST_USER_ID);
+        }
+    }
+    @Test
+    @DisplayName("Declinaisons - Toutes les tailles plus petites que l'original sont generees")
+    void createDerivatives_GeneratesRenditionLadder() throws Exception {
+        BufferedImage image = new BufferedImage(1000, 500, BufferedImage.TYPE_INT_RGB);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        String storageFilename = "ladder-test.png";
+        Files.write(fileStorageService.resolveForWrite(storageFilename), out.toByteArray());
+        try {
+            ThumbnailService.Derivatives derivatives = thumbnailService.createDerivatives(storageFilename, null);
+            assertEquals(List.of(150, 300, 800), derivatives.getRenditionSizes(), "1600 depasse l'original et ne doit pas etre genere");
+            BufferedImage rendition = ImageIO.read(fileStorageService.resolve(thumbnailService.generateRenditionFilename(storageFilename, 800, "jpg")).toFile());
+            assertEquals(800, rendition.getWidth());
+            assertEquals(400, rendition.getHeight());
+            assertEquals("ladder-test_thumb.jpg", derivatives.getThumbnailFilename(), "Une source PNG opaque donne une miniature JPEG");
+            assertTrue(Files.exists(fileStorageService.resolve(derivatives.getThumbnailFilename())));
+            assertEquals("#000000", derivatives.getDominantColor());
+            assertTrue(derivatives.getPlaceholder().startsWith("data:image/jpeg;base64,"));
+            BufferedImage placeholder = ImageIO.read(new ByteArrayInputStream(Base64.getDecoder().decode(
+                    derivatives.getPlaceholder().substring("data:image/jpeg;base64,".length()))));
+            assertEquals(16, placeholder.getWidth(), "L'apercu garde les proportions de l'original");
+            assertEquals(8, placeholder.getHeight());
+        } finally {
+            thumbnailService.deleteDerivatives(storageFilename);
+            Files.deleteIfExists(fileStorageService.resolve(storageFilename));
+        }
+        assertFalse(Files.exists(fileStorageService.resolve(thumbnailService.generateRenditionFilename(storageFilename, 150, "jpg"))));
+    }
+    /**
+     * Cree une image PNG au contenu unique.
+     */
+    private byte[] createPng() throws IOException {
+        BufferedImage image = new BufferedImage(4, 4, BufferedImage.TYPE_INT_RGB);
+        image.setRGB(0, 0, (int) System.nanoTime());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
     /**
      * Cree une image JPEG minimale valide.
      */
+    @Test
+    @DisplayName("Insertion par lot - Toutes les colonnes de Photo sont enregistrees")
+    void insertAll_WritesEveryMappedColumn() throws Exception {
+        Photo photo = new Photo();
+        for (Field field : Photo.class.getDeclaredFields()) {
+            Column column = field.getAnnotation(Column.class);
+            if (column == null || field.isAnnotationPresent(Id.class)) {
+                continue;
+            }
+            field.setAccessible(true);
+            field.set(photo, sampleValue(field, column));
+        }
+        photoBatchRepository.insertAll(List.of(photo));
+        assertNotNull(photo.getId());
+        try {
+            Photo saved = photoRepository.findById(photo.getId()).orElseThrow();
+            for (Field field : Photo.class.getDeclaredFields()) {
+                if (field.getAnnotation(Column.class) == null || field.isAnnotationPresent(Id.class)) {
+                    continue;
+                }
+                field.setAccessible(true);
+                Object expected = field.get(photo);
+                Object actual = field.get(saved);
+                if (expected instanceof Date date) {
+                    assertEquals(date.getTime(), ((Date) actual).getTime(), field.getName());
+                } else {
+                    assertEquals(expected, actual, "Colonne absente de l'insertion par lot: " + field.getName());
+                }
+            }
+        } finally {
+            photoRepository.deleteById(photo.getId());
+        }
+    }
+    private static Object sampleValue(Field field, Column column) {
+        Class<?> type = field.getType();
+        if (type == String.class) {
+            String value = "v" + field.getName();
+            return value.substring(0, Math.min(value.length(), column.length()));
+        }
+        if (type == Long.class) {
+            return 42L + field.getName().length();
+        }
+        if (type == Integer.class) {
+            return 7 + field.getName().length();
+        }
+        if (type == Date.class) {
+            return new Date(1_700_000_000_000L);
+        }
+        if (type.isEnum()) {
+            Object[] constants = type.getEnumConstants();
+            return constants[constants.length - 1];
+        }
+        throw new IllegalStateException("Type de colonne non gere: " + type);
+    }
     private byte[] createMinimalJpeg() {
         return new byte[] {
             (byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0,
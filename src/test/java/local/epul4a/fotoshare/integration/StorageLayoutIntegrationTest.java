@@ -0,0 +1,56 @@
+package local.epul4a.fotoshare.integration;
+import local.epul4a.fotoshare.service.FileStorageService;
+import local.epul4a.fotoshare.service.StorageLayoutMigrationService;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+import static org.junit.jupiter.api.Assertions.*;
+/**
+ * Tests d'integration pour la repartition du stockage en sous-repertoires.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class StorageLayoutIntegrationTest {
+    @Autowired
+    private FileStorageService fileStorageService;
+    @Autowired
+    private StorageLayoutMigrationService storageLayoutMigrationService;
+    @Test
+    @DisplayName("Disposition - Un original et ses derivees sont ranges dans le meme sous-repertoire ab/cd")
+    void resolveForWrite_DerivativesShareOriginalDirectory() throws Exception {
+        String uuid = UUID.randomUUID().toString();
+        Path original = fileStorageService.resolveForWrite(uuid + ".jpg");
+        Path thumbnail = fileStorageService.resolveForWrite(uuid + "_thumb.jpg");
+        Path rendition = fileStorageService.resolveForWrite(uuid + "_r800.png");
+        Path expected = fileStorageService.getRootLocation().resolve(uuid.substring(0, 2)).resolve(uuid.substring(2, 4));
+        assertEquals(expected, original.getParent());
+        assertEquals(expected, thumbnail.getParent());
+        assertEquals(expected, rendition.getParent());
+        assertThrows(SecurityException.class, () -> fileStorageService.resolve("../" + uuid + ".jpg"));
+    }
+    @Test
+    @DisplayName("Migration - Un fichier a plat reste lisible puis est deplace dans son sous-repertoire")
+    void migrate_FlatFile_IsMovedToShardedLocation() throws Exception {
+        String name = UUID.randomUUID() + ".png";
+        Path flat = fileStorageService.getRootLocation().resolve(name);
+        Files.write(flat, new byte[]{1, 2, 3});
+        try {
+            assertTrue(fileStorageService.exists(name));
+            assertEquals(flat, fileStorageService.resolve(name), "Avant migration, l'emplacement a plat est lu");
+            assertTrue(storageLayoutMigrationService.migrate() >= 1);
+            assertFalse(Files.exists(flat));
+            Path sharded = fileStorageService.resolve(name);
+            assertNotEquals(flat, sharded);
+            assertArrayEquals(new byte[]{1, 2, 3}, Files.readAllBytes(sharded));
+            assertTrue(fileStorageService.loadAsResource(name).exists());
+        } finally {
+            fileStorageService.delete(name);
+        }
+        assertFalse(fileStorageService.exists(name));
+    }
+}
@@ -0,0 +1,135 @@
+package local.epul4a.fotoshare.integration;
+import local.epul4a.fotoshare.model.JOB_STATUS;
+import local.epul4a.fotoshare.model.JobCheckpoint;
+import local.epul4a.fotoshare.model.Photo;
+import local.epul4a.fotoshare.model.THUMBNAIL_STATUS;
+import local.epul4a.fotoshare.model.VISIBILITY;
+import local.epul4a.fotoshare.repository.PhotoRepository;
+import local.epul4a.fotoshare.service.FileStorageService;
+import local.epul4a.fotoshare.service.ThumbnailBackfillService;
+import local.epul4a.fotoshare.service.ThumbnailJobService;
+import local.epul4a.fotoshare.service.ThumbnailService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import static org.junit.jupiter.api.Assertions.*;
+/**
+ * Tests d'integration pour le rattrapage des miniatures et la reprise des photos en attente.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class ThumbnailBackfillIntegrationTest {
+    @Autowired
+    private ThumbnailBackfillService thumbnailBackfillService;
+    @Autowired
+    private ThumbnailJobService thumbnailJobService;
+    @Autowired
+    private ThumbnailService thumbnailService;
+    @Autowired
+    private PhotoRepository photoRepository;
+    @Autowired
+    private FileStorageService fileStorageService;
+    @Value("${fotoshare.storage.location}")
+    private String storageLocation;
+    private final List<Photo> photos = new ArrayList<>();
+    @BeforeEach
+    void setUp() throws IOException {
+        Files.createDirectories(Paths.get(storageLocation));
+    }
+    @AfterEach
+    void tearDown() throws IOException {
+        for (Photo photo : photos) {
+            thumbnailService.deleteDerivatives(photo.getStorage_filename());
+            Files.deleteIfExists(fileStorageService.resolve(photo.getStorage_filename()));
+            photoRepository.deleteById(photo.getId());
+        }
+    }
+    @Test
+    @DisplayName("Rattrapage - Une miniature en echec est regeneree et le point de reprise est enregistre")
+    void backfill_FailedThumbnail_IsRegenerated() throws Exception {
+        Photo photo = savePhoto(THUMBNAIL_STATUS.FAILED, null, null, null);
+        JobCheckpoint checkpoint = thumbnailBackfillService.runNow(true);
+        Photo updated = photoRepository.findById(photo.getId()).orElseThrow();
+        assertEquals(THUMBNAIL_STATUS.READY, updated.getThumbnail_status());
+        assertEquals(thumbnailService.getSpec(), updated.getThumbnail_spec());
+        assertTrue(thumbnailService.thumbnailExists(updated.getThumbnail_filename()));
+        assertEquals(JOB_STATUS.COMPLETED, checkpoint.getStatus());
+        assertTrue(checkpoint.getLast_id() >= photo.getId());
+        assertTrue(checkpoint.getProcessed() >= 1);
+    }
+    @Test
+    @DisplayName("Rattrapage - Une miniature d'une ancienne configuration est remplacee et ses fichiers obsoletes supprimes")
+    void backfill_OutdatedSpec_ReplacesStaleFiles() throws Exception {
+        String storageFilename = UUID.randomUUID() + ".png";
+        String staleThumbnail = thumbnailService.generateThumbnailFilename(storageFilename, "png");
+        String staleRendition = thumbnailService.generateRenditionFilename(storageFilename, 640, "png");
+        Files.write(fileStorageService.resolveForWrite(staleThumbnail), new byte[]{1});
+        Files.write(fileStorageService.resolveForWrite(staleRendition), new byte[]{1});
+        Photo photo = savePhoto(storageFilename, THUMBNAIL_STATUS.READY, staleThumbnail, "640", "150x150;r=640");
+        thumbnailBackfillService.runNow(true);
+        Photo updated = photoRepository.findById(photo.getId()).orElseThrow();
+        assertEquals(thumbnailService.getSpec(), updated.getThumbnail_spec());
+        assertNotEquals(staleThumbnail, updated.getThumbnail_filename());
+        assertFalse(Files.exists(fileStorageService.resolve(staleThumbnail)));
+        assertFalse(Files.exists(fileStorageService.resolve(staleRendition)));
+        JobCheckpoint second = thumbnailBackfillService.runNow(false);
+        assertEquals(0, second.getProcessed(), "Une photo a jour ne doit pas etre regeneree");
+    }
+    @Test
+    @DisplayName("Reprise - Une photo restee en attente au-dela du delai de grace est resoumise, une photo recente non")
+    void sweepPending_StalePendingPhoto_IsResubmitted() throws Exception {
+        Photo stale = savePhoto(UUID.randomUUID() + ".png", THUMBNAIL_STATUS.PENDING, null, null, null,
+                new Date(System.currentTimeMillis() - 2 * 3600_000L));
+        Photo recent = savePhoto(THUMBNAIL_STATUS.PENDING, null, null, null);
+        assertEquals(1, thumbnailJobService.sweepPending());
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (photoRepository.findById(stale.getId()).orElseThrow().getThumbnail_status() != THUMBNAIL_STATUS.READY
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertEquals(THUMBNAIL_STATUS.READY, photoRepository.findById(stale.getId()).orElseThrow().getThumbnail_status());
+        assertEquals(THUMBNAIL_STATUS.PENDING, photoRepository.findById(recent.getId()).orElseThrow().getThumbnail_status());
+    }
+    private Photo savePhoto(THUMBNAIL_STATUS status, String thumbnail, String renditionSizes, String spec) throws IOException {
+        return savePhoto(UUID.randomUUID() + ".png", status, thumbnail, renditionSizes, spec);
+    }
+    private Photo savePhoto(String storageFilename, THUMBNAIL_STATUS status, String thumbnail,
+                            String renditionSizes, String spec) throws IOException {
+        return savePhoto(storageFilename, status, thumbnail, renditionSizes, spec, new Date());
+    }
+    private Photo savePhoto(String storageFilename, THUMBNAIL_STATUS status, String thumbnail,
+                            String renditionSizes, String spec, Date createdAt) throws IOException {
+        Path file = fileStorageService.resolveForWrite(storageFilename);
+        ImageIO.write(new BufferedImage(400, 300, BufferedImage.TYPE_INT_RGB), "png", file.toFile());
+        Photo photo = photoRepository.save(Photo.builder()
+                .title("Rattrapage")
+                .original_filename("backfill.png")
+                .storage_filename(storageFilename)
+                .thumbnail_filename(thumbnail)
+                .thumbnail_status(status)
+                .rendition_sizes(renditionSizes)
+                .thumbnail_spec(spec)
+                .content_type("image/png")
+                .visibility(VISIBILITY.PRIVATE)
+                .owner_id(1L)
+                .created_at(createdAt)
+                .build());
+        photos.add(photo);
+        return photo;
+    }
+}
@@ -0,0 +1,82 @@
+package local.epul4a.fotoshare.security;
+import jakarta.servlet.FilterChain;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockHttpSession;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.security.web.context.HttpSessionSecurityContextRepository;
+import org.springframework.test.util.ReflectionTestUtils;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+/**
+ * Tests unitaires pour l'UploadAdmissionFilter.
+ */
+class UploadAdmissionFilterTest {
+    private UploadAdmissionFilter filter;
+    @BeforeEach
+    void setUp() {
+        filter = new UploadAdmissionFilter();
+        ReflectionTestUtils.setField(filter, "maxConcurrent", 2);
+        ReflectionTestUtils.setField(filter, "maxPerUser", 1);
+        ReflectionTestUtils.setField(filter, "retryAfterSeconds", 7);
+        filter.init();
+    }
+    @Test
+    @DisplayName("Admission - Un second envoi simultane du meme utilisateur est refuse en 503")
+    void secondConcurrentUploadFromSameUser_IsRejected() throws Exception {
+        MockHttpServletResponse nested = new MockHttpServletResponse();
+        FilterChain chain = (req, res) -> filter.doFilter(upload("alice"), nested, new MockFilterChain());
+        MockHttpServletResponse outer = new MockHttpServletResponse();
+        filter.doFilter(upload("alice"), outer, chain);
+        assertEquals(200, outer.getStatus());
+        assertEquals(503, nested.getStatus());
+        assertEquals("7", nested.getHeader("Retry-After"));
+        assertEquals(1, filter.getStats().getRejectedPerUser());
+        assertEquals(0, filter.getStats().getInFlight());
+        assertEquals(0, filter.getStats().getActiveUsers());
+    }
+    @Test
+    @DisplayName("Admission - La limite globale refuse un envoi au-dela de la capacite du noeud")
+    void uploadBeyondGlobalLimit_IsRejected() throws Exception {
+        MockHttpServletResponse third = new MockHttpServletResponse();
+        FilterChain innermost = (req, res) -> filter.doFilter(upload("carol"), third, new MockFilterChain());
+        FilterChain inner = (req, res) -> filter.doFilter(upload("bob"), new MockHttpServletResponse(), innermost);
+        filter.doFilter(upload("alice"), new MockHttpServletResponse(), inner);
+        assertEquals(503, third.getStatus());
+        assertEquals(1, filter.getStats().getRejectedGlobal());
+        assertEquals(2, filter.getStats().getAdmitted());
+    }
+    @Test
+    @DisplayName("Admission - La navigation reste servie pendant un envoi, sans etre comptee")
+    void browsingRequests_AreNotCounted() throws Exception {
+        List<MockHttpServletRequest> requests = List.of(
+                new MockHttpServletRequest("GET", "/photos"),
+                new MockHttpServletRequest("GET", "/photos/upload"),
+                new MockHttpServletRequest("POST", "/photos/uploads"),
+                new MockHttpServletRequest("POST", "/photos/5/comments"));
+        FilterChain chain = (req, res) -> {
+            for (MockHttpServletRequest request : requests) {
+                request.setSession(((MockHttpServletRequest) req).getSession());
+                MockHttpServletResponse response = new MockHttpServletResponse();
+                filter.doFilter(request, response, new MockFilterChain());
+                assertEquals(200, response.getStatus(), request.getMethod() + " " + request.getRequestURI());
+            }
+        };
+        filter.doFilter(upload("alice"), new MockHttpServletResponse(), chain);
+        assertEquals(1, filter.getStats().getAdmitted());
+        assertEquals(0, filter.getStats().getRejectedGlobal() + filter.getStats().getRejectedPerUser());
+    }
+    private MockHttpServletRequest upload(String username) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/photos/upload");
+        MockHttpSession session = new MockHttpSession();
+        session.setAttribute(HttpSessionSecurityContextRepository.SPRING_SECURITY_CONTEXT_KEY,
+                new SecurityContextImpl(UsernamePasswordAuthenticationToken.authenticated(username, null, List.of())));
+        request.setSession(session);
+        return request;
+    }
+}
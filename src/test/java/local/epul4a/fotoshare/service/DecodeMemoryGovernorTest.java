@@ -0,0 +1,49 @@
+package local.epul4a.fotoshare.service;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import static org.junit.jupiter.api.Assertions.*;
+/**
+ * Tests unitaires pour le budget memoire des decodages.
+ */
+class DecodeMemoryGovernorTest {
+    private static final long MB = 1024 * 1024;
+    private DecodeMemoryGovernor governor;
+    @BeforeEach
+    void setUp() {
+        governor = new DecodeMemoryGovernor();
+        ReflectionTestUtils.setField(governor, "budgetMegabytes", 10L);
+        ReflectionTestUtils.setField(governor, "waitSeconds", 1L);
+    }
+    @Test
+    @DisplayName("reserve - Une demande qui ne tient pas attend la liberation de memoire")
+    void reserve_WhenBudgetFull_WaitsForRelease() throws Exception {
+        long first = governor.reserve(8 * MB);
+        CompletableFuture<Long> second = CompletableFuture.supplyAsync(() -> governor.reserve(4 * MB));
+        Thread.sleep(100);
+        assertFalse(second.isDone(), "La seconde reservation doit attendre");
+        governor.release(first);
+        assertEquals(4 * MB, second.get(1, TimeUnit.SECONDS));
+        assertEquals(4 * MB, governor.getBytesInUse());
+        assertEquals(8 * MB, governor.getPeakBytes());
+        assertEquals(1, governor.getWaits());
+    }
+    @Test
+    @DisplayName("reserve - Sans liberation dans le delai, la demande est refusee")
+    void reserve_WhenTimeoutElapses_ThrowsBudgetExceeded() {
+        governor.reserve(8 * MB);
+        assertThrows(DecodeMemoryGovernor.BudgetExceededException.class, () -> governor.reserve(4 * MB));
+        assertEquals(1, governor.getTimeouts());
+    }
+    @Test
+    @DisplayName("reserve - Une demande plus grande que le budget est ramenee au budget")
+    void reserve_LargerThanBudget_IsClamped() {
+        long reserved = governor.reserve(100 * MB);
+        assertEquals(10 * MB, reserved);
+        governor.release(reserved);
+        assertEquals(0, governor.getBytesInUse());
+    }
+}
@@ -0,0 +1,98 @@
+package local.epul4a.fotoshare.service;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteOrder;
+import static org.junit.jupiter.api.Assertions.*;
+/**
+ * Tests unitaires pour la lecture et l'application de l'orientation EXIF.
+ */
+class ExifOrientationTest {
+    @Test
+    @DisplayName("parseExif - Le tag Orientation est lu en Motorola comme en Intel")
+    void parseExif_BothByteOrders_ReturnsOrientation() {
+        assertEquals(6, ExifOrientation.parseExif(exifSegment(6, false)));
+        assertEquals(8, ExifOrientation.parseExif(exifSegment(8, true)));
+        assertEquals(ExifOrientation.NORMAL, ExifOrientation.parseExif(exifSegment(42, false)));
+        assertEquals(0, ExifOrientation.parseExif("http://ns.adobe.com/xap/1.0/\0".getBytes()),
+                "Un segment APP1 XMP n'est pas un segment Exif");
+    }
+    @Test
+    @DisplayName("read - L'orientation est lue dans l'en-tete JPEG sans deplacer le flux")
+    void read_JpegWithExif_ReturnsOrientationAndResetsStream() throws Exception {
+        ImageInputStream iis = new MemoryCacheImageInputStream(new ByteArrayInputStream(jpegWithOrientation(40, 20, 6)));
+        iis.setByteOrder(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(6, ExifOrientation.read(iis));
+        assertEquals(0, iis.getStreamPosition());
+        assertEquals(ByteOrder.LITTLE_ENDIAN, iis.getByteOrder());
+        BufferedImage decoded = ImageIO.read(iis);
+        assertEquals(40, decoded.getWidth(), "Le decodeur lit toujours l'image apres la lecture de l'orientation");
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(4, 4, BufferedImage.TYPE_INT_RGB), "png", png);
+        assertEquals(ExifOrientation.NORMAL, ExifOrientation.read(
+                new MemoryCacheImageInputStream(new ByteArrayInputStream(png.toByteArray()))));
+    }
+    @Test
+    @DisplayName("apply - Les quarts de tour echangent les dimensions et deplacent les pixels")
+    void apply_QuarterTurns_MovesPixels() {
+        BufferedImage source = new BufferedImage(3, 2, BufferedImage.TYPE_INT_RGB);
+        source.setRGB(0, 0, 0xFF0000);
+        BufferedImage clockwise = ExifOrientation.apply(source, 6);
+        assertEquals(2, clockwise.getWidth());
+        assertEquals(3, clockwise.getHeight());
+        assertEquals(0xFF0000, clockwise.getRGB(1, 0) & 0xFFFFFF, "Le coin haut gauche passe en haut a droite");
+        BufferedImage counterClockwise = ExifOrientation.apply(source, 8);
+        assertEquals(0xFF0000, counterClockwise.getRGB(0, 2) & 0xFFFFFF, "Le coin haut gauche passe en bas a gauche");
+        BufferedImage rotated = ExifOrientation.apply(source, 3);
+        assertEquals(0xFF0000, rotated.getRGB(2, 1) & 0xFFFFFF);
+        assertSame(source, ExifOrientation.apply(source, ExifOrientation.NORMAL));
+        assertTrue(ExifOrientation.swapsDimensions(5));
+        assertFalse(ExifOrientation.swapsDimensions(4));
+    }
+    /**
+     * Encode une image JPEG et insere un segment APP1 Exif declarant l'orientation apres le marqueur SOI.
+     */
+    static byte[] jpegWithOrientation(int width, int height, int orientation) throws Exception {
+        ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), "jpg", jpeg);
+        byte[] encoded = jpeg.toByteArray();
+        byte[] segment = exifSegment(orientation, false);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(encoded, 0, 2);
+        out.write(0xFF);
+        out.write(0xE1);
+        out.write((segment.length + 2) >> 8);
+        out.write((segment.length + 2) & 0xFF);
+        out.write(segment);
+        out.write(encoded, 2, encoded.length - 2);
+        return out.toByteArray();
+    }
+    private static byte[] exifSegment(int orientation, boolean littleEndian) {
+        byte[] segment = new byte[6 + 8 + 2 + 12 + 4];
+        System.arraycopy("Exif".getBytes(), 0, segment, 0, 4);
+        int tiff = 6;
+        segment[tiff] = segment[tiff + 1] = (byte) (littleEndian ? 'I' : 'M');
+        putShort(segment, tiff + 2, 42, littleEndian);
+        putInt(segment, tiff + 4, 8, littleEndian);
+        putShort(segment, tiff + 8, 1, littleEndian);
+        putShort(segment, tiff + 10, 0x0112, littleEndian);
+        putShort(segment, tiff + 12, 3, littleEndian);
+        putInt(segment, tiff + 14, 1, littleEndian);
+        putShort(segment, tiff + 18, orientation, littleEndian);
+        return segment;
+    }
+    private static void putShort(byte[] data, int offset, int value, boolean littleEndian) {
+        data[offset + (littleEndian ? 0 : 1)] = (byte) value;
+        data[offset + (littleEndian ? 1 : 0)] = (byte) (value >> 8);
+    }
+    private static void putInt(byte[] data, int offset, int value, boolean littleEndian) {
+        for (int i = 0; i < 4; i++) {
+            data[offset + (littleEndian ? i : 3 - i)] = (byte) (value >> (8 * i));
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package local.epul4a.fotoshare.service;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import static org.junit.jupiter.api.Assertions.*;
+/**
+ * Tests unitaires pour la validation du contenu des images (bombes de decompression).
+ */
+class FileValidationServiceTest {
+    @TempDir
+    Path tempDir;
+    private FileValidationService fileValidationService;
+    @BeforeEach
+    void setUp() {
+        fileValidationService = new FileValidationService();
+        ReflectionTestUtils.setField(fileValidationService, "maxMegapixels", 50L);
+        ReflectionTestUtils.setField(fileValidationService, "maxFrames", 300);
+        ReflectionTestUtils.setField(fileValidationService, "imageMetadataService", new ImageMetadataService());
+    }
+    @Test
+    @DisplayName("validateImageContent - Une image valide retourne ses dimensions")
+    void validateImageContent_ValidPng_ReturnsDimensions() throws IOException {
+        Path file = write("ok.png", createPng(120, 80));
+        assertArrayEquals(new int[]{120, 80}, fileValidationService.validateImageContent(file, "image/png"));
+    }
+    @Test
+    @DisplayName("validateImageContent - Un PNG declarant 50000x50000 pixels est refuse sans decodage")
+    void validateImageContent_PixelBomb_ThrowsException() throws IOException {
+        byte[] png = createPng(16, 16);
+        writeInt(png, 16, 50000);
+        writeInt(png, 20, 50000);
+        Path file = write("bomb.png", png);
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> fileValidationService.validateImageContent(file, "image/png"));
+        assertTrue(e.getMessage().contains("mégapixels"));
+    }
+    @Test
+    @DisplayName("validateImageContent - Un PNG tronque est refuse")
+    void validateImageContent_TruncatedPng_ThrowsException() throws IOException {
+        byte[] png = createPng(64, 64);
+        Path file = write("truncated.png", Arrays.copyOf(png, png.length - 12));
+        assertThrows(IllegalArgumentException.class,
+                () -> fileValidationService.validateImageContent(file, "image/png"));
+    }
+    @Test
+    @DisplayName("validateImageContent - Un JPEG dont un segment deborde du fichier est refuse")
+    void validateImageContent_CorruptJpegSegment_ThrowsException() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(32, 32, BufferedImage.TYPE_INT_RGB), "jpg", out);
+        byte[] jpeg = out.toByteArray();
+        assertArrayEquals(new int[]{32, 32}, fileValidationService.validateImageContent(write("ok.jpg", jpeg), "image/jpeg"));
+        jpeg[4] = (byte) 0xFF;
+        jpeg[5] = (byte) 0xFF;
+        Path file = write("corrupt.jpg", jpeg);
+        assertThrows(IllegalArgumentException.class,
+                () -> fileValidationService.validateImageContent(file, "image/jpeg"));
+    }
+    private Path write(String name, byte[] content) throws IOException {
+        Path file = tempDir.resolve(name);
+        Files.write(file, content);
+        return file;
+    }
+    private byte[] createPng(int width, int height) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), "png", out);
+        return out.toByteArray();
+    }
+    private void writeInt(byte[] data, int offset, int value) {
+        data[offset] = (byte) (value >>> 24);
+        data[offset + 1] = (byte) (value >>> 16);
+        data[offset + 2] = (byte) (value >>> 8);
+        data[offset + 3] = (byte) value;
+    }
+}
@@ -0,0 +1,69 @@
+package local.epul4a.fotoshare.service;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import javax.imageio.ImageIO;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import static org.junit.jupiter.api.Assertions.*;
+/**
+ * Tests unitaires pour la lecture des dimensions dans l'en-tete des images.
+ */
+class ImageMetadataServiceTest {
+    private final ImageMetadataService imageMetadataService = new ImageMetadataService();
+    @Test
+    @DisplayName("readDimensions - Les dimensions d'un PNG sont lues via ImageReader")
+    void readDimensions_Png_ReturnsSize() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(640, 360, BufferedImage.TYPE_INT_RGB), "png", out);
+        int[] dimensions = imageMetadataService.readDimensions(
+                new MemoryCacheImageInputStream(new ByteArrayInputStream(out.toByteArray())));
+        assertArrayEquals(new int[]{640, 360}, dimensions);
+    }
+    @Test
+    @DisplayName("readHeader - Les dimensions d'un JPEG pivote d'un quart de tour sont echangees")
+    void readHeader_RotatedJpeg_SwapsDimensions() throws Exception {
+        ImageMetadataService.ImageHeader header = imageMetadataService.readHeader(new MemoryCacheImageInputStream(
+                new ByteArrayInputStream(ExifOrientationTest.jpegWithOrientation(40, 20, 6))));
+        assertEquals(20, header.width());
+        assertEquals(40, header.height());
+    }
+    @Test
+    @DisplayName("readWebpDimensions - En-tetes VP8, VP8L et VP8X")
+    void readWebpDimensions_AllVariants_ReturnsSize() {
+        byte[] lossy = webpHeader("VP8 ");
+        lossy[23] = (byte) 0x9D;
+        lossy[24] = 0x01;
+        lossy[25] = 0x2A;
+        lossy[26] = (byte) (1024 & 0xFF);
+        lossy[27] = (byte) (1024 >> 8);
+        lossy[28] = (byte) (768 & 0xFF);
+        lossy[29] = (byte) (768 >> 8);
+        assertArrayEquals(new int[]{1024, 768}, ImageMetadataService.readWebpDimensions(lossy, lossy.length));
+        byte[] lossless = webpHeader("VP8L");
+        lossless[20] = 0x2F;
+        int bits = (800 - 1) | ((600 - 1) << 14);
+        for (int i = 0; i < 4; i++) {
+            lossless[21 + i] = (byte) (bits >> (8 * i));
+        }
+        assertArrayEquals(new int[]{800, 600}, ImageMetadataService.readWebpDimensions(lossless, lossless.length));
+        byte[] extended = webpHeader("VP8X");
+        int width = 5000 - 1;
+        int height = 3000 - 1;
+        for (int i = 0; i < 3; i++) {
+            extended[24 + i] = (byte) (width >> (8 * i));
+            extended[27 + i] = (byte) (height >> (8 * i));
+        }
+        assertArrayEquals(new int[]{5000, 3000}, ImageMetadataService.readWebpDimensions(extended, extended.length));
+        assertNull(ImageMetadataService.readWebpDimensions(new byte[30], 30));
+    }
+    private byte[] webpHeader(String chunk) {
+        byte[] header = new byte[30];
+        System.arraycopy("RIFF".getBytes(StandardCharsets.US_ASCII), 0, header, 0, 4);
+        System.arraycopy("WEBP".getBytes(StandardCharsets.US_ASCII), 0, header, 8, 4);
+        System.arraycopy(chunk.getBytes(StandardCharsets.US_ASCII), 0, header, 12, 4);
+        return header;
+    }
+}
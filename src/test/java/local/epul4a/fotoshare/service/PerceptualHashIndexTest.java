@@ -0,0 +1,81 @@
+package local.epul4a.fotoshare.service;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import static org.junit.jupiter.api.Assertions.*;
+/**
+ * Tests unitaires pour l'empreinte perceptuelle et son index.
+ */
+class PerceptualHashIndexTest {
+    @Test
+    @DisplayName("dHash - Une copie redimensionnee reste proche, une autre image est eloignee")
+    void dHash_ResizedCopy_IsClose() {
+        BufferedImage original = gradient(640, 480, 1);
+        BufferedImage resized = new BufferedImage(200, 150, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = resized.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        graphics.drawImage(original, 0, 0, 200, 150, null);
+        graphics.dispose();
+        long hash = PerceptualHash.dHash(original);
+        assertTrue(PerceptualHash.distance(hash, PerceptualHash.dHash(resized)) <= 6);
+        assertTrue(PerceptualHash.distance(hash, PerceptualHash.dHash(gradient(640, 480, 7))) > 6);
+    }
+    @Test
+    @DisplayName("Index - La recherche et les paires correspondent a une comparaison exhaustive")
+    void index_MatchesBruteForce() {
+        Random random = new Random(42);
+        int maxDistance = 6;
+        PerceptualHashIndex index = new PerceptualHashIndex(maxDistance);
+        List<Long> hashes = new ArrayList<>();
+        for (int id = 0; id < 2000; id++) {
+            long hash = id % 10 == 0 || hashes.isEmpty() ? random.nextLong()
+                    : flipBits(hashes.get(random.nextInt(hashes.size())), random.nextInt(10), random);
+            hashes.add(hash);
+            index.add(id, hash);
+        }
+        for (int id = 0; id < 2000; id += 3) {
+            index.remove(id);
+        }
+        long expectedPairs = 0;
+        for (int first = 0; first < hashes.size(); first++) {
+            if (first % 3 == 0) {
+                continue;
+            }
+            long expectedMatches = 0;
+            for (int second = 0; second < hashes.size(); second++) {
+                if (second != first && second % 3 != 0
+                        && PerceptualHash.distance(hashes.get(first), hashes.get(second)) <= maxDistance) {
+                    expectedMatches++;
+                    if (second > first) {
+                        expectedPairs++;
+                    }
+                }
+            }
+            List<PerceptualHashIndex.Match> matches = index.search(hashes.get(first), (long) first);
+            assertEquals(expectedMatches, matches.size(), "Photo " + first);
+        }
+        assertEquals(expectedPairs, index.pairs().size());
+        assertEquals(2000 - 667, index.size());
+    }
+    private static long flipBits(long hash, int count, Random random) {
+        for (int i = 0; i < count; i++) {
+            hash ^= 1L << random.nextInt(64);
+        }
+        return hash;
+    }
+    private static BufferedImage gradient(int width, int height, int frequency) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int value = (int) (127 + 127 * Math.sin(frequency * (x + 2.0 * y) / width * Math.PI));
+                image.setRGB(x, y, value << 16 | value << 8 | (255 - value));
+            }
+        }
+        return image;
+    }
+}
@@ -0,0 +1,51 @@
+package local.epul4a.fotoshare.service;
+import local.epul4a.fotoshare.dto.ThumbnailCacheStatsDto;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import static org.junit.jupiter.api.Assertions.*;
+/**
+ * Tests unitaires pour le ThumbnailCacheService.
+ */
+class ThumbnailCacheServiceTest {
+    private ThumbnailCacheService cache;
+    @BeforeEach
+    void setUp() {
+        cache = new ThumbnailCacheService();
+        ReflectionTestUtils.setField(cache, "maxBytes", 300L);
+        ReflectionTestUtils.setField(cache, "maxEntryBytes", 200L);
+        ReflectionTestUtils.setField(cache, "slabCache", new ThumbnailSlabCache());
+    }
+    @Test
+    @DisplayName("Cache miniatures - L'entree la moins recemment utilisee est evincee au-dela de la taille maximale")
+    void put_OverBudget_EvictsLeastRecentlyUsed() {
+        cache.put(1L, "v1", new byte[100]);
+        cache.put(2L, "v1", new byte[100]);
+        cache.put(3L, "v1", new byte[100]);
+        assertNotNull(cache.get(1L, "v1"));
+        cache.put(4L, "v1", new byte[100]);
+        assertNull(cache.get(2L, "v1"), "La photo 2 etait la moins recemment utilisee");
+        assertNotNull(cache.get(1L, "v1"));
+        cache.put(5L, "v1", new byte[250]);
+        ThumbnailCacheStatsDto stats = cache.getStats();
+        assertEquals(3, stats.getEntries());
+        assertEquals(300, stats.getBytes());
+        assertEquals(1, stats.getEvictions());
+        assertEquals(1, stats.getRejected(), "Une entree trop grande n'est pas conservee");
+    }
+    @Test
+    @DisplayName("Cache miniatures - Une autre version ou une invalidation donne un defaut de cache")
+    void get_OtherVersionOrInvalidated_Misses() {
+        cache.put(1L, "thumb.jpg;spec1", new byte[10]);
+        assertNull(cache.get(1L, "thumb.jpg;spec2"));
+        assertNotNull(cache.get(1L, "thumb.jpg;spec1"));
+        cache.invalidateAfterCommit(1L);
+        assertNull(cache.get(1L, "thumb.jpg;spec1"));
+        ThumbnailCacheStatsDto stats = cache.getStats();
+        assertEquals(1, stats.getHits());
+        assertEquals(2, stats.getMisses());
+        assertEquals(1.0 / 3, stats.getHitRate(), 1e-9);
+        assertEquals(0, stats.getBytes());
+    }
+}
@@ -0,0 +1,60 @@
+package local.epul4a.fotoshare.service;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import static org.junit.jupiter.api.Assertions.*;
+/**
+ * Tests unitaires pour le ThumbnailEncoder.
+ */
+class ThumbnailEncoderTest {
+    private final ThumbnailEncoder encoder = new ThumbnailEncoder(0.8f, true, true);
+    @Test
+    @DisplayName("hasTransparency - Un canal alpha entierement opaque n'est pas de la transparence")
+    void hasTransparency_OpaqueAlphaChannel_ReturnsFalse() {
+        BufferedImage image = new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < 10; y++) {
+            for (int x = 0; x < 10; x++) {
+                image.setRGB(x, y, 0xFF336699);
+            }
+        }
+        assertFalse(ThumbnailEncoder.hasTransparency(image));
+        image.setRGB(5, 5, 0x80336699);
+        assertTrue(ThumbnailEncoder.hasTransparency(image));
+        assertFalse(ThumbnailEncoder.hasTransparency(new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB)));
+    }
+    @Test
+    @DisplayName("encode - Image opaque encodee en JPEG progressif")
+    void encode_OpaqueImage_WritesProgressiveJpeg() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        encoder.encode(new BufferedImage(64, 48, BufferedImage.TYPE_INT_RGB), false, out);
+        byte[] bytes = out.toByteArray();
+        assertEquals((byte) 0xFF, bytes[0]);
+        assertEquals((byte) 0xD8, bytes[1]);
+        assertTrue(containsMarker(bytes, (byte) 0xC2), "Le JPEG doit etre progressif (marqueur SOF2)");
+        assertEquals(64, ImageIO.read(new ByteArrayInputStream(bytes)).getWidth());
+        assertEquals("jpg", encoder.extensionFor(false));
+    }
+    @Test
+    @DisplayName("encode - Image transparente encodee en PNG avec son canal alpha")
+    void encode_TransparentImage_WritesPngWithAlpha() throws IOException {
+        BufferedImage image = new BufferedImage(16, 16, BufferedImage.TYPE_INT_ARGB);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        encoder.encode(image, true, out);
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+        assertTrue(decoded.getColorModel().hasAlpha());
+        assertEquals(0, decoded.getRGB(8, 8) >>> 24);
+        assertEquals("png", encoder.extensionFor(true));
+    }
+    private boolean containsMarker(byte[] bytes, byte marker) {
+        for (int i = 0; i < bytes.length - 1; i++) {
+            if (bytes[i] == (byte) 0xFF && bytes[i + 1] == marker) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
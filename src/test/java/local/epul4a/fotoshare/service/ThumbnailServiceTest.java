@@ -0,0 +1,37 @@
+package local.epul4a.fotoshare.service;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+/**
+ * Tests unitaires pour le sous-echantillonnage a la lecture et la memoire reservee.
+ */
+class ThumbnailServiceTest {
+    private static final long MB = 1024 * 1024;
+    private static final int LARGEST_RENDITION = 1600;
+    @Test
+    @DisplayName("computeSubsampling - Un original de 48 MP est decode a la taille de la plus grande declinaison")
+    void computeSubsampling_48Megapixels_DecodesNearTarget() {
+        int step = ThumbnailService.computeSubsampling(8000, 6000, LARGEST_RENDITION, LARGEST_RENDITION, false);
+        assertEquals(5, step);
+        assertTrue(8000 / step >= LARGEST_RENDITION, "L'image decodee reste au moins aussi grande que la declinaison");
+        long reserved = ThumbnailService.estimateDecodeBytes(8000, 6000, step);
+        assertEquals(1600L * 1200 * 4 * 2, reserved);
+        assertTrue(reserved < 32 * MB, "Plusieurs decodages doivent tenir dans le budget par defaut de 256 Mo");
+    }
+    @Test
+    @DisplayName("computeSubsampling - Le rapport du cadre est celui de l'axe le plus contraint")
+    void computeSubsampling_Contain_UsesLargestAxisRatio() {
+        assertEquals(3, ThumbnailService.computeSubsampling(6000, 4000, LARGEST_RENDITION, LARGEST_RENDITION, false));
+        assertEquals(3, ThumbnailService.computeSubsampling(4000, 6000, LARGEST_RENDITION, LARGEST_RENDITION, false));
+        assertEquals(1, ThumbnailService.computeSubsampling(1200, 900, LARGEST_RENDITION, LARGEST_RENDITION, false));
+        assertEquals(10, ThumbnailService.computeSubsampling(3000, 2000, 300, Integer.MAX_VALUE, false),
+                "Une dimension non imposee ne limite pas le pas");
+    }
+    @Test
+    @DisplayName("computeSubsampling - En mode cover, l'image decodee recouvre encore le cadre")
+    void computeSubsampling_Cover_UsesSmallestAxisRatio() {
+        int step = ThumbnailService.computeSubsampling(6000, 4000, 300, 300, true);
+        assertEquals(13, step);
+        assertTrue(4000 / step >= 300);
+    }
+}
@@ -0,0 +1,82 @@
+package local.epul4a.fotoshare.service;
+import local.epul4a.fotoshare.dto.ThumbnailCacheStatsDto;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import java.io.IOException;
+import java.util.Arrays;
+import static org.junit.jupiter.api.Assertions.*;
+/**
+ * Tests unitaires pour le ThumbnailSlabCache.
+ */
+class ThumbnailSlabCacheTest {
+    private ThumbnailSlabCache cache;
+    @BeforeEach
+    void setUp() {
+        cache = new ThumbnailSlabCache();
+        ReflectionTestUtils.setField(cache, "maxBytes", 300L);
+        ReflectionTestUtils.setField(cache, "slabBytes", 100);
+        ReflectionTestUtils.setField(cache, "maxEntryBytes", 100L);
+    }
+    @Test
+    @DisplayName("Cache hors tas - Le contenu est relu a l'identique, une autre version ou une invalidation donne un defaut")
+    void write_ReturnsStoredContentForSameVersion() throws IOException {
+        cache.put(1L, "thumb.jpg;spec1", content(1, 40));
+        assertArrayEquals(content(1, 40), read(1L, "thumb.jpg;spec1"));
+        assertNull(read(1L, "thumb.jpg;spec2"));
+        cache.invalidate(1L);
+        assertNull(read(1L, "thumb.jpg;spec1"));
+        ThumbnailCacheStatsDto stats = cache.getStats();
+        assertEquals(1, stats.getHits());
+        assertEquals(2, stats.getMisses());
+        assertEquals(0, stats.getBytes());
+        assertEquals(1, stats.getInvalidations());
+    }
+    @Test
+    @DisplayName("Cache hors tas - La tranche recuperee garde les entrees lues et evince les autres")
+    void put_RingFull_ReclaimsOldestSlabWithSecondChance() throws IOException {
+        for (long id = 1; id <= 6; id++) {
+            cache.put(id, "v1", content((int) id, 40));
+        }
+        assertNotNull(read(1L, "v1"));
+        cache.put(7L, "v1", content(7, 40));
+        assertArrayEquals(content(1, 40), read(1L, "v1"), "L'entree lue est compactee sans etre alteree");
+        assertNull(read(2L, "v1"), "L'entree jamais lue est evincee");
+        assertArrayEquals(content(7, 40), read(7L, "v1"));
+        assertArrayEquals(content(3, 40), read(3L, "v1"));
+        ThumbnailCacheStatsDto stats = cache.getStats();
+        assertEquals(6, stats.getEntries());
+        assertEquals(240, stats.getBytes());
+        assertEquals(1, stats.getEvictions());
+    }
+    @Test
+    @DisplayName("Cache hors tas - Une tranche en cours de lecture n'est pas recuperee")
+    void put_SlabBeingRead_IsRejected() throws IOException {
+        ReflectionTestUtils.setField(cache, "maxBytes", 100L);
+        cache.put(1L, "v1", content(1, 60));
+        assertTrue(cache.write(1L, "v1", buffer -> cache.put(2L, "v1", content(2, 60))));
+        assertEquals(1, cache.getStats().getRejected());
+        assertArrayEquals(content(1, 60), read(1L, "v1"));
+        cache.put(2L, "v1", content(2, 60));
+        assertArrayEquals(content(2, 60), read(2L, "v1"));
+        cache.put(3L, "v1", content(3, 101));
+        assertEquals(2, cache.getStats().getRejected(), "Une entree plus grande qu'une tranche n'est pas conservee");
+    }
+    private byte[] read(Long photoId, String version) throws IOException {
+        byte[][] result = new byte[1][];
+        if (!cache.write(photoId, version, buffer -> {
+            result[0] = new byte[buffer.remaining()];
+            buffer.get(result[0]);
+        })) {
+            return null;
+        }
+        return result[0];
+    }
+    private static byte[] content(int seed, int length) {
+        byte[] content = new byte[length];
+        Arrays.fill(content, (byte) seed);
+        content[0] = (byte) (seed * 31);
+        return content;
+    }
+}